@@ -0,0 +1,46 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.db;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import sirius.kernel.Setup;
+import sirius.kernel.Sirius;
+
+/**
+ * Starts the framework for the JMH benchmarks.
+ * <p>
+ * Instead of <tt>test.conf</tt> (which launches the docker containers used by the specs), <tt>benchmark.conf</tt>
+ * is loaded, so that the benchmarks can run on any machine without external databases.
+ */
+public class BenchmarkHelper {
+
+    private static boolean started;
+
+    private BenchmarkHelper() {
+    }
+
+    /**
+     * Starts the framework once per JVM (benchmark fork).
+     */
+    public static synchronized void ensureStarted() {
+        if (started) {
+            return;
+        }
+
+        ClassLoader loader = BenchmarkHelper.class.getClassLoader();
+        Sirius.start(new Setup(Setup.Mode.TEST, loader) {
+            @Override
+            public Config loadTestConfig() {
+                return ConfigFactory.parseResources(loader, "benchmark.conf");
+            }
+        });
+        started = true;
+    }
+}
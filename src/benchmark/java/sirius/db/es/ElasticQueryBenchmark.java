@@ -0,0 +1,68 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.db.es;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sirius.db.BenchmarkHelper;
+import sirius.db.mixing.EntityDescriptor;
+import sirius.db.mixing.Mixing;
+import sirius.kernel.di.Injector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how expensive it is to build (and serialize) the JSON payload of an {@link ElasticQuery}.
+ * <p>
+ * The query is never executed, therefore no Elasticsearch cluster is required.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ElasticQueryBenchmark {
+
+    @Param({"10", "10000"})
+    private int numberOfIds;
+
+    private EntityDescriptor descriptor;
+    private List<String> ids = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        BenchmarkHelper.ensureStarted();
+        descriptor = Injector.context().getPart(Mixing.class).getDescriptor(ElasticTestEntity.class);
+        for (int i = 0; i < numberOfIds; i++) {
+            ids.add(String.valueOf(i));
+        }
+    }
+
+    @Benchmark
+    public String buildPayload() {
+        ElasticQuery<ElasticTestEntity> query = new ElasticQuery<>(descriptor, null);
+        return query.eq(ElasticTestEntity.FIRSTNAME, "Hello")
+                    .where(Elastic.FILTERS.oneInField(ElasticEntity.ID, ids).build())
+                    .orderAsc(ElasticTestEntity.AGE)
+                    .limit(20)
+                    .toString();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.db.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Provides an in-memory {@link ResultSet} which returns the same row a given number of times.
+ * <p>
+ * Only the methods used by the mapping layer (<tt>next</tt>, <tt>getObject</tt>, <tt>getInt</tt> and the
+ * column labels of the meta data) are supported, everything else returns a default value.
+ */
+class FakeResultSet implements InvocationHandler {
+
+    private final String[] columns;
+    private final Map<String, Object> row = new HashMap<>();
+    private final int numberOfRows;
+    private int currentRow;
+
+    private FakeResultSet(String[] columns, Object[] values, int numberOfRows) {
+        this.columns = columns.clone();
+        this.numberOfRows = numberOfRows;
+        for (int i = 0; i < columns.length; i++) {
+            row.put(columns[i].toUpperCase(), values[i]);
+        }
+    }
+
+    /**
+     * Creates a new result set which yields the given row <tt>numberOfRows</tt> times.
+     *
+     * @param columns      the column labels
+     * @param values       the values of the row, in the same order as the columns
+     * @param numberOfRows the number of rows to emit
+     * @return the result set
+     */
+    static ResultSet create(String[] columns, Object[] values, int numberOfRows) {
+        return (ResultSet) Proxy.newProxyInstance(FakeResultSet.class.getClassLoader(),
+                                                  new Class<?>[]{ResultSet.class},
+                                                  new FakeResultSet(columns, values, numberOfRows));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "next":
+                return currentRow++ < numberOfRows;
+            case "getObject":
+                return readColumn(args[0]);
+            case "getInt":
+                Object value = readColumn(args[0]);
+                return value instanceof Number ? ((Number) value).intValue() : 0;
+            case "getMetaData":
+                return createMetaData();
+            default:
+                return defaultValue(method.getReturnType());
+        }
+    }
+
+    private Object readColumn(Object column) {
+        if (column instanceof Integer) {
+            return row.get(columns[(Integer) column - 1].toUpperCase());
+        }
+        return row.get(String.valueOf(column).toUpperCase());
+    }
+
+    private ResultSetMetaData createMetaData() {
+        return (ResultSetMetaData) Proxy.newProxyInstance(FakeResultSet.class.getClassLoader(),
+                                                          new Class<?>[]{ResultSetMetaData.class},
+                                                          (proxy, method, args) -> {
+                                                              if ("getColumnCount".equals(method.getName())) {
+                                                                  return columns.length;
+                                                              }
+                                                              if ("getColumnLabel".equals(method.getName())
+                                                                  || "getColumnName".equals(method.getName())) {
+                                                                  return columns[(Integer) args[0] - 1];
+                                                              }
+                                                              return defaultValue(method.getReturnType());
+                                                          });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+}
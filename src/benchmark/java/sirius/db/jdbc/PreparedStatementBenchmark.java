@@ -0,0 +1,88 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.db.jdbc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-call overhead which is added by {@link WrappedPreparedStatement}.
+ * <p>
+ * The delegate is a no-op statement, therefore the difference between {@link #plain()} and {@link #wrapped()}
+ * is the pure instrumentation cost for the given <tt>jdbc.operationSamplingRate</tt>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreparedStatementBenchmark {
+
+    @Param({"1", "16", "128"})
+    private int operationSamplingRate;
+
+    private PreparedStatement plainStatement;
+    private PreparedStatement wrappedStatement;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        setStaticField("logQueryThreshold", Duration.ofSeconds(10));
+        setStaticField("operationSamplingRate", operationSamplingRate);
+
+        plainStatement = createNoopStatement();
+        wrappedStatement = new WrappedPreparedStatement(plainStatement, false, "SELECT * FROM test WHERE id = ?");
+    }
+
+    private static void setStaticField(String name, Object value) throws ReflectiveOperationException {
+        Field field = Databases.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(null, value);
+    }
+
+    private static PreparedStatement createNoopStatement() {
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatementBenchmark.class.getClassLoader(),
+                                                          new Class<?>[]{PreparedStatement.class},
+                                                          (proxy, method, args) -> {
+                                                              if (method.getReturnType() == int.class) {
+                                                                  return 1;
+                                                              }
+                                                              if (method.getReturnType() == boolean.class) {
+                                                                  return false;
+                                                              }
+                                                              return null;
+                                                          });
+    }
+
+    @Benchmark
+    public int plain() throws SQLException {
+        return plainStatement.executeUpdate();
+    }
+
+    @Benchmark
+    public int wrapped() throws SQLException {
+        return wrappedStatement.executeUpdate();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.db.jdbc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sirius.db.BenchmarkHelper;
+import sirius.db.jdbc.constraints.SQLConstraint;
+import sirius.db.jdbc.constraints.SQLQueryCompiler;
+import sirius.db.mixing.EntityDescriptor;
+import sirius.db.mixing.Mixing;
+import sirius.db.mixing.query.QueryField;
+import sirius.kernel.commons.Context;
+import sirius.kernel.di.Injector;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the costs of generating SQL: {@link SmartQuery.Compiler}, {@link SQLQueryCompiler} and
+ * {@link StatementCompiler}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryCompilationBenchmark {
+
+    private static final String STATEMENT = "SELECT * FROM test WHERE firstname = ${firstname}"
+                                            + " [AND lastname LIKE #{lastname}]"
+                                            + " [AND age > ${age}]"
+                                            + " AND id IN (${ids})";
+
+    private EntityDescriptor descriptor;
+    private List<QueryField> searchFields;
+    private Context context;
+
+    @Setup
+    public void setup() {
+        BenchmarkHelper.ensureStarted();
+        descriptor = Injector.context().getPart(Mixing.class).getDescriptor(TestEntity.class);
+        searchFields = Arrays.asList(QueryField.contains(TestEntity.FIRSTNAME),
+                                     QueryField.contains(TestEntity.LASTNAME));
+        context = Context.create()
+                         .set("firstname", "Test")
+                         .set("lastname", "Te")
+                         .set("age", null)
+                         .set("ids", Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8));
+    }
+
+    @Benchmark
+    public String smartQuery() {
+        return new SmartQuery<TestEntity>(descriptor, null).where(OMA.FILTERS.eq(TestEntity.FIRSTNAME, "Test"))
+                                                           .where(OMA.FILTERS.gt(TestEntity.AGE, 12))
+                                                           .orderAsc(TestEntity.LASTNAME)
+                                                           .limit(10)
+                                                           .toString();
+    }
+
+    @Benchmark
+    public SQLConstraint queryCompiler() {
+        return new SQLQueryCompiler(OMA.FILTERS,
+                                    descriptor,
+                                    "firstname:test age>12 hello world",
+                                    searchFields).compile();
+    }
+
+    @Benchmark
+    public StatementCompiler statementCompiler() throws SQLException {
+        StatementCompiler compiler = new StatementCompiler(null, false);
+        compiler.buildParameterizedStatement(STATEMENT, context);
+        return compiler;
+    }
+}
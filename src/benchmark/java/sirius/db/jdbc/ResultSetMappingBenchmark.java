@@ -0,0 +1,67 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.db.jdbc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import sirius.db.BenchmarkHelper;
+import sirius.db.mixing.EntityDescriptor;
+import sirius.db.mixing.Mixing;
+import sirius.kernel.commons.Limit;
+import sirius.kernel.di.Injector;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast rows of a {@link java.sql.ResultSet} are turned into entities by {@link SmartQuery}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResultSetMappingBenchmark {
+
+    private static final int NUMBER_OF_ROWS = 1000;
+    private static final String[] COLUMNS = {"id", "firstname", "lastname", "age"};
+    private static final Object[] VALUES = {42L, "Hello", "World", 12};
+
+    private EntityDescriptor descriptor;
+
+    @Setup
+    public void setup() {
+        BenchmarkHelper.ensureStarted();
+        descriptor = Injector.context().getPart(Mixing.class).getDescriptor(TestEntity.class);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_ROWS)
+    public void mapRows(Blackhole blackhole) throws Exception {
+        SmartQuery<TestEntity> query = new SmartQuery<>(descriptor, null);
+        query.execIterate(entity -> {
+                              blackhole.consume(entity);
+                              return true;
+                          },
+                          new SmartQuery.Compiler(descriptor),
+                          Limit.UNLIMITED,
+                          true,
+                          FakeResultSet.create(COLUMNS, VALUES, NUMBER_OF_ROWS));
+    }
+}
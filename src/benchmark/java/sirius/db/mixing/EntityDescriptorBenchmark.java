@@ -0,0 +1,79 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.db.mixing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sirius.db.BenchmarkHelper;
+import sirius.db.jdbc.OMA;
+import sirius.db.jdbc.TestEntity;
+import sirius.kernel.commons.Value;
+import sirius.kernel.di.Injector;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the core operations of the mapping layer: creating entities via {@link EntityDescriptor#make} and
+ * reading / writing values via {@link Property}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityDescriptorBenchmark {
+
+    private EntityDescriptor descriptor;
+    private Property firstnameProperty;
+    private Property ageProperty;
+    private TestEntity entity;
+    private Map<String, Value> row = new HashMap<>();
+    private int counter;
+
+    @Setup
+    public void setup() {
+        BenchmarkHelper.ensureStarted();
+        descriptor = Injector.context().getPart(Mixing.class).getDescriptor(TestEntity.class);
+        firstnameProperty = descriptor.getProperty(TestEntity.FIRSTNAME);
+        ageProperty = descriptor.getProperty(TestEntity.AGE);
+        entity = new TestEntity();
+
+        row.put("id", Value.of(42L));
+        row.put("firstname", Value.of("Hello"));
+        row.put("lastname", Value.of("World"));
+        row.put("age", Value.of(12));
+    }
+
+    @Benchmark
+    public Object make() throws Exception {
+        return descriptor.make(OMA.class, null, row::get);
+    }
+
+    @Benchmark
+    public Object getValue() {
+        return firstnameProperty.getValue(entity);
+    }
+
+    @Benchmark
+    public TestEntity setValue() {
+        ageProperty.setValue(entity, counter++);
+        return entity;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.db.text;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of the {@link BasicIndexTokenizer} and the {@link BasicSearchTokenizer}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizerBenchmark {
+
+    private static final String INPUT = "Die Schraube M8x40 (DIN 933, verzinkt) von Würth-Schrauben GmbH, "
+                                        + "Bestellnummer 0057-840/12 - Kontakt: info@example.com";
+
+    private final Tokenizer indexTokenizer = new BasicIndexTokenizer();
+    private final Tokenizer searchTokenizer = new BasicSearchTokenizer();
+
+    @Benchmark
+    public void indexTokenizer(Blackhole blackhole) {
+        indexTokenizer.acceptPlain(INPUT, blackhole::consume);
+    }
+
+    @Benchmark
+    public void searchTokenizer(Blackhole blackhole) {
+        searchTokenizer.acceptPlain(INPUT, blackhole::consume);
+    }
+}
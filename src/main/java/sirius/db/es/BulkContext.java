@@ -10,14 +10,16 @@ package sirius.db.es;
 
 import com.alibaba.fastjson.JSONObject;
 import sirius.db.mixing.EntityDescriptor;
+import sirius.kernel.di.std.ConfigValue;
 import sirius.kernel.di.std.Part;
 import sirius.kernel.health.Exceptions;
 
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.NotThreadSafe;
 import java.io.Closeable;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Simplifies bulk inserts, updates and deletes against Elasticsearch.
@@ -28,7 +30,12 @@ import java.util.List;
  * <p>
  * Invoke {@link #commit()} manually every once in a while (ask {@link #shouldCommitManually()}). One can also
  * determine the current number of commands using {@link #countQueuedCommands()} and determine when
- * {@link #autocommit()} will be invoked (when reaching {@link #MAX_BATCH_SIZE}.
+ * {@link #autocommit()} will be invoked (when reaching {@link #MAX_BATCH_SIZE} or when the request reaches
+ * <tt>elasticsearch.bulk.maxRequestBytes</tt>).
+ * <p>
+ * Each command is serialized into a {@link BulkRequestBuffer} as soon as it is queued, therefore only the serialized
+ * form of the commands is kept in memory. Setting <tt>elasticsearch.bulk.compress</tt> enables gzip compression
+ * of the bulk requests.
  * <p>
  * Note that {@link sirius.db.mixing.annotations.AfterSave} and {@link sirius.db.mixing.types.BaseEntityRef.OnDelete}
  * handlers are <tt>not</tt> executed!
@@ -46,18 +53,27 @@ public class BulkContext implements Closeable {
     private static final String KEY_PRIMARY_TERM = "if_primary_term";
     private static final String KEY_SEQ_NO = "if_seq_no";
     private static final String KEY_ROUTING = "routing";
+    private static final String KEY_DOC = "doc";
+    private static final String KEY_SCRIPT = "script";
 
     protected static final String COMMAND_INDEX = "index";
     protected static final String COMMAND_DELETE = "delete";
     protected static final String COMMAND_CREATE = "create";
     protected static final String COMMAND_UPDATE = "update";
 
-    private LowLevelClient client;
-    private List<JSONObject> commands;
+    protected LowLevelClient client;
+    protected BulkRequestBuffer commands;
+    protected Set<EntityDescriptor> queuedDescriptors = new HashSet<>();
 
     @Part
     private static Elastic elastic;
 
+    @ConfigValue("elasticsearch.bulk.maxRequestBytes")
+    private static long maxRequestBytes;
+
+    @ConfigValue("elasticsearch.bulk.compress")
+    protected static boolean compress;
+
     /**
      * Creates a new instance using the given client.
      *
@@ -66,7 +82,7 @@ public class BulkContext implements Closeable {
      */
     protected BulkContext(LowLevelClient client) {
         this.client = client;
-        this.commands = new ArrayList<>();
+        this.commands = new BulkRequestBuffer(compress);
     }
 
     /**
@@ -113,12 +129,47 @@ public class BulkContext implements Closeable {
         return this;
     }
 
-    private void update(ElasticEntity entity, boolean force) {
+    /**
+     * Queues the modifications of the given {@link ElasticUpdater} in the batch context.
+     * <p>
+     * Just like {@link #tryUpdate(ElasticEntity)}, this performs an optimistic locking check for versioned entities.
+     *
+     * @param updater the updater which contains the entity and modifications to apply
+     * @return the batch context itself for fluent method calls
+     */
+    public BulkContext tryUpdate(ElasticUpdater updater) {
+        if (updater.isEmpty()) {
+            return this;
+        }
+
+        ElasticEntity entity = updater.getEntity();
         EntityDescriptor ed = entity.getDescriptor();
 
+        JSONObject meta = builtMetadata(entity, false, ed);
+        commands.addCommand(new JSONObject().fluentPut(COMMAND_UPDATE, meta),
+                            new JSONObject().fluentPut(KEY_SCRIPT, updater.buildScript()));
+        queuedDescriptors.add(ed);
+        autocommit();
+        return this;
+    }
+
+    private void update(ElasticEntity entity, boolean force) {
+        EntityDescriptor ed = entity.getDescriptor();
         ed.beforeSave(entity);
 
+        JSONObject changes = entity.isNew() ? null : elastic.collectChangedProperties(ed, entity);
         JSONObject meta = builtMetadata(entity, force, ed);
+        if (changes != null) {
+            if (!changes.isEmpty()) {
+                commands.addCommand(new JSONObject().fluentPut(COMMAND_UPDATE, meta),
+                                    new JSONObject().fluentPut(KEY_DOC, changes),
+                                    true);
+                queuedDescriptors.add(ed);
+                autocommit();
+            }
+            return;
+        }
+
         JSONObject data = new JSONObject();
         boolean changed = elastic.toJSON(ed, entity, data);
 
@@ -126,13 +177,14 @@ public class BulkContext implements Closeable {
             return;
         }
 
-        commands.add(new JSONObject().fluentPut(COMMAND_INDEX, meta));
-        commands.add(data);
+        commands.addCommand(new JSONObject().fluentPut(COMMAND_INDEX, meta), data);
+        queuedDescriptors.add(ed);
         autocommit();
     }
 
     private void autocommit() {
-        if (commands.size() >= MAX_BATCH_SIZE) {
+        if (commands.getNumberOfLines() >= MAX_BATCH_SIZE
+            || (maxRequestBytes > 0 && commands.getSizeInBytes() >= maxRequestBytes)) {
             commit().throwFailures();
         }
     }
@@ -166,7 +218,8 @@ public class BulkContext implements Closeable {
         entityDescriptor.beforeDelete(entity);
 
         JSONObject meta = builtMetadata(entity, force, entityDescriptor);
-        commands.add(new JSONObject().fluentPut(COMMAND_DELETE, meta));
+        commands.addCommand(new JSONObject().fluentPut(COMMAND_DELETE, meta), null);
+        queuedDescriptors.add(entityDescriptor);
         autocommit();
     }
 
@@ -196,17 +249,31 @@ public class BulkContext implements Closeable {
                                     "An error occurred while executing a bulk update against Elasticsearch: %s (%s)")
                             .handle();
         } finally {
-            commands.clear();
+            commands.reset();
+            // The write epochs are incremented once the request has been executed, so that no aggregation which
+            // is computed concurrently is cached for the new epoch while still reporting the old data...
+            markWritten(queuedDescriptors);
+            queuedDescriptors.clear();
         }
     }
 
+    /**
+     * Records that the given entity types have been written by an executed bulk request.
+     *
+     * @param descriptors the descriptors of the entity types which have been written
+     * @see Elastic#markWritten(EntityDescriptor)
+     */
+    protected void markWritten(Collection<EntityDescriptor> descriptors) {
+        descriptors.forEach(elastic::markWritten);
+    }
+
     /**
      * Returns the number of queued commands.
      *
      * @return the number of currently queued command
      */
     public int countQueuedCommands() {
-        return commands.size();
+        return commands.getNumberOfCommands();
     }
 
     /**
@@ -219,7 +286,8 @@ public class BulkContext implements Closeable {
      * @return <tt>true</tt> if {@link #commit()} should be called manually, <tt>false</tt> otherwise
      */
     public boolean shouldCommitManually() {
-        return countQueuedCommands() >= RECOMMENDED_BATCH_SIZE;
+        // The recommended batch size refers to the number of lines (actions and sources) in the request...
+        return commands.getNumberOfLines() >= RECOMMENDED_BATCH_SIZE;
     }
 
     /**
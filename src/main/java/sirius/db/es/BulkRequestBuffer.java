@@ -0,0 +1,228 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.db.es;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import sirius.kernel.health.Exceptions;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Collects the commands of a bulk request as newline delimited JSON.
+ * <p>
+ * Each command is serialized directly into a byte buffer once it is added. This way, the JSON objects can be
+ * discarded immediately and the request body is never materialized as string. Once the request has been executed,
+ * the buffer is {@link #reset()} and re-used for the next request.
+ * <p>
+ * As the start of each command is tracked, single commands can be {@link #copyCommandsTo(Collection,
+ * BulkRequestBuffer) copied} into another buffer, e.g. to retry them.
+ * <p>
+ * Optionally, the request body can be compressed using gzip, which is transparently supported by Elasticsearch.
+ */
+@NotThreadSafe
+public class BulkRequestBuffer {
+
+    private static final byte NEWLINE = '\n';
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    private static final ContentType CONTENT_TYPE_NDJSON = ContentType.create("application/x-ndjson");
+
+    /**
+     * Provides direct access to the internal buffer to avoid copying it when creating the request entity.
+     */
+    private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+
+        ExposedByteArrayOutputStream(int size) {
+            super(size);
+        }
+
+        protected byte[] getBuffer() {
+            return buf;
+        }
+    }
+
+    private final boolean compress;
+    private final ExposedByteArrayOutputStream buffer = new ExposedByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+    private final List<Integer> commandOffsets = new ArrayList<>();
+    private int numberOfLines;
+
+    /**
+     * Creates a new buffer.
+     *
+     * @param compress determines if the request body should be compressed using gzip
+     */
+    public BulkRequestBuffer(boolean compress) {
+        this.compress = compress;
+    }
+
+    /**
+     * Serializes the given command into the buffer.
+     *
+     * @param action the action and metadata of the command (e.g. <tt>{"index": {"_id": ...}}</tt>)
+     * @param source the document to send along (for <tt>index</tt>, <tt>create</tt> and <tt>update</tt>) or
+     *               <tt>null</tt> if the action has no source (e.g. <tt>delete</tt>)
+     */
+    public void addCommand(JSONObject action, @Nullable JSONObject source) {
+        addCommand(action, source, false);
+    }
+
+    /**
+     * Serializes the given command into the buffer.
+     *
+     * @param action          the action and metadata of the command (e.g. <tt>{"update": {"_id": ...}}</tt>)
+     * @param source          the document to send along or <tt>null</tt> if the action has no source
+     * @param writeNullValues determines if <tt>null</tt> values of the source are sent explicitly rather than being
+     *                        omitted. This is required for the <tt>doc</tt> of a partial update, where a
+     *                        <tt>null</tt> clears the field
+     */
+    public void addCommand(JSONObject action, @Nullable JSONObject source, boolean writeNullValues) {
+        commandOffsets.add(buffer.size());
+        writeLine(action, false);
+        if (source != null) {
+            writeLine(source, writeNullValues);
+        }
+    }
+
+    private void writeLine(JSONObject line, boolean writeNullValues) {
+        try {
+            if (writeNullValues) {
+                JSON.writeJSONString(buffer,
+                                     line,
+                                     SerializerFeature.DisableCircularReferenceDetect,
+                                     SerializerFeature.WriteMapNullValue);
+            } else {
+                JSON.writeJSONString(buffer, line, SerializerFeature.DisableCircularReferenceDetect);
+            }
+            buffer.write(NEWLINE);
+            numberOfLines++;
+        } catch (IOException e) {
+            throw Exceptions.handle()
+                            .to(Elastic.LOG)
+                            .error(e)
+                            .withSystemErrorMessage("Failed to serialize a bulk command: %s (%s)")
+                            .handle();
+        }
+    }
+
+    /**
+     * Copies the commands with the given indices into the given buffer.
+     *
+     * @param commandIndices the indices of the commands to copy (in the order in which they were added and in which
+     *                       Elasticsearch reports the items of the bulk response)
+     * @param target         the buffer to copy the commands to
+     */
+    public void copyCommandsTo(Collection<Integer> commandIndices, BulkRequestBuffer target) {
+        for (int index : commandIndices) {
+            int start = commandOffsets.get(index);
+            int end = index + 1 < commandOffsets.size() ? commandOffsets.get(index + 1) : buffer.size();
+
+            target.commandOffsets.add(target.buffer.size());
+            target.buffer.write(buffer.getBuffer(), start, end - start);
+            for (int i = start; i < end; i++) {
+                if (buffer.getBuffer()[i] == NEWLINE) {
+                    target.numberOfLines++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of lines (actions and sources) in the buffer.
+     *
+     * @return the number of lines added since the last reset
+     */
+    public int getNumberOfLines() {
+        return numberOfLines;
+    }
+
+    /**
+     * Returns the number of commands in the buffer.
+     * <p>
+     * This is also the number of items which will be reported in the bulk response.
+     *
+     * @return the number of commands added since the last reset
+     */
+    public int getNumberOfCommands() {
+        return commandOffsets.size();
+    }
+
+    /**
+     * Returns the size of the request body.
+     * <p>
+     * Note that this is the uncompressed size, as this determines the amount of work to be done by Elasticsearch.
+     *
+     * @return the size of the request body in bytes
+     */
+    public long getSizeInBytes() {
+        return buffer.size();
+    }
+
+    /**
+     * Determines if the buffer is empty.
+     *
+     * @return <tt>true</tt> if no command has been added since the last reset, <tt>false</tt> otherwise
+     */
+    public boolean isEmpty() {
+        return commandOffsets.isEmpty();
+    }
+
+    /**
+     * Wraps the request body as entity.
+     * <p>
+     * Note that (unless compression is enabled) the entity directly refers to the internal buffer. Therefore no
+     * commands must be added until the request has been executed and the buffer has been {@link #reset()}.
+     *
+     * @return the entity to send to Elasticsearch
+     */
+    protected HttpEntity toEntity() {
+        if (!compress) {
+            return new ByteArrayEntity(buffer.getBuffer(), 0, buffer.size(), CONTENT_TYPE_NDJSON);
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(buffer.size() / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            buffer.writeTo(out);
+        } catch (IOException e) {
+            throw Exceptions.handle()
+                            .to(Elastic.LOG)
+                            .error(e)
+                            .withSystemErrorMessage("Failed to compress a bulk request: %s (%s)")
+                            .handle();
+        }
+
+        ByteArrayEntity entity = new ByteArrayEntity(compressed.toByteArray(), CONTENT_TYPE_NDJSON);
+        entity.setContentEncoding("gzip");
+        return entity;
+    }
+
+    /**
+     * Discards all commands so that the buffer can be re-used for the next request.
+     */
+    public void reset() {
+        buffer.reset();
+        commandOffsets.clear();
+        numberOfLines = 0;
+    }
+
+    @Override
+    public String toString() {
+        return getNumberOfCommands() + " bulk commands (" + getSizeInBytes() + " bytes)";
+    }
+}
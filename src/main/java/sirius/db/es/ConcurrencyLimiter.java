@@ -0,0 +1,183 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.db.es;
+
+import sirius.kernel.commons.Strings;
+import sirius.kernel.health.Counter;
+
+import java.time.Duration;
+
+/**
+ * Internal limiter which protects the application from a slow or failing Elasticsearch cluster.
+ * <p>
+ * The number of concurrent requests is limited by an AIMD (additive increase, multiplicative decrease) scheme:
+ * Each call which is slower than the latency threshold or which failed due to an overloaded or unavailable
+ * cluster reduces the limit by 10%. Each successful call, which was made while at least half of the limit was
+ * in use, increases it by one. Requests beyond the limit are rejected immediately, instead of blocking a thread
+ * for up to the socket timeout.
+ * <p>
+ * Additionally a circuit breaker is maintained. Once a given number of consecutive calls failed, all requests are
+ * rejected for the given duration. Afterwards a single probe request is let through, which either closes the
+ * circuit again or re-opens it. Only the outcome of the probe itself decides this, as requests which were started
+ * before the circuit was opened might still complete in the meantime.
+ * <p>
+ * Note that all nodes of the cluster are handled as a whole, as the underlying REST client already distributes
+ * the requests and blacklists nodes which cannot be reached.
+ * <p>
+ * Also note that only requests executed via {@link RequestBuilder#execute(String)} or the promise based
+ * {@link RequestBuilder#executeAsync(String, java.util.function.Function)} are limited. Bulk requests of the
+ * {@link ConcurrentBulkContext} (which limits its requests on its own and retries rejected commands), as well as
+ * fire-and-forget requests like {@link LowLevelClient#forceMerge(String, int)} and
+ * {@link LowLevelClient#reindex(String, String, java.util.function.Consumer, java.util.function.Consumer)} are
+ * neither limited nor reported to the limiter.
+ */
+class ConcurrencyLimiter {
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdMillis;
+    private final int failureThreshold;
+    private final long openDurationMillis;
+
+    private double limit;
+    private int inFlight;
+    private int consecutiveFailures;
+    private long openUntil;
+    private boolean probing;
+
+    protected Counter numRejected = new Counter();
+
+    /**
+     * Creates a new limiter.
+     *
+     * @param initialLimit     the initial number of concurrent requests
+     * @param minLimit         the lower bound of the limit
+     * @param maxLimit         the upper bound of the limit
+     * @param latencyThreshold the duration of a call from which on it is considered too slow
+     * @param failureThreshold the number of consecutive failures which open the circuit
+     * @param openDuration     the duration for which the circuit is kept open
+     */
+    ConcurrencyLimiter(int initialLimit,
+                       int minLimit,
+                       int maxLimit,
+                       Duration latencyThreshold,
+                       int failureThreshold,
+                       Duration openDuration) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.latencyThresholdMillis = latencyThreshold.toMillis();
+        this.failureThreshold = failureThreshold;
+        this.openDurationMillis = openDuration.toMillis();
+    }
+
+    /**
+     * Reserves a slot for a request.
+     * <p>
+     * Every successful call has to be followed by a call to {@link #release(long, boolean, boolean)}.
+     *
+     * @param description the request to be executed, used for the error message
+     * @return <tt>true</tt> if the request is the probe which decides if the circuit breaker is closed again,
+     * <tt>false</tt> otherwise. This has to be passed on to {@link #release(long, boolean, boolean)}
+     * @throws ElasticOverloadedException if the request is rejected
+     */
+    synchronized boolean acquire(String description) {
+        boolean probe = false;
+        if (openUntil > 0) {
+            if (probing || System.currentTimeMillis() < openUntil) {
+                reject("The circuit breaker is open, rejecting: %s", description);
+            }
+
+            // The circuit is half open: let a single request through to check if the cluster has recovered...
+            probing = true;
+            probe = true;
+        } else if (inFlight >= (int) limit) {
+            reject("The concurrency limit (%s) has been reached, rejecting: %s", (int) limit, description);
+        }
+
+        inFlight++;
+        return probe;
+    }
+
+    private void reject(String message, Object... params) {
+        numRejected.inc();
+        throw new ElasticOverloadedException(Strings.apply(message, params));
+    }
+
+    /**
+     * Releases the slot of a completed request and adapts the limit and the circuit breaker.
+     *
+     * @param durationMillis the duration of the request or 0 if the request is known to be slow and its latency
+     *                       must therefore not reduce the limit
+     * @param failed         <tt>true</tt> if the request failed as the cluster was overloaded or unavailable
+     * @param probe          the value returned by {@link #acquire(String)} for this request
+     */
+    synchronized void release(long durationMillis, boolean failed, boolean probe) {
+        boolean wasSaturated = inFlight * 2 >= limit;
+        inFlight = Math.max(0, inFlight - 1);
+
+        if (failed || durationMillis > latencyThresholdMillis) {
+            limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+        } else if (wasSaturated) {
+            limit = Math.min(maxLimit, limit + 1);
+        }
+
+        if (probe) {
+            probing = false;
+            if (failed) {
+                openUntil = System.currentTimeMillis() + openDurationMillis;
+            } else {
+                Elastic.LOG.INFO("Closing the circuit breaker for Elasticsearch, as the cluster is reachable again.");
+                consecutiveFailures = 0;
+                openUntil = 0;
+            }
+            return;
+        }
+
+        if (failed) {
+            consecutiveFailures++;
+            if (openUntil == 0 && failureThreshold > 0 && consecutiveFailures >= failureThreshold) {
+                Elastic.LOG.WARN("Opening the circuit breaker for Elasticsearch after %s consecutive failures.",
+                                 consecutiveFailures);
+                openUntil = System.currentTimeMillis() + openDurationMillis;
+            }
+        } else if (openUntil == 0) {
+            consecutiveFailures = 0;
+        }
+    }
+
+    /**
+     * Returns the current concurrency limit.
+     *
+     * @return the number of requests which may be executed concurrently
+     */
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Returns the number of requests currently being executed.
+     *
+     * @return the number of requests in flight
+     */
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Determines if the circuit breaker is currently open (or half open).
+     *
+     * @return <tt>true</tt> if requests are being rejected due to previous failures, <tt>false</tt> otherwise
+     */
+    synchronized boolean isOpen() {
+        return openUntil > 0;
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.db.es;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.ResponseListener;
+import sirius.db.mixing.EntityDescriptor;
+import sirius.kernel.async.Tasks;
+import sirius.kernel.commons.Strings;
+import sirius.kernel.commons.Wait;
+import sirius.kernel.di.std.ConfigValue;
+import sirius.kernel.di.std.Part;
+import sirius.kernel.health.Exceptions;
+import sirius.kernel.health.HandledException;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Provides a {@link BulkContext} which executes its bulk requests concurrently.
+ * <p>
+ * Instead of waiting for each bulk request to complete, {@link #commit()} only hands the queued commands over to
+ * the client, which executes them asynchronously. Up to <tt>elasticsearch.bulk.maxInFlightRequests</tt> requests
+ * are executed at the same time. Once this limit is reached, {@link #commit()} (and therefore also the methods which
+ * queue commands) blocks until a request has been completed. This provides a natural backpressure for the producer.
+ * <p>
+ * Commands which are rejected as Elasticsearch is overloaded (HTTP 429 / <tt>es_rejected_execution_exception</tt>)
+ * are retried using an exponential backoff. All other failures are collected and reported by
+ * {@link #awaitCompletion()}, which is also invoked by {@link #close()}.
+ * <p>
+ * Note that the commands of different bulk requests may be executed in any order. Therefore this should only be used
+ * if each entity is updated at most once (e.g. when re-indexing data).
+ */
+@NotThreadSafe
+public class ConcurrentBulkContext extends BulkContext {
+
+    private static final int HTTP_STATUS_TOO_MANY_REQUESTS = 429;
+    private static final String RESPONSE_KEY_ERRORS = "errors";
+    private static final String RESPONSE_KEY_ITEMS = "items";
+    private static final String RESPONSE_KEY_ERROR = "error";
+    private static final String RESPONSE_KEY_STATUS = "status";
+    private static final String EXECUTOR_ELASTIC_BULK_RETRY = "elastic-bulk-retry";
+
+    @ConfigValue("elasticsearch.bulk.maxInFlightRequests")
+    private static int defaultMaxInFlightRequests;
+
+    @ConfigValue("elasticsearch.bulk.maxRetries")
+    private static int maxRetries;
+
+    @ConfigValue("elasticsearch.bulk.initialBackoff")
+    private static Duration initialBackoff;
+
+    @Part
+    private static Tasks tasks;
+
+    private final int maxInFlightRequests;
+    private final Semaphore inFlightRequests;
+    private final Queue<BulkRequestBuffer> freeBuffers = new ConcurrentLinkedQueue<>();
+    private final List<HandledException> errors = new ArrayList<>();
+    private JSONArray failedItems = new JSONArray();
+    private final Set<EntityDescriptor> committedDescriptors = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates a new instance using the given client.
+     *
+     * @param client              the client used to execute the bulk requests
+     * @param maxInFlightRequests the maximal number of requests to execute concurrently or 0 to use the default
+     *                            given in <tt>elasticsearch.bulk.maxInFlightRequests</tt>
+     * @see Elastic#concurrentBatch(int)
+     */
+    protected ConcurrentBulkContext(LowLevelClient client, int maxInFlightRequests) {
+        super(client);
+        this.maxInFlightRequests =
+                Math.max(1, maxInFlightRequests > 0 ? maxInFlightRequests : defaultMaxInFlightRequests);
+        this.inFlightRequests = new Semaphore(this.maxInFlightRequests);
+    }
+
+    /**
+     * Hands the queued commands over to be executed asynchronously.
+     * <p>
+     * If the maximal number of concurrent requests has been reached, this blocks until one of these has been
+     * completed.
+     *
+     * @return an empty result, as the result of the request isn't known yet. Use {@link #awaitCompletion()} to
+     * obtain the aggregated result of all requests
+     */
+    @Override
+    public BulkResult commit() {
+        if (commands.isEmpty()) {
+            return new BulkResult(null);
+        }
+
+        BulkRequestBuffer batch = commands;
+        commands = obtainBuffer();
+        committedDescriptors.addAll(queuedDescriptors);
+        queuedDescriptors.clear();
+
+        inFlightRequests.acquireUninterruptibly();
+        try {
+            execute(batch, 0);
+        } catch (Exception e) {
+            complete(batch);
+            throw Exceptions.handle()
+                            .to(Elastic.LOG)
+                            .error(e)
+                            .withSystemErrorMessage(
+                                    "An error occurred while executing a bulk update against Elasticsearch: %s (%s)")
+                            .handle();
+        }
+
+        return new BulkResult(null);
+    }
+
+    private BulkRequestBuffer obtainBuffer() {
+        BulkRequestBuffer buffer = freeBuffers.poll();
+        return buffer != null ? buffer : new BulkRequestBuffer(compress);
+    }
+
+    private void execute(BulkRequestBuffer batch, int attempt) {
+        client.bulkAsync(batch, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                try {
+                    handleResponse(batch, attempt, response);
+                } catch (Exception e) {
+                    recordError(e);
+                    complete(batch);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                handleFailure(batch, attempt, exception);
+            }
+        });
+    }
+
+    private void handleResponse(BulkRequestBuffer batch, int attempt, Response response) throws IOException {
+        JSONObject bulkResponse;
+        try (InputStream content = RequestBuilder.decodeEntity(response.getEntity()).getContent()) {
+            bulkResponse = JSON.parseObject(content, StandardCharsets.UTF_8, JSONObject.class);
+        }
+
+        if (!bulkResponse.getBooleanValue(RESPONSE_KEY_ERRORS)) {
+            complete(batch);
+            return;
+        }
+
+        List<Integer> rejectedCommands = new ArrayList<>();
+        JSONArray items = bulkResponse.getJSONArray(RESPONSE_KEY_ITEMS);
+        for (int i = 0; i < items.size(); i++) {
+            JSONObject item = items.getJSONObject(i);
+            JSONObject result = item.values().stream().findFirst().map(JSONObject.class::cast).orElse(null);
+            if (result == null || result.getJSONObject(RESPONSE_KEY_ERROR) == null) {
+                continue;
+            }
+
+            if (result.getIntValue(RESPONSE_KEY_STATUS) == HTTP_STATUS_TOO_MANY_REQUESTS && attempt < maxRetries) {
+                rejectedCommands.add(i);
+            } else {
+                recordFailedItem(item);
+            }
+        }
+
+        if (rejectedCommands.isEmpty()) {
+            complete(batch);
+            return;
+        }
+
+        // Only retry the commands which were rejected, as all others have already been executed...
+        BulkRequestBuffer retry = obtainBuffer();
+        batch.copyCommandsTo(rejectedCommands, retry);
+        batch.reset();
+        freeBuffers.offer(batch);
+        scheduleRetry(retry, attempt + 1);
+    }
+
+    private void handleFailure(BulkRequestBuffer batch, int attempt, Exception exception) {
+        if (exception instanceof ResponseException
+            && ((ResponseException) exception).getResponse().getStatusLine().getStatusCode()
+               == HTTP_STATUS_TOO_MANY_REQUESTS
+            && attempt < maxRetries) {
+            scheduleRetry(batch, attempt + 1);
+            return;
+        }
+
+        recordError(exception);
+        complete(batch);
+    }
+
+    private void scheduleRetry(BulkRequestBuffer batch, int attempt) {
+        // Ensures that the batch is completed exactly once, even if the retry is dropped by the executor...
+        AtomicBoolean handled = new AtomicBoolean();
+        Runnable abandon = () -> {
+            if (handled.compareAndSet(false, true)) {
+                String message = Strings.apply("The retry of %s was dropped by the executor '%s'.",
+                                               batch,
+                                               EXECUTOR_ELASTIC_BULK_RETRY);
+                recordError(new RejectedExecutionException(message));
+                complete(batch);
+            }
+        };
+
+        try {
+            // We must not block the I/O thread of the client, therefore we wait in a separate thread...
+            tasks.executor(EXECUTOR_ELASTIC_BULK_RETRY).dropOnOverload(abandon).start(() -> {
+                if (!handled.compareAndSet(false, true)) {
+                    return;
+                }
+
+                Wait.millis((int) (initialBackoff.toMillis() << (attempt - 1)));
+                try {
+                    execute(batch, attempt);
+                } catch (Exception e) {
+                    recordError(e);
+                    complete(batch);
+                }
+            });
+        } catch (Exception e) {
+            if (handled.compareAndSet(false, true)) {
+                recordError(e);
+                complete(batch);
+            }
+        }
+    }
+
+    private synchronized void recordFailedItem(JSONObject item) {
+        failedItems.add(item);
+    }
+
+    private void recordError(Exception exception) {
+        HandledException handledException =
+                Exceptions.handle()
+                          .to(Elastic.LOG)
+                          .error(exception)
+                          .withSystemErrorMessage(
+                                  "An error occurred while executing a bulk update against Elasticsearch: %s (%s)")
+                          .handle();
+        synchronized (this) {
+            errors.add(handledException);
+        }
+    }
+
+    private void complete(BulkRequestBuffer batch) {
+        batch.reset();
+        freeBuffers.offer(batch);
+        // As the commands of the batch are unknown at this point, we increment the write epochs of all types
+        // written by this context. This must happen before the request is released, so that awaitCompletion
+        // doesn't return before all epochs have been incremented...
+        markWritten(committedDescriptors);
+        inFlightRequests.release();
+    }
+
+    /**
+     * Executes all queued commands and waits until all requests have been completed.
+     *
+     * @return the aggregated result of all requests which have been completed since the last call of this method
+     * @throws HandledException if one of the requests failed as a whole
+     */
+    public BulkResult awaitCompletion() {
+        commit();
+
+        inFlightRequests.acquireUninterruptibly(maxInFlightRequests);
+        inFlightRequests.release(maxInFlightRequests);
+
+        synchronized (this) {
+            if (!errors.isEmpty()) {
+                HandledException error = errors.get(0);
+                errors.clear();
+                throw error;
+            }
+
+            JSONArray items = failedItems;
+            failedItems = new JSONArray();
+            return new BulkResult(new JSONObject().fluentPut(RESPONSE_KEY_ERRORS, !items.isEmpty())
+                                                  .fluentPut(RESPONSE_KEY_ITEMS, items));
+        }
+    }
+
+    /**
+     * Waits until all requests have been completed and throws an exception if any of them failed.
+     */
+    @Override
+    public void close() {
+        awaitCompletion().throwFailures();
+    }
+}
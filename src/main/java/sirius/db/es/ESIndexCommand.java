@@ -23,7 +23,7 @@ import java.util.EnumSet;
 /**
  * Provides a tool which helps with managing Elasticsearch indices and our mapping of {@link ElasticEntity entities}.
  * <p>
- * This lists all known entities and the indices which are currently in use. Also supports to create, commit
+ * This lists all known entities and the indices which are currently in use. Also supports to create, fill, commit
  * and rollback a write index per entity.
  * <p>
  * Finally this permits to entirely wipe and delete an index which should be used VERY CAREFULLY!
@@ -53,6 +53,7 @@ public class ESIndexCommand implements Command {
             output.blankLine();
             output.line("Usage:");
             output.line("es-index create-write-index <Entity>");
+            output.line("es-index reindex <Entity> [<Slices>] [<Requests per second>]");
             output.line("es-index commit-write-index <Entity>");
             output.line("es-index rollback-write-index <Entity>");
             output.line(
@@ -72,6 +73,14 @@ public class ESIndexCommand implements Command {
             return true;
         }
 
+        if ("reindex".equals(subCommand)) {
+            elastic.reindexIntoWriteIndex(mixing.getDescriptor(args.at(1).asString()),
+                                          args.at(2).asInt(0),
+                                          args.at(3).asInt(0));
+            output.line("The write index has been filled...");
+            return true;
+        }
+
         if ("commit-write-index".equals(subCommand)) {
             elastic.commitWriteIndex(mixing.getDescriptor(args.at(1).asString()));
             output.line("The write index has been commited...");
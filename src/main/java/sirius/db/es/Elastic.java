@@ -8,8 +8,17 @@
 
 package sirius.db.es;
 
+import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.JSONReader;
 import org.apache.http.HttpHost;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
 import org.elasticsearch.client.Request;
 import org.elasticsearch.client.RestClient;
 import org.elasticsearch.client.RestClientBuilder;
@@ -21,13 +30,18 @@ import sirius.db.mixing.BaseMapper;
 import sirius.db.mixing.ContextInfo;
 import sirius.db.mixing.EntityDescriptor;
 import sirius.db.mixing.Mapping;
+import sirius.db.mixing.OptimisticLockException;
 import sirius.db.mixing.Property;
 import sirius.db.mixing.query.constraints.FilterFactory;
 import sirius.kernel.async.ExecutionPoint;
 import sirius.kernel.async.Future;
+import sirius.kernel.async.TaskContext;
+import sirius.kernel.cache.Cache;
+import sirius.kernel.cache.CacheManager;
 import sirius.kernel.commons.Strings;
 import sirius.kernel.commons.Tuple;
 import sirius.kernel.commons.Value;
+import sirius.kernel.commons.ValueHolder;
 import sirius.kernel.commons.Wait;
 import sirius.kernel.di.std.ConfigValue;
 import sirius.kernel.di.std.Part;
@@ -40,14 +54,21 @@ import sirius.kernel.settings.PortMapper;
 
 import javax.annotation.Nullable;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 /**
@@ -77,6 +98,15 @@ public class Elastic extends BaseMapper<ElasticEntity, ElasticConstraint, Elasti
     private static final String RESPONSE_SEQ_NO = "_seq_no";
     private static final String RESPONSE_FOUND = "found";
     private static final String RESPONSE_SOURCE = "_source";
+    private static final String RESPONSE_DOCS = "docs";
+    private static final String SETTINGS_INDEX = "index";
+    private static final String SETTINGS_REFRESH_INTERVAL = "refresh_interval";
+    private static final String SETTINGS_NUMBER_OF_REPLICAS = "number_of_replicas";
+    private static final String TASK_COMPLETED = "completed";
+    private static final String TASK_TASK = "task";
+    private static final String TASK_STATUS = "status";
+    private static final String TASK_ERROR = "error";
+    private static final String TASK_RESPONSE = "response";
 
     /**
      * Contains the name of the ID field used by Elasticsearch
@@ -101,6 +131,54 @@ public class Elastic extends BaseMapper<ElasticEntity, ElasticConstraint, Elasti
     @ConfigValue("elasticsearch.hosts")
     private String hosts;
 
+    @ConfigValue("elasticsearch.http.maxConnectionsPerRoute")
+    private int maxConnectionsPerRoute;
+
+    @ConfigValue("elasticsearch.http.maxConnections")
+    private int maxConnections;
+
+    @ConfigValue("elasticsearch.http.ioThreads")
+    private int ioThreads;
+
+    @ConfigValue("elasticsearch.http.keepAlive")
+    private Duration keepAlive;
+
+    @ConfigValue("elasticsearch.http.connectTimeout")
+    private Duration connectTimeout;
+
+    @ConfigValue("elasticsearch.http.socketTimeout")
+    private Duration socketTimeout;
+
+    @ConfigValue("elasticsearch.multiGetChunkSize")
+    private int multiGetChunkSize;
+
+    @ConfigValue("elasticsearch.reindex.pollInterval")
+    private Duration reindexPollInterval;
+
+    @ConfigValue("elasticsearch.aggregationCache.refreshWindow")
+    private Duration aggregationCacheRefreshWindow;
+
+    @ConfigValue("elasticsearch.limiter.enabled")
+    private boolean limiterEnabled;
+
+    @ConfigValue("elasticsearch.limiter.initialLimit")
+    private int limiterInitialLimit;
+
+    @ConfigValue("elasticsearch.limiter.minLimit")
+    private int limiterMinLimit;
+
+    @ConfigValue("elasticsearch.limiter.maxLimit")
+    private int limiterMaxLimit;
+
+    @ConfigValue("elasticsearch.limiter.latencyThreshold")
+    private Duration limiterLatencyThreshold;
+
+    @ConfigValue("elasticsearch.limiter.failureThreshold")
+    private int limiterFailureThreshold;
+
+    @ConfigValue("elasticsearch.limiter.openDuration")
+    private Duration limiterOpenDuration;
+
     @ConfigValue("elasticsearch.logQueryThreshold")
     private static Duration logQueryThreshold;
     private static long logQueryThresholdMillis = -1;
@@ -116,19 +194,43 @@ public class Elastic extends BaseMapper<ElasticEntity, ElasticConstraint, Elasti
         READ, WRITE
     }
 
+    /**
+     * Contains the settings of an index for which refreshing has been suspended by one or more operations.
+     */
+    private static class SuspendedIndexSettings {
+        private final JSONObject previousSettings;
+        private boolean replicasDisabled;
+        private int numberOfUsers;
+
+        SuspendedIndexSettings(JSONObject previousSettings, boolean replicasDisabled) {
+            this.previousSettings = previousSettings;
+            this.replicasDisabled = replicasDisabled;
+        }
+    }
+
     @ConfigValue("elasticsearch.suppressedRoutings")
     private List<String> suppressedRoutings;
     private Map<EntityDescriptor, EnumSet<RoutingAccessMode>> suppressedRoutingsMap = new HashMap<>();
     private static final EnumSet<RoutingAccessMode> NO_SUPPRESSION = EnumSet.noneOf(RoutingAccessMode.class);
 
     private LowLevelClient client;
+    private PoolingNHttpClientConnectionManager connectionManager;
+    protected ConcurrencyLimiter concurrencyLimiter;
 
     protected Future readyFuture = new Future();
     protected Average callDuration = new Average();
     protected Counter numSlowQueries = new Counter();
+    protected Average scrollBatchSize = new Average();
+    protected Counter numScrollTimeouts = new Counter();
+    private Map<EntityDescriptor, Integer> adaptiveScrollBatchSizes = new ConcurrentHashMap<>();
+    private Map<EntityDescriptor, AtomicLong> writeEpochs = new ConcurrentHashMap<>();
+    private Map<EntityDescriptor, Long> lastWriteTimestamps = new ConcurrentHashMap<>();
+    protected Cache<String, Tuple<Long, JSONObject>> aggregationCache =
+            CacheManager.createLocalCache("elastic-aggregations");
 
     private Map<EntityDescriptor, Property> routeTable = new HashMap<>();
     private Map<EntityDescriptor, String> writeIndexTable = new ConcurrentHashMap<>();
+    private final Map<String, SuspendedIndexSettings> suspendedIndexSettings = new HashMap<>();
     private boolean dockerDetected = false;
 
     protected void updateRouteTable(EntityDescriptor ed, Property p) {
@@ -171,7 +273,9 @@ public class Elastic extends BaseMapper<ElasticEntity, ElasticConstraint, Elasti
             // Fixes an Elastic bug that results in TimeoutExceptions
             // Remove this, once ES is updated to at least 6.3.1
             RestClientBuilder.RequestConfigCallback configCallback =
-                    requestConfigBuilder -> requestConfigBuilder.setConnectionRequestTimeout(0);
+                    requestConfigBuilder -> requestConfigBuilder.setConnectionRequestTimeout(0)
+                                                                .setConnectTimeout((int) connectTimeout.toMillis())
+                                                                .setSocketTimeout((int) socketTimeout.toMillis());
 
             HttpHost[] httpHosts = Arrays.stream(this.hosts.split(","))
                                          .map(String::trim)
@@ -180,7 +284,19 @@ public class Elastic extends BaseMapper<ElasticEntity, ElasticConstraint, Elasti
                                          .map(this::mapPort)
                                          .map(this::makeHttpHost)
                                          .toArray(size -> new HttpHost[size]);
-            client = new LowLevelClient(RestClient.builder(httpHosts).setRequestConfigCallback(configCallback).build());
+            connectionManager = createConnectionManager();
+            if (limiterEnabled) {
+                concurrencyLimiter = new ConcurrencyLimiter(limiterInitialLimit,
+                                                            limiterMinLimit,
+                                                            limiterMaxLimit,
+                                                            limiterLatencyThreshold,
+                                                            limiterFailureThreshold,
+                                                            limiterOpenDuration);
+            }
+            client = new LowLevelClient(RestClient.builder(httpHosts)
+                                                  .setRequestConfigCallback(configCallback)
+                                                  .setHttpClientConfigCallback(this::configureHttpClient)
+                                                  .build());
 
             // If we're using a docker container (most probably for testing), we give ES some time
             // to fully boot up. Otherwise strange connection issues might arise.
@@ -190,6 +306,66 @@ public class Elastic extends BaseMapper<ElasticEntity, ElasticConstraint, Elasti
         }
     }
 
+    /**
+     * Creates the connection pool used by the HTTP client.
+     * <p>
+     * We create the pool ourselves (instead of letting the client builder do so) so that we can
+     * {@link #getConnectionPoolStats() monitor} it.
+     *
+     * @return the connection manager to use
+     */
+    private PoolingNHttpClientConnectionManager createConnectionManager() {
+        IOReactorConfig ioReactorConfig =
+                IOReactorConfig.custom()
+                               .setIoThreadCount(ioThreads > 0 ? ioThreads : Runtime.getRuntime().availableProcessors())
+                               .setConnectTimeout((int) connectTimeout.toMillis())
+                               .setSoTimeout((int) socketTimeout.toMillis())
+                               .setSoKeepAlive(true)
+                               .build();
+        try {
+            PoolingNHttpClientConnectionManager manager =
+                    new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig));
+            manager.setMaxTotal(maxConnections);
+            manager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+            return manager;
+        } catch (IOReactorException e) {
+            throw Exceptions.handle()
+                            .to(LOG)
+                            .error(e)
+                            .withSystemErrorMessage(
+                                    "Failed to create the I/O reactor of the Elasticsearch client: %s (%s)")
+                            .handle();
+        }
+    }
+
+    private HttpAsyncClientBuilder configureHttpClient(HttpAsyncClientBuilder builder) {
+        builder.setConnectionManager(connectionManager);
+        if (!keepAlive.isZero()) {
+            builder.setKeepAliveStrategy((response, context) -> {
+                // Respect a shorter timeout announced by the server, but never keep idle connections any longer...
+                long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response,
+                                                                                                        context);
+                return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAlive.toMillis()) : keepAlive.toMillis();
+            });
+        }
+
+        return builder;
+    }
+
+    /**
+     * Returns the statistics of the connection pool used by the HTTP client.
+     * <p>
+     * A growing number of <tt>pending</tt> requests indicates that requests have to wait for a connection, in
+     * which case <tt>elasticsearch.http.maxConnectionsPerRoute</tt> and <tt>maxConnections</tt> should be
+     * increased.
+     *
+     * @return the statistics of the connection pool or <tt>null</tt> if the client hasn't been initialized yet
+     */
+    @Nullable
+    public PoolStats getConnectionPoolStats() {
+        return connectionManager == null ? null : connectionManager.getTotalStats();
+    }
+
     private void waitForElasticsearchToBecomReady() {
         int retries = 15;
         while (retries-- > 0) {
@@ -243,6 +419,14 @@ public class Elastic extends BaseMapper<ElasticEntity, ElasticConstraint, Elasti
 
     @Override
     protected void createEntity(ElasticEntity entity, EntityDescriptor ed) throws Exception {
+        try {
+            createDocument(entity, ed);
+        } finally {
+            markWritten(ed);
+        }
+    }
+
+    private void createDocument(ElasticEntity entity, EntityDescriptor ed) throws Exception {
         JSONObject data = new JSONObject();
         toJSON(ed, entity, data);
 
@@ -282,8 +466,36 @@ public class Elastic extends BaseMapper<ElasticEntity, ElasticConstraint, Elasti
         return String.valueOf(property.getValueForDatasource(Elastic.class, entity));
     }
 
+    /**
+     * Determines the name of the field which contains the routing value for the given entity type.
+     *
+     * @param ed the descriptor of the entity type
+     * @return the name of the routing field or <tt>null</tt> if the entity type isn't routed
+     */
+    @Nullable
+    protected String determineRoutingField(EntityDescriptor ed) {
+        Property property = routeTable.get(ed);
+        return property == null ? null : property.getPropertyName();
+    }
+
     @Override
     protected void updateEntity(ElasticEntity entity, boolean force, EntityDescriptor ed) throws Exception {
+        try {
+            updateDocument(entity, force, ed);
+        } finally {
+            markWritten(ed);
+        }
+    }
+
+    private void updateDocument(ElasticEntity entity, boolean force, EntityDescriptor ed) throws Exception {
+        JSONObject changes = collectChangedProperties(ed, entity);
+        if (changes != null) {
+            if (!changes.isEmpty()) {
+                updateChangedProperties(entity, force, ed, changes);
+            }
+            return;
+        }
+
         JSONObject data = new JSONObject();
         boolean changed = toJSON(ed, entity, data);
 
@@ -304,6 +516,105 @@ public class Elastic extends BaseMapper<ElasticEntity, ElasticConstraint, Elasti
         }
     }
 
+    /**
+     * Collects the changed properties of the given entity, so that only these have to be sent via <tt>_update</tt>.
+     * <p>
+     * This saves serializing and transmitting the whole document (e.g. if only a counter has been incremented).
+     * However, this is only possible if the document is known to exist in the write index. Also, as Elasticsearch
+     * merges objects recursively when applying a partial update, changing an object value still requires to
+     * re-index the whole document. For {@link ElasticEntity#isPartiallyFetched() partially fetched} entities, only
+     * the fetched properties are considered and a partial update is always performed.
+     * <p>
+     * A property which has been cleared is contained with a <tt>null</tt> value, which has to be sent explicitly
+     * (see {@link RequestBuilder#dataWithNullValues(JSONObject)}), as an omitted field would remain untouched.
+     *
+     * @param ed     the descriptor of the entity
+     * @param entity the entity to collect the changes for
+     * @return the changed properties (which might be empty) or <tt>null</tt> if the whole document has to be
+     * re-indexed
+     */
+    @Nullable
+    protected JSONObject collectChangedProperties(EntityDescriptor ed, ElasticEntity entity) {
+        boolean partiallyFetched = entity.isPartiallyFetched();
+        if (!partiallyFetched && (!entity.hasPersistedData() || writeIndexTable.containsKey(ed))) {
+            return null;
+        }
+
+        JSONObject changes = new JSONObject();
+        for (Property p : ed.getProperties()) {
+            boolean isId = ElasticEntity.ID.getName().equals(p.getName());
+            boolean isFetched = !partiallyFetched || ed.isFetched(entity, p);
+            if (!isId && isFetched && ed.isChanged(entity, p)) {
+                Object value = p.getValueForDatasource(Elastic.class, entity);
+                if (value instanceof Map && !partiallyFetched) {
+                    return null;
+                }
+                changes.put(p.getPropertyName(), value);
+            }
+        }
+
+        return changes;
+    }
+
+    /**
+     * Updates the given changed properties of an entity via the <tt>_update</tt> API.
+     * <p>
+     * In contrast to re-indexing the whole document, all fields which are not contained in the given changes remain
+     * untouched.
+     *
+     * @param entity  the entity to update
+     * @param force   <tt>true</tt> to skip the optimistic locking check, <tt>false</tt> otherwise
+     * @param ed      the descriptor of the entity
+     * @param changes the changed properties as determined by {@link #collectChangedProperties(EntityDescriptor,
+     *                ElasticEntity)}
+     */
+    private void updateChangedProperties(ElasticEntity entity, boolean force, EntityDescriptor ed, JSONObject changes)
+            throws Exception {
+        JSONObject response = getLowLevelClient().update(determineWriteAlias(ed),
+                                                         entity.getId(),
+                                                         determineRouting(ed, entity, RoutingAccessMode.WRITE),
+                                                         determinePrimaryTerm(force, ed, entity),
+                                                         determineSeqNo(force, ed, entity),
+                                                         changes);
+        applyVersion(ed, entity, response);
+    }
+
+    /**
+     * Executes the script built by the given updater.
+     * <p>
+     * Note that the version of the entity is intentionally left untouched. As the script isn't applied to the
+     * entity, its in-memory state is outdated. Keeping the old version ensures that a later update of the
+     * (versioned) entity fails with an {@link OptimisticLockException} instead of overwriting the changes of the
+     * script.
+     *
+     * @param updater the updater which contains the entity to update and the script to execute
+     * @param force   <tt>true</tt> to skip the optimistic locking check, <tt>false</tt> otherwise
+     * @throws OptimisticLockException in case of a concurrent modification
+     */
+    protected void executeUpdater(ElasticUpdater updater, boolean force) throws OptimisticLockException {
+        ElasticEntity entity = updater.getEntity();
+        EntityDescriptor ed = entity.getDescriptor();
+
+        try {
+            getLowLevelClient().updateWithScript(determineWriteAlias(ed),
+                                                 entity.getId(),
+                                                 determineRouting(ed, entity, RoutingAccessMode.WRITE),
+                                                 determinePrimaryTerm(force, ed, entity),
+                                                 determineSeqNo(force, ed, entity),
+                                                 updater.buildScript());
+        } finally {
+            markWritten(ed);
+        }
+    }
+
+    private void applyVersion(EntityDescriptor ed, ElasticEntity entity, JSONObject response) {
+        // A partial update which doesn't change anything ("noop") might not report a new version...
+        if (ed.isVersioned() && response.containsKey(RESPONSE_SEQ_NO)) {
+            entity.setPrimaryTerm(response.getLong(RESPONSE_PRIMARY_TERM));
+            entity.setSeqNo(response.getLong(RESPONSE_SEQ_NO));
+        }
+    }
+
     /**
      * Transforms the given entity to JSON.
      *
@@ -323,6 +634,29 @@ public class Elastic extends BaseMapper<ElasticEntity, ElasticConstraint, Elasti
         return changed;
     }
 
+    /**
+     * Re-creates the <tt>_source</tt> of the given entity, which has been loaded without retaining it.
+     * <p>
+     * For {@link ElasticEntity#isPartiallyFetched() partially fetched} entities, only the fetched properties are
+     * contained. Note that the values are taken from the entity, therefore any modification made after loading
+     * the entity is reflected.
+     *
+     * @param ed     the descriptor of the entity
+     * @param entity the entity to transform
+     * @return the <tt>_source</tt> as JSON
+     */
+    protected JSONObject toSource(EntityDescriptor ed, ElasticEntity entity) {
+        JSONObject source = new JSONObject();
+        for (Property p : ed.getProperties()) {
+            boolean isId = ElasticEntity.ID.getName().equals(p.getName());
+            if (!isId && (!entity.isPartiallyFetched() || ed.isFetched(entity, p))) {
+                source.put(p.getPropertyName(), p.getValueForDatasource(Elastic.class, entity));
+            }
+        }
+
+        return source;
+    }
+
     /**
      * Determines the id of the entity.
      * <p>
@@ -408,6 +742,172 @@ public class Elastic extends BaseMapper<ElasticEntity, ElasticConstraint, Elasti
         writeIndexTable.put(ed, nextIndexName);
     }
 
+    /**
+     * Copies all documents of the current read index of the given entity into its write index.
+     * <p>
+     * The write index has to be created via {@link #createAndInstallWriteIndex(EntityDescriptor)} beforehand and
+     * can be made the read index via {@link #commitWriteIndex(EntityDescriptor)} afterwards.
+     * <p>
+     * The reindex is executed as background task by Elasticsearch, which is polled until it has been completed.
+     * Its progress is reported into the current {@link TaskContext} and if the context is no longer active, the
+     * task is cancelled. While the reindex is running, refreshing and replication are disabled for the write index,
+     * as these only slow down the process. Both settings are restored afterwards.
+     *
+     * @param ed                the entity descriptor of the entity to reindex
+     * @param slices            the number of slices to process in parallel. Use 0 to let Elasticsearch pick a
+     *                          suitable number and 1 to disable slicing
+     * @param requestsPerSecond the maximal number of documents to reindex per second or 0 to disable throttling
+     */
+    public void reindexIntoWriteIndex(EntityDescriptor ed, int slices, int requestsPerSecond) {
+        String writeIndexName = writeIndexTable.get(ed);
+        if (writeIndexName == null) {
+            throw Exceptions.createHandled()
+                            .withSystemErrorMessage("These is no write index available for %s", ed.getType().getName())
+                            .handle();
+        }
+
+        String sourceIndexName = determineEffectiveIndex(ed);
+        suspendRefresh(writeIndexName, true);
+        try {
+            String taskId =
+                    getLowLevelClient().startReindex(sourceIndexName, writeIndexName, slices, requestsPerSecond);
+            LOG.INFO("Reindexing %s from %s into %s (task: %s)...",
+                     ed.getType().getSimpleName(),
+                     sourceIndexName,
+                     writeIndexName,
+                     taskId);
+            awaitReindex(ed, taskId);
+        } finally {
+            long refreshStarted = System.currentTimeMillis();
+            resumeRefresh(writeIndexName);
+            markRefreshed(ed, refreshStarted);
+        }
+    }
+
+    /**
+     * Disables refreshing and optionally replication for the given index.
+     * <p>
+     * Several loads (or reindex operations) of the same index may run concurrently. Therefore only the first one
+     * records the previous settings, which are restored by {@link #resumeRefresh(String)} once the last one has
+     * been completed. Otherwise a later load would record the already suspended settings and restore these at
+     * the end. Note that this only covers the operations of this node.
+     *
+     * @param indexName       the index to suspend refreshing for
+     * @param disableReplicas determines if the replicas of the index should be dropped as well
+     */
+    private void suspendRefresh(String indexName, boolean disableReplicas) {
+        synchronized (suspendedIndexSettings) {
+            SuspendedIndexSettings suspended = suspendedIndexSettings.get(indexName);
+            if (suspended == null) {
+                JSONObject previousSettings = readRefreshAndReplicaSettings(indexName);
+                Object numberOfReplicas = disableReplicas ?
+                                          0 :
+                                          previousSettings.getJSONObject(SETTINGS_INDEX)
+                                                          .get(SETTINGS_NUMBER_OF_REPLICAS);
+                getLowLevelClient().updateIndexSettings(indexName, createIndexSettings("-1", numberOfReplicas));
+                suspended = new SuspendedIndexSettings(previousSettings, disableReplicas);
+                suspendedIndexSettings.put(indexName, suspended);
+            } else if (disableReplicas && !suspended.replicasDisabled) {
+                getLowLevelClient().updateIndexSettings(indexName, createIndexSettings("-1", 0));
+                suspended.replicasDisabled = true;
+            }
+
+            suspended.numberOfUsers++;
+        }
+    }
+
+    /**
+     * Restores the settings of an index suspended via {@link #suspendRefresh(String, boolean)} and refreshes it.
+     * <p>
+     * The settings are only restored once all concurrent operations on the index have been completed. The index is
+     * refreshed in any case, so that the data of the completed operation becomes visible.
+     *
+     * @param indexName the index to resume refreshing for
+     */
+    private void resumeRefresh(String indexName) {
+        synchronized (suspendedIndexSettings) {
+            SuspendedIndexSettings suspended = suspendedIndexSettings.get(indexName);
+            if (suspended != null && --suspended.numberOfUsers == 0) {
+                suspendedIndexSettings.remove(indexName);
+                getLowLevelClient().updateIndexSettings(indexName, suspended.previousSettings);
+            }
+        }
+
+        getLowLevelClient().refresh(indexName);
+    }
+
+    private JSONObject readRefreshAndReplicaSettings(String indexName) {
+        JSONObject indexSettings = getLowLevelClient().indexSettings(indexName)
+                                                      .getJSONObject(indexName)
+                                                      .getJSONObject("settings")
+                                                      .getJSONObject(SETTINGS_INDEX);
+
+        // An unset refresh interval isn't reported. We therefore keep it as null, which resets the setting once the
+        // settings are restored, so that the index keeps following the default of Elasticsearch...
+        return createIndexSettings(indexSettings.getString(SETTINGS_REFRESH_INTERVAL),
+                                   indexSettings.getString(SETTINGS_NUMBER_OF_REPLICAS));
+    }
+
+    private JSONObject createIndexSettings(@Nullable String refreshInterval, Object numberOfReplicas) {
+        return new JSONObject().fluentPut(SETTINGS_INDEX,
+                                          new JSONObject().fluentPut(SETTINGS_REFRESH_INTERVAL, refreshInterval)
+                                                          .fluentPut(SETTINGS_NUMBER_OF_REPLICAS, numberOfReplicas));
+    }
+
+    private void awaitReindex(EntityDescriptor ed, String taskId) {
+        TaskContext ctx = TaskContext.get();
+        while (true) {
+            Wait.millis((int) reindexPollInterval.toMillis());
+            JSONObject task = getLowLevelClient().getTask(taskId);
+            if (task.getBooleanValue(TASK_COMPLETED)) {
+                checkReindexResult(ed, task);
+                return;
+            }
+
+            if (!ctx.isActive()) {
+                getLowLevelClient().cancelTask(taskId);
+                throw Exceptions.createHandled()
+                                .withSystemErrorMessage("The reindex of %s has been cancelled (task: %s).",
+                                                        ed.getType().getSimpleName(),
+                                                        taskId)
+                                .handle();
+            }
+
+            JSONObject status = task.getJSONObject(TASK_TASK).getJSONObject(TASK_STATUS);
+            ctx.setState("Reindexing %s: %s of %s documents",
+                         ed.getType().getSimpleName(),
+                         countReindexedDocuments(status),
+                         status.getLongValue("total"));
+        }
+    }
+
+    private long countReindexedDocuments(JSONObject status) {
+        return status.getLongValue("created") + status.getLongValue("updated") + status.getLongValue("deleted");
+    }
+
+    private void checkReindexResult(EntityDescriptor ed, JSONObject task) {
+        JSONObject error = task.getJSONObject(TASK_ERROR);
+        JSONObject response = task.getJSONObject(TASK_RESPONSE);
+        JSONArray failures = response == null ? null : response.getJSONArray("failures");
+        if (error == null && failures != null && !failures.isEmpty()) {
+            error = failures.getJSONObject(0);
+        }
+
+        if (error != null) {
+            throw Exceptions.handle()
+                            .to(LOG)
+                            .withSystemErrorMessage("Failed to reindex %s: %s",
+                                                    ed.getType().getSimpleName(),
+                                                    error.toJSONString())
+                            .handle();
+        }
+
+        LOG.INFO("Reindexed %s documents of %s in %s ms.",
+                 response == null ? 0 : countReindexedDocuments(response),
+                 ed.getType().getSimpleName(),
+                 response == null ? 0 : response.getLongValue("took"));
+    }
+
     /**
      * Makes the current write index of the given entity also the read index by moving the {@link #ACTIVE_ALIAS}.
      * <p>
@@ -490,11 +990,15 @@ public class Elastic extends BaseMapper<ElasticEntity, ElasticConstraint, Elasti
 
     @Override
     protected void deleteEntity(ElasticEntity entity, boolean force, EntityDescriptor ed) throws Exception {
-        getLowLevelClient().delete(determineWriteAlias(ed),
-                                   entity.getId(),
-                                   determineRouting(ed, entity, RoutingAccessMode.WRITE),
-                                   determinePrimaryTerm(force, ed, entity),
-                                   determineSeqNo(force, ed, entity));
+        try {
+            getLowLevelClient().delete(determineWriteAlias(ed),
+                                       entity.getId(),
+                                       determineRouting(ed, entity, RoutingAccessMode.WRITE),
+                                       determinePrimaryTerm(force, ed, entity),
+                                       determineSeqNo(force, ed, entity));
+        } finally {
+            markWritten(ed);
+        }
     }
 
     /**
@@ -508,13 +1012,73 @@ public class Elastic extends BaseMapper<ElasticEntity, ElasticConstraint, Elasti
         try {
             JSONObject source = obj.getJSONObject(RESPONSE_SOURCE);
             ElasticEntity result = (ElasticEntity) ed.make(Elastic.class, null, key -> Value.of(source.get(key)));
-            result.setSearchHit(obj);
-            result.setId(obj.getString(ID_FIELD));
+            applyHit(ed, result, obj);
+
+            return result;
+        } catch (Exception e) {
+            throw Exceptions.handle(Elastic.LOG, e);
+        }
+    }
+
+    /**
+     * Reads a hit from the given JSON reader and binds its source directly to a new instance of the given entity type.
+     * <p>
+     * In contrast to {@link #make(EntityDescriptor, JSONObject)}, the response isn't parsed into a tree first.
+     * Rather each field of the <tt>_source</tt> is applied to its property as soon as it has been read. The
+     * {@link ElasticEntity#getSearchHit() search hit} of the resulting entity contains all metadata (score,
+     * highlights, inner hits...) but not the <tt>_source</tt>, which is only re-created from the entity on demand.
+     * <p>
+     * Note that the hit is always consumed completely (even if a value cannot be applied), so that the reader
+     * can be used to read the next hit.
+     *
+     * @param ed     the descriptor of the entity type
+     * @param reader the reader which is positioned on the hit to read
+     * @return a new entity based on the given data
+     */
+    protected static ElasticEntity make(EntityDescriptor ed, JSONReader reader) {
+        return make(ed, reader, null, false);
+    }
 
-            if (ed.isVersioned()) {
-                result.setPrimaryTerm(obj.getLong(RESPONSE_PRIMARY_TERM));
-                result.setSeqNo(obj.getLong(RESPONSE_SEQ_NO));
+    /**
+     * Reads a hit from the given JSON reader and binds its source to a new instance of the given entity type.
+     * <p>
+     * If <tt>fetchedColumns</tt> is given, the <tt>_source</tt> of the hit was filtered and only the listed
+     * properties are reported as {@link EntityDescriptor#isFetched(sirius.db.mixing.BaseEntity, Property) fetched}.
+     * Also the entity is marked as {@link ElasticEntity#isPartiallyFetched() partially fetched}.
+     * <p>
+     * The <tt>_source</tt> is only put into the hit if <tt>retainSource</tt> is set (e.g. as the raw response is
+     * kept for the query). Otherwise, the values are only bound to the entity and the <tt>_source</tt> of the
+     * {@link ElasticEntity#getSearchHit() search hit} is re-created from the entity once it is accessed.
+     *
+     * @param ed             the descriptor of the entity type
+     * @param reader         the reader which is positioned on the hit to read
+     * @param fetchedColumns the properties which were requested or <tt>null</tt> if the whole source was requested
+     * @param retainSource   determines if the <tt>_source</tt> is also kept in the hit
+     * @return a new entity based on the given data
+     * @see #make(EntityDescriptor, JSONReader)
+     */
+    protected static ElasticEntity make(EntityDescriptor ed,
+                                        JSONReader reader,
+                                        @Nullable Set<String> fetchedColumns,
+                                        boolean retainSource) {
+        try {
+            JSONObject hit = new JSONObject();
+            ValueHolder<RuntimeException> error = ValueHolder.of(null);
+            ValueHolder<Boolean> sourceDiscarded = ValueHolder.of(false);
+            ElasticEntity result = (ElasticEntity) ed.make(Elastic.class,
+                                                           valueConsumer -> readHit(reader,
+                                                                                    hit,
+                                                                                    valueConsumer,
+                                                                                    retainSource,
+                                                                                    sourceDiscarded,
+                                                                                    error),
+                                                           fetchedColumns);
+            if (error.get() != null) {
+                throw error.get();
             }
+            applyHit(ed, result, hit);
+            result.setPartiallyFetched(fetchedColumns != null);
+            result.setSourceDiscarded(sourceDiscarded.get());
 
             return result;
         } catch (Exception e) {
@@ -522,6 +1086,86 @@ public class Elastic extends BaseMapper<ElasticEntity, ElasticConstraint, Elasti
         }
     }
 
+    private static void readHit(JSONReader reader,
+                                JSONObject hit,
+                                BiConsumer<String, Value> valueConsumer,
+                                boolean retainSource,
+                                ValueHolder<Boolean> sourceDiscarded,
+                                ValueHolder<RuntimeException> error) {
+        reader.startObject();
+        while (reader.hasNext()) {
+            String key = reader.readString();
+            if (RESPONSE_SOURCE.equals(key)) {
+                JSONObject source = retainSource ? new JSONObject() : null;
+                readSource(reader, valueConsumer, source, error);
+                if (source != null) {
+                    hit.put(RESPONSE_SOURCE, source);
+                } else {
+                    sourceDiscarded.set(true);
+                }
+            } else {
+                hit.put(key, reader.readObject());
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readSource(JSONReader reader,
+                                   BiConsumer<String, Value> valueConsumer,
+                                   @Nullable JSONObject source,
+                                   ValueHolder<RuntimeException> error) {
+        reader.startObject();
+        while (reader.hasNext()) {
+            String field = reader.readString();
+            Object value = reader.readObject();
+            if (source != null) {
+                source.put(field, value);
+            }
+            if (error.get() == null) {
+                try {
+                    valueConsumer.accept(field, Value.of(value));
+                } catch (RuntimeException e) {
+                    // We still have to consume the remaining hit, therefore the error is re-thrown later on...
+                    error.set(e);
+                }
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void applyHit(EntityDescriptor ed, ElasticEntity entity, JSONObject hit) {
+        entity.setSearchHit(hit);
+        entity.setId(hit.getString(ID_FIELD));
+
+        if (ed.isVersioned()) {
+            entity.setPrimaryTerm(hit.getLong(RESPONSE_PRIMARY_TERM));
+            entity.setSeqNo(hit.getLong(RESPONSE_SEQ_NO));
+        }
+    }
+
+    /**
+     * Returns the scroll batch size which has been learned for the given entity type.
+     *
+     * @param ed               the descriptor of the entity type
+     * @param defaultBatchSize the batch size to use if nothing has been learned yet
+     * @return the batch size to use for the next scroll query
+     * @see ElasticQuery#withAdaptiveBatchSize()
+     */
+    protected int getAdaptiveScrollBatchSize(EntityDescriptor ed, int defaultBatchSize) {
+        return adaptiveScrollBatchSizes.getOrDefault(ed, defaultBatchSize);
+    }
+
+    /**
+     * Stores the scroll batch size to use for the next scroll query for the given entity type.
+     *
+     * @param ed        the descriptor of the entity type
+     * @param batchSize the batch size to use next
+     * @see ElasticQuery#withAdaptiveBatchSize()
+     */
+    protected void updateAdaptiveScrollBatchSize(EntityDescriptor ed, int batchSize) {
+        adaptiveScrollBatchSizes.put(ed, batchSize);
+    }
+
     /**
      * Provides a "routed by" context for {@link #find(Class, Object, ContextInfo...)}.
      *
@@ -549,6 +1193,67 @@ public class Elastic extends BaseMapper<ElasticEntity, ElasticConstraint, Elasti
         return Optional.of(result);
     }
 
+    /**
+     * Fetches all entities of the given type with the given ids.
+     * <p>
+     * Instead of performing one lookup per id (like {@link #find(Class, Object, ContextInfo...)} does), the
+     * entities are fetched using <tt>_mget</tt>. The ids are split into chunks of
+     * <tt>elasticsearch.multiGetChunkSize</tt> documents per request.
+     *
+     * @param type    the type of entities to fetch
+     * @param ids     the ids of the entities to fetch
+     * @param context the context (e.g. the {@link #routedBy(String) routing}) applied to each lookup
+     * @param <E>     the generic type of the entities
+     * @return all entities which were found in the order of the given ids. Ids for which no entity exists are
+     * not contained in the map
+     */
+    @SuppressWarnings("unchecked")
+    public <E extends ElasticEntity> Map<String, E> findAll(Class<E> type,
+                                                            Collection<String> ids,
+                                                            ContextInfo... context) {
+        Map<String, E> result = new LinkedHashMap<>();
+        if (ids.isEmpty()) {
+            return result;
+        }
+
+        EntityDescriptor ed = mixing.getDescriptor(type);
+        String alias = determineReadAlias(ed);
+        String routing = determineRoutingForFind(ids, ed, makeContext(context));
+
+        List<JSONObject> docs = new ArrayList<>();
+        for (String id : ids) {
+            if (Strings.isFilled(id)) {
+                docs.add(new JSONObject().fluentPut(ID_FIELD, id).fluentPut(CONTEXT_ROUTING, routing));
+            }
+
+            if (docs.size() >= Math.max(1, multiGetChunkSize)) {
+                fetchChunk(ed, alias, docs, (Map<String, ElasticEntity>) result);
+                docs.clear();
+            }
+        }
+        fetchChunk(ed, alias, docs, (Map<String, ElasticEntity>) result);
+
+        return result;
+    }
+
+    private void fetchChunk(EntityDescriptor ed,
+                            String alias,
+                            List<JSONObject> docs,
+                            Map<String, ElasticEntity> result) {
+        if (docs.isEmpty()) {
+            return;
+        }
+
+        JSONArray foundDocs = getLowLevelClient().multiGet(alias, docs).getJSONArray(RESPONSE_DOCS);
+        for (int i = 0; i < foundDocs.size(); i++) {
+            JSONObject doc = foundDocs.getJSONObject(i);
+            if (Boolean.TRUE.equals(doc.getBoolean(RESPONSE_FOUND))) {
+                ElasticEntity entity = make(ed, doc);
+                result.put(entity.getId(), entity);
+            }
+        }
+    }
+
     private String determineRoutingForFind(Object id,
                                            EntityDescriptor entityDescriptor,
                                            Function<String, Value> context) {
@@ -625,6 +1330,19 @@ public class Elastic extends BaseMapper<ElasticEntity, ElasticConstraint, Elasti
                     routedBy(determineRouting(entity.getDescriptor(), entity, RoutingAccessMode.READ)));
     }
 
+    /**
+     * Creates an {@link ElasticUpdater updater} which modifies single fields of the given entity using a script.
+     * <p>
+     * In contrast to {@link #update(sirius.db.mixing.BaseEntity)} the entity doesn't have to be serialized and sent
+     * as a whole.
+     *
+     * @param entity the entity to update
+     * @return a new updater for the given entity
+     */
+    public ElasticUpdater updater(ElasticEntity entity) {
+        return new ElasticUpdater(this, entity);
+    }
+
     /**
      * Creates a {@link BulkContext batch context} used for bulk updates.
      *
@@ -634,6 +1352,108 @@ public class Elastic extends BaseMapper<ElasticEntity, ElasticConstraint, Elasti
         return new BulkContext(getLowLevelClient());
     }
 
+    /**
+     * Creates a {@link ConcurrentBulkContext batch context} which executes its bulk requests concurrently.
+     *
+     * @param maxInFlightRequests the maximal number of concurrent bulk requests or 0 to use the default given in
+     *                            <tt>elasticsearch.bulk.maxInFlightRequests</tt>
+     * @return the newly created bulk context
+     * @see ConcurrentBulkContext
+     */
+    public ConcurrentBulkContext concurrentBatch(int maxInFlightRequests) {
+        return new ConcurrentBulkContext(getLowLevelClient(), maxInFlightRequests);
+    }
+
+    /**
+     * Loads a large amount of entities of the given type using a {@link ConcurrentBulkContext}.
+     * <p>
+     * This is a shortcut for {@link #bulkLoad(Class, boolean, boolean, Consumer)} which only disables refreshing
+     * the index.
+     *
+     * @param type   the type of entities being loaded
+     * @param loader the callback which performs the actual load using the given bulk context
+     */
+    public void bulkLoad(Class<? extends ElasticEntity> type, Consumer<BulkContext> loader) {
+        bulkLoad(type, false, false, loader);
+    }
+
+    /**
+     * Loads a large amount of entities of the given type using a {@link ConcurrentBulkContext}.
+     * <p>
+     * While the load is running, refreshing and optionally replication are disabled for the write index of the given
+     * type, so that Elasticsearch can focus on indexing the data. Once the load is completed (or has failed), the
+     * previous settings are restored and the index is refreshed so that all loaded entities become visible.
+     * <p>
+     * Note that the loaded entities are not visible for queries until this method returns.
+     *
+     * @param type            the type of entities being loaded
+     * @param disableReplicas determines if the replicas of the index should be dropped during the load. This speeds
+     *                        up the load but leaves the index without redundancy until the replicas have been
+     *                        rebuilt
+     * @param forceMerge      determines if the index should be merged into a single segment afterwards. The merge
+     *                        is executed in the background by Elasticsearch
+     * @param loader          the callback which performs the actual load using the given bulk context
+     */
+    public void bulkLoad(Class<? extends ElasticEntity> type,
+                         boolean disableReplicas,
+                         boolean forceMerge,
+                         Consumer<BulkContext> loader) {
+        EntityDescriptor ed = mixing.getDescriptor(type);
+        String indexName = Optional.ofNullable(writeIndexTable.get(ed)).orElseGet(() -> determineEffectiveIndex(ed));
+        suspendRefresh(indexName, disableReplicas);
+        try (ConcurrentBulkContext bulkContext = concurrentBatch(0)) {
+            loader.accept(bulkContext);
+        } finally {
+            long refreshStarted = System.currentTimeMillis();
+            resumeRefresh(indexName);
+            markRefreshed(ed, refreshStarted);
+        }
+
+        if (forceMerge) {
+            getLowLevelClient().forceMerge(indexName, 1);
+        }
+    }
+
+    /**
+     * Executes the given queries using a single <tt>_msearch</tt> request.
+     * <p>
+     * This is intended for pages which execute several independent queries (e.g. results, facets and suggestions),
+     * as it saves a round trip per query. Once this method returns, each query is executed and its results can be
+     * obtained via {@link ElasticQuery#getMultiSearchResults()}. Just like when executing the queries directly,
+     * {@link ElasticQuery#getAggregation(String)}, {@link ElasticQuery#getRawResponse()} and the like can be used
+     * to inspect their responses.
+     * <p>
+     * Note that each query fetches at most as many entities as given by its limit (a limit of <tt>0</tt> fetches
+     * no entities at all).
+     * <p>
+     * If a single search fails, the remaining queries are still completed. The error is logged and reported by
+     * {@link ElasticQuery#getMultiSearchResults()} of the failed query only.
+     *
+     * @param queries the queries to execute
+     * @throws sirius.kernel.health.HandledException if the multi search request as a whole failed
+     */
+    public void multiSearch(ElasticQuery<?>... queries) {
+        BulkRequestBuffer request = new BulkRequestBuffer(false);
+        List<ElasticQuery<?>> executedQueries = new ArrayList<>(queries.length);
+        List<Consumer<JSONReader>> hitReaders = new ArrayList<>(queries.length);
+        for (ElasticQuery<?> query : queries) {
+            Consumer<JSONReader> hitReader = query.appendToMultiSearch(request);
+            if (hitReader != null) {
+                executedQueries.add(query);
+                hitReaders.add(hitReader);
+            }
+        }
+
+        if (executedQueries.isEmpty()) {
+            return;
+        }
+
+        JSONArray responses = getLowLevelClient().multiSearch(request, hitReaders);
+        for (int i = 0; i < executedQueries.size(); i++) {
+            executedQueries.get(i).completeMultiSearch(responses.getJSONObject(i));
+        }
+    }
+
     /**
      * Determines if an appropriate configuration is available (e.g. a host to connect to).
      *
@@ -685,7 +1505,74 @@ public class Elastic extends BaseMapper<ElasticEntity, ElasticConstraint, Elasti
      * @param <E>  the concrete type which should be refreshed
      */
     public <E extends ElasticEntity> void refresh(Class<E> type) {
-        getLowLevelClient().refresh(determineWriteAlias(mixing.getDescriptor(type)));
+        EntityDescriptor ed = mixing.getDescriptor(type);
+        long refreshStarted = System.currentTimeMillis();
+        getLowLevelClient().refresh(determineWriteAlias(ed));
+        markRefreshed(ed, refreshStarted);
+    }
+
+    /**
+     * Records that entities of the given type have been written.
+     * <p>
+     * This increments the write epoch of the type, which invalidates all cached aggregation results. Therefore
+     * this has to be invoked once the write (and a refresh, if one is performed) has been executed. Otherwise a
+     * concurrent query could still observe the old data and cache it for the new epoch.
+     * <p>
+     * As a write only becomes visible once the index has been refreshed, the time of the write is also recorded
+     * (see {@link #isWithinRefreshWindow(EntityDescriptor, long)}).
+     *
+     * @param ed the descriptor of the entity type which has been written
+     * @see ElasticQuery#cached(Duration)
+     */
+    protected void markWritten(EntityDescriptor ed) {
+        lastWriteTimestamps.put(ed, System.currentTimeMillis());
+        writeEpochs.computeIfAbsent(ed, ignored -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * Records that the index of the given entity type has been refreshed explicitly.
+     * <p>
+     * Just like {@link #markWritten(EntityDescriptor)}, this increments the write epoch. However, as all writes
+     * which were performed before the refresh are now visible, no refresh window applies to them anymore.
+     *
+     * @param ed             the descriptor of the entity type which has been refreshed
+     * @param refreshStarted the timestamp at which the refresh has been started
+     */
+    protected void markRefreshed(EntityDescriptor ed, long refreshStarted) {
+        // Only forget the last write if it happened before the refresh, as a concurrent write might not be visible...
+        lastWriteTimestamps.computeIfPresent(ed,
+                                             (ignored, lastWrite) -> lastWrite < refreshStarted ? null : lastWrite);
+        writeEpochs.computeIfAbsent(ed, ignored -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * Determines if the given point in time is so close to the last write of the entity type that the index might
+     * not have been refreshed yet.
+     * <p>
+     * A search performed within this window might still observe the data prior to the write. Therefore its
+     * result must not be cached for the current write epoch. The window is controlled via
+     * <tt>elasticsearch.aggregationCache.refreshWindow</tt> and should match the refresh interval of the indices.
+     *
+     * @param ed        the descriptor of the entity type
+     * @param timestamp the point in time to check
+     * @return <tt>true</tt> if the last write happened within the refresh window before the given timestamp
+     */
+    protected boolean isWithinRefreshWindow(EntityDescriptor ed, long timestamp) {
+        Long lastWrite = lastWriteTimestamps.get(ed);
+        return lastWrite != null && timestamp - lastWrite < aggregationCacheRefreshWindow.toMillis();
+    }
+
+    /**
+     * Returns the write epoch of the given entity type.
+     * <p>
+     * The epoch is incremented for each write (or refresh) of the entity type which is performed by this node.
+     *
+     * @param ed the descriptor of the entity type
+     * @return the current write epoch of the entity type
+     */
+    protected long getWriteEpoch(EntityDescriptor ed) {
+        AtomicLong epoch = writeEpochs.get(ed);
+        return epoch == null ? 0 : epoch.get();
     }
 
     @Override
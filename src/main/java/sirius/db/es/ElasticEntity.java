@@ -39,6 +39,7 @@ public abstract class ElasticEntity extends BaseEntity<String> {
 
     private static final String MATCHED_QUERIES = "matched_queries";
     private static final String FIELD_SCORE = "_score";
+    private static final String FIELD_SOURCE = "_source";
 
     @Part
     protected static Elastic elastic;
@@ -60,9 +61,15 @@ public abstract class ElasticEntity extends BaseEntity<String> {
     @Transient
     private JSONObject searchHit;
 
+    @Transient
+    private boolean sourceDiscarded;
+
     @Transient
     private Set<String> matchedQueries;
 
+    @Transient
+    private boolean partiallyFetched;
+
     @Override
     public boolean isUnique(Mapping field, Object value, Mapping... within) {
         ElasticQuery<? extends ElasticEntity> qry = elastic.select(getClass()).eq(field, value);
@@ -152,8 +159,32 @@ public abstract class ElasticEntity extends BaseEntity<String> {
         return getMatchedQueries().contains(queryName);
     }
 
+    /**
+     * Marks that the <tt>_source</tt> of the search hit was only bound to this entity but not kept in the hit.
+     *
+     * @param sourceDiscarded <tt>true</tt> if the <tt>_source</tt> has to be re-created when accessing the hit
+     */
+    protected void setSourceDiscarded(boolean sourceDiscarded) {
+        this.sourceDiscarded = sourceDiscarded;
+    }
+
+    /**
+     * Provides access to the hit without re-creating a discarded <tt>_source</tt>.
+     *
+     * @return the underlying hit object of this entity, which might lack the <tt>_source</tt>
+     */
+    @Nullable
+    @SuppressWarnings("AssignmentOrReturnOfFieldWithMutableType")
+    @Explain("We only pass the result JSON along internally and want to avoid an extra copy.")
+    protected JSONObject getSearchHitMetadata() {
+        return searchHit;
+    }
+
     /**
      * Provides access to the original JSON hit which was returned by an Elasticsearch query.
+     * <p>
+     * Note that if the <tt>_source</tt> was only bound to the entity (e.g. when scrolling), it is re-created from
+     * the entity when this method is first invoked. Therefore it reflects the values of the entity at that time.
      *
      * @return the original underlying hit object of this entity.
      */
@@ -161,6 +192,11 @@ public abstract class ElasticEntity extends BaseEntity<String> {
     @SuppressWarnings("AssignmentOrReturnOfFieldWithMutableType")
     @Explain("Performing a deep copy of the whole object is most probably an overkill here.")
     public JSONObject getSearchHit() {
+        if (sourceDiscarded && searchHit != null) {
+            searchHit.put(FIELD_SOURCE, elastic.toSource(getDescriptor(), this));
+            sourceDiscarded = false;
+        }
+
         return searchHit;
     }
 
@@ -179,4 +215,31 @@ public abstract class ElasticEntity extends BaseEntity<String> {
     protected void setSeqNo(long seqNo) {
         this.seqNo = seqNo;
     }
+
+    /**
+     * Determines if only some fields of the underlying document were fetched.
+     * <p>
+     * This is the case if the entity was loaded by a query which used {@link ElasticQuery#fields(Mapping...)} or
+     * {@link ElasticQuery#excludeFields(Mapping...)}. When updating such an entity, only the fetched properties
+     * which have been changed are written, so that all other fields of the document remain untouched.
+     *
+     * @return <tt>true</tt> if only some fields were fetched, <tt>false</tt> otherwise
+     */
+    public boolean isPartiallyFetched() {
+        return partiallyFetched;
+    }
+
+    protected void setPartiallyFetched(boolean partiallyFetched) {
+        this.partiallyFetched = partiallyFetched;
+    }
+
+    /**
+     * Determines if the persisted state of this entity is known, as it has either been loaded or written.
+     *
+     * @return <tt>true</tt> if the persisted state is known, <tt>false</tt> if e.g. only an id has been assigned
+     * manually
+     */
+    protected boolean hasPersistedData() {
+        return !persistedData.isEmpty();
+    }
 }
@@ -8,6 +8,7 @@
 
 package sirius.db.es;
 
+import org.apache.http.pool.PoolStats;
 import sirius.kernel.di.std.Part;
 import sirius.kernel.di.std.Register;
 import sirius.kernel.health.metrics.MetricProvider;
@@ -36,6 +37,53 @@ public class ElasticMetricsProvider implements MetricProvider {
                              "Elasticsearch Call Duration",
                              elastic.callDuration.getAndClear(),
                              "ms");
+            PoolStats poolStats = elastic.getConnectionPoolStats();
+            if (poolStats != null && poolStats.getMax() > 0) {
+                collector.metric("es_pool_utilization",
+                                 "es-pool-utilization",
+                                 "Elasticsearch Connection Pool Utilization",
+                                 100d * poolStats.getLeased() / poolStats.getMax(),
+                                 "%");
+                collector.metric("es_pool_pending",
+                                 "es-pool-pending",
+                                 "Elasticsearch Requests Waiting for a Connection",
+                                 poolStats.getPending(),
+                                 "");
+            }
+            collector.metric("es_scroll_batch_size",
+                             "es-scroll-batch-size",
+                             "Elasticsearch Scroll Batch Size",
+                             elastic.scrollBatchSize.getAndClear(),
+                             "");
+            collector.differentialMetric("es_scroll_timeouts",
+                                         "es-scroll-timeouts",
+                                         "Elasticsearch Scroll Timeouts",
+                                         elastic.numScrollTimeouts.getCount(),
+                                         "/min");
+            gatherLimiterMetrics(collector, elastic.concurrencyLimiter);
         }
     }
+
+    private void gatherLimiterMetrics(MetricsCollector collector, ConcurrencyLimiter limiter) {
+        if (limiter == null) {
+            return;
+        }
+
+        collector.metric("es_concurrency_limit",
+                         "es-concurrency-limit",
+                         "Elasticsearch Concurrency Limit",
+                         limiter.getLimit(),
+                         "");
+        collector.metric("es_in_flight", "es-in-flight", "Elasticsearch Requests in Flight", limiter.getInFlight(), "");
+        collector.differentialMetric("es_rejected_calls",
+                                     "es-rejected-calls",
+                                     "Elasticsearch Rejected Calls",
+                                     limiter.numRejected.getCount(),
+                                     "/min");
+        collector.metric("es_circuit_open",
+                         "es-circuit-open",
+                         "Elasticsearch Circuit Breaker Open",
+                         limiter.isOpen() ? 1 : 0,
+                         "");
+    }
 }
@@ -0,0 +1,55 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.db.es;
+
+import javax.annotation.Nullable;
+
+/**
+ * Signals that a request to Elasticsearch has been rejected without being sent, as the cluster is considered
+ * to be overloaded or unavailable.
+ * <p>
+ * This is thrown if either the adaptive concurrency limit has been reached or if the circuit breaker is open
+ * (see <tt>elasticsearch.limiter</tt>). Callers which can degrade gracefully (e.g. by hiding a facet or showing
+ * cached data) can check for this using {@link #isCausedBy(Throwable)}, as the exception might have been wrapped
+ * into a {@link sirius.kernel.health.HandledException} along the way.
+ */
+public class ElasticOverloadedException extends RuntimeException {
+
+    private static final long serialVersionUID = -2406618546472813530L;
+
+    /**
+     * Creates a new exception with the given message.
+     *
+     * @param message the message describing why the request has been rejected
+     */
+    public ElasticOverloadedException(String message) {
+        super(message);
+    }
+
+    /**
+     * Determines if the given exception (or one of its causes) signals a rejected request.
+     *
+     * @param throwable the exception to check
+     * @return <tt>true</tt> if the request failed because Elasticsearch is overloaded, <tt>false</tt> otherwise
+     */
+    public static boolean isCausedBy(@Nullable Throwable throwable) {
+        Throwable current = throwable;
+        while (current != null) {
+            if (current instanceof ElasticOverloadedException) {
+                return true;
+            }
+            if (current.getCause() == current) {
+                return false;
+            }
+            current = current.getCause();
+        }
+
+        return false;
+    }
+}
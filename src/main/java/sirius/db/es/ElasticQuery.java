@@ -8,8 +8,11 @@
 
 package sirius.db.es;
 
+import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.JSONReader;
+import com.alibaba.fastjson.serializer.SerializerFeature;
 import sirius.db.es.constraints.BoolQueryBuilder;
 import sirius.db.es.constraints.ElasticConstraint;
 import sirius.db.mixing.DateRange;
@@ -19,25 +22,36 @@ import sirius.db.mixing.Mixing;
 import sirius.db.mixing.query.Query;
 import sirius.db.mixing.query.constraints.FilterFactory;
 import sirius.kernel.async.ExecutionPoint;
+import sirius.kernel.async.Promise;
 import sirius.kernel.async.TaskContext;
+import sirius.kernel.async.Tasks;
 import sirius.kernel.commons.Explain;
+import sirius.kernel.commons.Hasher;
 import sirius.kernel.commons.Limit;
 import sirius.kernel.commons.RateLimit;
 import sirius.kernel.commons.Strings;
 import sirius.kernel.commons.Tuple;
+import sirius.kernel.di.std.ConfigValue;
 import sirius.kernel.di.std.Part;
 import sirius.kernel.health.Exceptions;
+import sirius.kernel.health.HandledException;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.time.Duration;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -62,6 +76,15 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
     private static final int MAX_SCROLL_RESULTS_FOR_SINGLE_SHARD = 50;
     private static final int MAX_SCROLL_RESULTS_PER_SHARD = 10;
     private static final String KEY_SCROLL_ID = "_scroll_id";
+    private static final String KEY_SEARCH_AFTER = "search_after";
+    private static final String KEY_SLICE = "slice";
+    private static final String KEY_ID = "id";
+    private static final String KEY_MAX = "max";
+    private static final String EXECUTOR_ELASTIC_PARALLEL_SCROLL = "elastic-parallel-scroll";
+    private static final int DEFAULT_SEARCH_AFTER_PAGE_SIZE = 1000;
+    private static final int MIN_ADAPTIVE_BATCH_SIZE = 10;
+    private static final int MAX_ADAPTIVE_BATCH_SIZE = 10_000;
+    private static final Duration COMPOSITE_PAGE_TIMEOUT = Duration.ofMinutes(5);
     private static final String KEY_DOC_ID = "_doc";
 
     private static final String KEY_FIELD = "field";
@@ -90,6 +113,12 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
     private static final String KEY_SUGGEST = "suggest";
     private static final String KEY_VALUE = "value";
     private static final String KEY_SEQ_NO_PRIMARY_TERM = "seq_no_primary_term";
+    private static final String KEY_SOURCE = "_source";
+    private static final String KEY_INDEX = "index";
+    private static final String KEY_ROUTING = "routing";
+    private static final String KEY_ERROR = "error";
+    private static final String KEY_INCLUDES = "includes";
+    private static final String KEY_EXCLUDES = "excludes";
     private static final Mapping SCORE = Mapping.named("_score");
 
     @Part
@@ -98,6 +127,12 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
     @Part
     private static IndexMappings indexMappings;
 
+    @Part
+    private static Tasks tasks;
+
+    @ConfigValue("elasticsearch.adaptiveBatchSize.targetPageDuration")
+    private static Duration targetPageDuration;
+
     private final LowLevelClient client;
 
     private BoolQueryBuilder queryBuilder;
@@ -118,9 +153,23 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
 
     private boolean explain;
 
+    private List<String> includedFields;
+    private List<String> excludedFields;
+
+    private Duration cacheMaxAge;
+
+    private int searchAfterPageSize;
+    private int scrollBatchSize;
+    private boolean adaptiveBatchSize;
+
     private Map<String, JSONObject> suggesters;
 
     private JSONObject response;
+    private JSONObject cachedPayload;
+    private String cachedPayloadString;
+    private List<E> multiSearchResults;
+    private HitProcessor pendingMultiSearch;
+    private HandledException multiSearchError;
 
     /**
      * Used to describe inner hits which are determine for field collapsing.
@@ -135,6 +184,7 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
             this.json = new JSONObject().fluentPut(KEY_NAME, name).fluentPut(KEY_SIZE, size);
             ElasticQuery.this.collapseByInnerHits = autoinit(ElasticQuery.this.collapseByInnerHits);
             ElasticQuery.this.collapseByInnerHits.add(json);
+            invalidatePayload();
         }
 
         /**
@@ -149,6 +199,7 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
                 this.json.put(KEY_SORT, sorts);
             }
             this.sorts.add(new JSONObject().fluentPut(field, KEY_ASC));
+            invalidatePayload();
             return this;
         }
 
@@ -164,6 +215,7 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
                 this.json.put(KEY_SORT, sorts);
             }
             this.sorts.add(new JSONObject().fluentPut(field, KEY_DESC));
+            invalidatePayload();
             return this;
         }
 
@@ -176,6 +228,7 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
          */
         public InnerHitsBuilder addParameter(String name, Object value) {
             this.json.put(name, value);
+            invalidatePayload();
             return this;
         }
     }
@@ -215,6 +268,12 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
         copy.unrouted = this.unrouted;
         copy.explain = this.explain;
         copy.collapseBy = this.collapseBy;
+        copy.includedFields = this.includedFields;
+        copy.excludedFields = this.excludedFields;
+        copy.searchAfterPageSize = this.searchAfterPageSize;
+        copy.scrollBatchSize = this.scrollBatchSize;
+        copy.adaptiveBatchSize = this.adaptiveBatchSize;
+        copy.cacheMaxAge = this.cacheMaxAge;
 
         if (queryBuilder != null) {
             copy.queryBuilder = this.queryBuilder.copy();
@@ -268,6 +327,7 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
      */
     public ElasticQuery<E> explain() {
         this.explain = true;
+        invalidatePayload();
         return this;
     }
 
@@ -283,6 +343,7 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
                 queryBuilder = new BoolQueryBuilder();
             }
             queryBuilder.must(filter);
+            invalidatePayload();
         }
         return this;
     }
@@ -313,6 +374,7 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
                 queryBuilder = new BoolQueryBuilder();
             }
             queryBuilder.mustNot(filter);
+            invalidatePayload();
         }
         return this;
     }
@@ -345,6 +407,7 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
                 queryBuilder = new BoolQueryBuilder();
             }
             queryBuilder.filter(filter);
+            invalidatePayload();
         }
         return this;
     }
@@ -370,6 +433,7 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
                 postFilters = new BoolQueryBuilder();
             }
             postFilters.filter(filter);
+            invalidatePayload();
         }
         return this;
     }
@@ -409,6 +473,7 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
                 return false;
             }
         });
+        invalidatePayload();
 
         return this;
     }
@@ -432,6 +497,7 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
     public ElasticQuery<E> sort(JSONObject sortSpec) {
         this.sorts = autoinit(this.sorts);
         sorts.add(sortSpec);
+        invalidatePayload();
         return this;
     }
 
@@ -476,6 +542,7 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
      */
     public ElasticQuery<E> functionScore(FunctionScoreBuilder functionScore) {
         this.functionScore = functionScore;
+        invalidatePayload();
         return this;
     }
 
@@ -505,6 +572,7 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
      */
     public ElasticQuery<E> collapse(Mapping field) {
         this.collapseBy = field.toString();
+        invalidatePayload();
         return this;
     }
 
@@ -516,6 +584,7 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
      */
     public ElasticQuery<E> collapse(String field) {
         this.collapseBy = field;
+        invalidatePayload();
         return this;
     }
 
@@ -542,6 +611,7 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
         }
 
         aggregations.add(aggregation);
+        invalidatePayload();
 
         return this;
     }
@@ -553,6 +623,7 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
      */
     public ElasticQuery<E> clearAggregations() {
         this.aggregations = null;
+        invalidatePayload();
         return this;
     }
 
@@ -661,6 +732,7 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
             this.suggesters = new HashMap<>();
         }
         suggesters.put(name, suggest);
+        invalidatePayload();
         return this;
     }
 
@@ -691,6 +763,129 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
         return this;
     }
 
+    /**
+     * Limits the fields being returned to the given list.
+     * <p>
+     * This filters the <tt>_source</tt> of each hit, so that only the given fields are transferred. All other
+     * properties of the resulting entities remain empty and are reported as not being
+     * {@link EntityDescriptor#isFetched(sirius.db.mixing.BaseEntity, sirius.db.mixing.Property) fetched}. The routing
+     * field (if present) is always fetched. When updating such an entity, only the fetched properties are written.
+     *
+     * @param fieldsToReturn the list of fields to return
+     * @return the query itself for fluent method calls
+     * @see ElasticEntity#isPartiallyFetched()
+     */
+    public ElasticQuery<E> fields(Mapping... fieldsToReturn) {
+        this.includedFields = Arrays.stream(fieldsToReturn).map(Mapping::toString).collect(Collectors.toList());
+        invalidatePayload();
+        return this;
+    }
+
+    /**
+     * Excludes the given fields from being returned.
+     * <p>
+     * This filters the <tt>_source</tt> of each hit, so that the given fields are not transferred. These
+     * properties of the resulting entities remain empty and are reported as not being
+     * {@link EntityDescriptor#isFetched(sirius.db.mixing.BaseEntity, sirius.db.mixing.Property) fetched}.
+     * When updating such an entity, only the fetched properties are written.
+     *
+     * @param fieldsToExclude the list of fields to exclude
+     * @return the query itself for fluent method calls
+     * @see ElasticEntity#isPartiallyFetched()
+     */
+    public ElasticQuery<E> excludeFields(Mapping... fieldsToExclude) {
+        this.excludedFields = Arrays.stream(fieldsToExclude).map(Mapping::toString).collect(Collectors.toList());
+        invalidatePayload();
+        return this;
+    }
+
+    /**
+     * Permits to serve {@link #computeAggregations()} from a cache.
+     * <p>
+     * This is intended for aggregations which are computed over and over with the same filters (e.g. the category
+     * tree of a tenant). On the one hand, the request is marked to use the shard level request cache of
+     * Elasticsearch. On the other hand, the response is kept in a local cache (<tt>elastic-aggregations</tt>),
+     * keyed by the index, the routing and the query itself. Any write (or refresh) of an entity of this type which
+     * is performed via this node invalidates the locally cached responses. Writes performed by other nodes are only
+     * reflected once the given max age has elapsed.
+     * <p>
+     * As a write only becomes visible once the index has been refreshed, responses which are computed within the
+     * refresh window after a write (<tt>elasticsearch.aggregationCache.refreshWindow</tt>) aren't cached at all.
+     * <p>
+     * Note that the cached response is shared and must therefore not be modified.
+     *
+     * @param maxAge the maximal age of a locally cached response to be used
+     * @return the query itself for fluent method calls
+     */
+    public ElasticQuery<E> cached(Duration maxAge) {
+        this.cacheMaxAge = maxAge;
+        return this;
+    }
+
+    /**
+     * Specifies the number of entities to fetch per request when iterating over large result sets via a scroll cursor.
+     * <p>
+     * By default, 50 entities (or 10 if a routing is present) are fetched per request. For small entities which
+     * are processed quickly, a larger batch size greatly reduces the number of round trips. However, each batch
+     * has to be processed within the keep alive of the scroll cursor.
+     *
+     * @param batchSize the number of entities to fetch per request
+     * @return the query itself for fluent method calls
+     */
+    public ElasticQuery<E> withScrollBatchSize(int batchSize) {
+        this.scrollBatchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Adapts the batch size when iterating over large result sets to the speed of the consumer.
+     * <p>
+     * The batch size is scaled so that fetching and processing a page takes about
+     * <tt>elasticsearch.adaptiveBatchSize.targetPageDuration</tt> (while changing by at most a factor of two per
+     * step). When using <tt>search_after</tt>, the page size is adapted after each page. As the batch size of a
+     * scroll cursor cannot be changed once it is created, the batch size is instead learned per entity type.
+     * Therefore each scroll query uses the batch size determined by the previous ones and then adapts it for the
+     * next. Note that an explicit {@link #withScrollBatchSize(int) scroll batch size} always takes precedence
+     * and is neither adapted nor learned from.
+     * <p>
+     * The batch sizes being used can be observed via the metric <tt>es-scroll-batch-size</tt>.
+     *
+     * @return the query itself for fluent method calls
+     */
+    public ElasticQuery<E> withAdaptiveBatchSize() {
+        this.adaptiveBatchSize = true;
+        return this;
+    }
+
+    /**
+     * Uses <tt>search_after</tt> instead of a scroll cursor to iterate over large result sets.
+     * <p>
+     * This uses a page size of {@link #DEFAULT_SEARCH_AFTER_PAGE_SIZE}, see {@link #useSearchAfter(int)}.
+     *
+     * @return the query itself for fluent method calls
+     */
+    public ElasticQuery<E> useSearchAfter() {
+        return useSearchAfter(DEFAULT_SEARCH_AFTER_PAGE_SIZE);
+    }
+
+    /**
+     * Uses <tt>search_after</tt> instead of a scroll cursor to iterate over large result sets.
+     * <p>
+     * In contrast to a scroll query, no resources are kept on the server between two pages, therefore there is no
+     * time limit for processing a page. The results are fetched page by page where each request continues after the
+     * sort values of the last hit of the previous page. To make this deterministic, the query is additionally sorted
+     * by <tt>_id</tt> (see {@link Elastic#ID_FIELD}) as tie-breaker.
+     * <p>
+     * Note that, as no snapshot is held, changes which are made while iterating might become visible.
+     *
+     * @param pageSize the number of entities to fetch per request
+     * @return the query itself for fluent method calls
+     */
+    public ElasticQuery<E> useSearchAfter(int pageSize) {
+        this.searchAfterPageSize = pageSize;
+        return this;
+    }
+
     /**
      * Signals the the routing is deliberately skipped as no routing value is available.
      *
@@ -701,12 +896,87 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
         return this;
     }
 
+    private void applySourceFilter(JSONObject payload) {
+        if (includedFields == null && excludedFields == null) {
+            return;
+        }
+
+        JSONObject source = new JSONObject();
+        if (includedFields != null) {
+            List<String> includes = new ArrayList<>(includedFields);
+            String routingField = elastic.determineRoutingField(descriptor);
+            if (routingField != null && !includes.contains(routingField)) {
+                includes.add(routingField);
+            }
+            source.put(KEY_INCLUDES, includes);
+        }
+        if (excludedFields != null) {
+            source.put(KEY_EXCLUDES, excludedFields);
+        }
+        payload.put(KEY_SOURCE, source);
+    }
+
     /**
-     * Builds the acutal JSON query for <tt>_search</tt>
+     * Determines which properties are fetched by this query.
+     *
+     * @return the names of the properties which are fetched or <tt>null</tt> if the whole <tt>_source</tt> is fetched
+     */
+    @Nullable
+    private Set<String> determineFetchedColumns() {
+        if (includedFields == null && excludedFields == null) {
+            return null;
+        }
+
+        Set<String> fetchedColumns = new HashSet<>();
+        descriptor.getProperties().forEach(property -> fetchedColumns.add(property.getPropertyName()));
+        if (includedFields != null) {
+            fetchedColumns.retainAll(includedFields);
+            fetchedColumns.add(ElasticEntity.ID.getName());
+            String routingField = elastic.determineRoutingField(descriptor);
+            if (routingField != null) {
+                fetchedColumns.add(routingField);
+            }
+        }
+        if (excludedFields != null) {
+            excludedFields.forEach(fetchedColumns::remove);
+        }
+
+        return fetchedColumns;
+    }
+
+    /**
+     * Returns the actual JSON query for <tt>_search</tt>.
+     * <p>
+     * The payload is only built once and then re-used until the query is modified again, as building (and later
+     * serializing) large queries is quite expensive. Therefore the result must not be modified. Callers which
+     * need to add parameters have to work on a {@link JSONObject#clone() copy}.
      *
      * @return the query as JSON
      */
     private JSONObject buildPayload() {
+        if (cachedPayload == null) {
+            cachedPayload = createPayload();
+        }
+
+        return cachedPayload;
+    }
+
+    /**
+     * Discards the memoized payload, as the query has been modified.
+     * <p>
+     * This has to be invoked by every method which changes a part of the query which is contained in the payload.
+     */
+    private void invalidatePayload() {
+        this.cachedPayload = null;
+        this.cachedPayloadString = null;
+    }
+
+    /**
+     * Builds the acutal JSON query for <tt>_search</tt>
+     *
+     * @return the query as JSON
+     */
+    private JSONObject createPayload() {
         JSONObject payload = new JSONObject();
         if (descriptor.isVersioned()) {
             payload.put(KEY_SEQ_NO_PRIMARY_TERM, true);
@@ -716,6 +986,7 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
             payload.put(KEY_EXPLAIN, true);
         }
 
+        applySourceFilter(payload);
         applyQuery(payload);
 
         if (sorts != null && !sorts.isEmpty()) {
@@ -859,26 +1130,34 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
         return existsResponse.getJSONObject(KEY_HITS).getJSONObject(KEY_TOTAL).getIntValue(KEY_VALUE) >= 1;
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public void iterate(Predicate<E> handler) {
         if (forceFail) {
             return;
         }
         if (useScrolling()) {
-            scroll(handler);
+            if (searchAfterPageSize > 0) {
+                searchAfter(handler);
+            } else {
+                scroll(handler);
+            }
             return;
         }
 
         String filteredRouting = checkRouting(Elastic.RoutingAccessMode.READ);
 
-        this.response =
-                client.search(elastic.determineReadAlias(descriptor), filteredRouting, skip, limit, buildPayload());
-        for (Object obj : this.response.getJSONObject(KEY_HITS).getJSONArray(KEY_HITS)) {
-            if (!handler.test((E) Elastic.make(descriptor, (JSONObject) obj))) {
-                return;
-            }
-        }
+        // The hits are bound while the response is being parsed. Their metadata is still retained in the response,
+        // so that it can be inspected (e.g. via getRawResponse) later on...
+        JSONArray hits = new JSONArray();
+        HitProcessor hitProcessor = new HitProcessor(handler, hits);
+        this.response = client.search(elastic.determineReadAlias(descriptor),
+                                      filteredRouting,
+                                      skip,
+                                      limit,
+                                      buildPayload(),
+                                      hitProcessor);
+        this.response.getJSONObject(KEY_HITS).put(KEY_HITS, hits);
+        hitProcessor.isCompleted();
     }
 
     /**
@@ -912,10 +1191,249 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
 
         String filteredRouting = checkRouting(Elastic.RoutingAccessMode.READ);
 
+        if (cacheMaxAge != null) {
+            this.response = computeCachedAggregations(filteredRouting);
+            return;
+        }
+
         this.response =
                 client.search(elastic.determineReadAlias(descriptor), filteredRouting, skip, limit, buildPayload());
     }
 
+    private JSONObject computeCachedAggregations(@Nullable String filteredRouting) {
+        String alias = elastic.determineReadAlias(descriptor);
+        JSONObject payload = buildPayload();
+
+        // The write epoch is part of the key, so that all entries become stale once an entity has been written...
+        String cacheKey = Hasher.sha256()
+                                .hash(alias)
+                                .hash(String.valueOf(filteredRouting))
+                                .hashLong(elastic.getWriteEpoch(descriptor))
+                                .hash(JSON.toJSONString(payload, SerializerFeature.MapSortField))
+                                .toHexString();
+
+        Tuple<Long, JSONObject> cachedResponse = elastic.aggregationCache.get(cacheKey);
+        long now = System.currentTimeMillis();
+        if (cachedResponse != null && now - cachedResponse.getFirst() <= cacheMaxAge.toMillis()) {
+            return cachedResponse.getSecond();
+        }
+
+        JSONObject searchResponse = client.searchWithRequestCache(alias, filteredRouting, payload);
+
+        // A write which has been performed shortly before might not have been refreshed yet. Therefore the
+        // response could still reflect the old data and must not be cached for the current epoch...
+        if (!elastic.isWithinRefreshWindow(descriptor, now)) {
+            elastic.aggregationCache.put(cacheKey, Tuple.create(now, searchResponse));
+        }
+        return searchResponse;
+    }
+
+    /**
+     * Asynchronously executes the query and collects all matching entities into a list.
+     * <p>
+     * In contrast to {@link #queryList()}, the calling thread isn't blocked while the request is being executed.
+     * Therefore several queries can be executed concurrently without occupying a thread per query. The same limits
+     * as for {@link #queryList()} apply. Once the promise is fulfilled, the response can also be inspected via
+     * {@link #getAggregation(String)}, {@link #getRawResponse()} and the like.
+     * <p>
+     * Note that the entities are bound (and callbacks attached to the promise are invoked) within the I/O thread of
+     * the client. Therefore these callbacks must never block.
+     *
+     * @return a promise which is fulfilled with all matching entities
+     */
+    public Promise<List<E>> queryListAsync() {
+        List<E> entities = new ArrayList<>();
+        if (forceFail) {
+            Promise<List<E>> result = new Promise<>();
+            result.success(entities);
+            return result;
+        }
+        if (limit > MAX_LIST_SIZE) {
+            throw Exceptions.handle()
+                            .to(Mixing.LOG)
+                            .withSystemErrorMessage("A limit of %s items can be selected when using 'queryListAsync'."
+                                                    + " Use 'iterate' for larger results. Query: %s",
+                                                    MAX_LIST_SIZE,
+                                                    this)
+                            .handle();
+        }
+
+        String filteredRouting = checkRouting(Elastic.RoutingAccessMode.READ);
+        JSONArray hits = new JSONArray();
+        HitProcessor hitProcessor = new HitProcessor(entity -> {
+            entities.add(entity);
+            failOnOverflow(entities);
+            return true;
+        }, hits);
+
+        // Install circuit breaker just like queryList does...
+        int effectiveLimit = limit == 0 ? MAX_LIST_SIZE + 1 : limit;
+        return client.searchAsync(elastic.determineReadAlias(descriptor),
+                                  filteredRouting,
+                                  skip,
+                                  effectiveLimit,
+                                  buildPayload(),
+                                  hitProcessor).map(searchResponse -> {
+            searchResponse.getJSONObject(KEY_HITS).put(KEY_HITS, hits);
+            this.response = searchResponse;
+            hitProcessor.isCompleted();
+            return entities;
+        });
+    }
+
+    /**
+     * Asynchronously determines the number of matching entities.
+     *
+     * @return a promise which is fulfilled with the number of matching entities
+     * @see #count()
+     */
+    public Promise<Long> countAsync() {
+        if (forceFail) {
+            Promise<Long> result = new Promise<>();
+            result.success(0L);
+            return result;
+        }
+        if (skip > 0 || limit > 0) {
+            Elastic.LOG.WARN("COUNT queries support neither skip nor limit: %s\n%s", this, ExecutionPoint.snapshot());
+        }
+
+        String filteredRouting = checkRouting(Elastic.RoutingAccessMode.READ);
+
+        return client.countAsync(elastic.determineReadAlias(descriptor), filteredRouting, buildSimplePayload())
+                     .map(countResponse -> countResponse.getLong(KEY_COUNT));
+    }
+
+    /**
+     * Asynchronously executes a request which just contains aggregations.
+     * <p>
+     * Once the promise is fulfilled, the computed aggregations can be read via {@link #getAggregation(String)}.
+     *
+     * @return a promise which is fulfilled with the query itself once the aggregations have been computed
+     * @see #computeAggregations()
+     */
+    public Promise<ElasticQuery<E>> computeAggregationsAsync() {
+        if (forceFail) {
+            throw new IllegalStateException("Aggregations can not be computed on a failed query.");
+        }
+        if (limit != 0) {
+            throw Exceptions.handle()
+                            .to(Mixing.LOG)
+                            .withSystemErrorMessage("When using 'computeAggregationsAsync' no search items are fetched,"
+                                                    + " but the limit parameter was set != 0.")
+                            .handle();
+        }
+
+        String filteredRouting = checkRouting(Elastic.RoutingAccessMode.READ);
+
+        return client.searchAsync(elastic.determineReadAlias(descriptor),
+                                  filteredRouting,
+                                  skip,
+                                  limit,
+                                  buildPayload(),
+                                  JSONReader::readObject).map(searchResponse -> {
+            this.response = searchResponse;
+            return this;
+        });
+    }
+
+    /**
+     * Iterates over all buckets of the given {@link AggregationBuilder#COMPOSITE} aggregation.
+     * <p>
+     * This automatically paginates through the aggregation by re-issuing the query (without fetching any hits)
+     * along with the <tt>after_key</tt> of the previous page. Therefore all buckets can be processed without
+     * having to handle {@link AggregationResult#getCompoundAfterKey()} manually. Note that the other aggregations
+     * of this query are not computed and that the query itself isn't modified.
+     *
+     * @param compositeAggregation the composite aggregation to iterate over. The <tt>size</tt> of this aggregation
+     *                             determines the number of buckets fetched per request
+     * @param bucketHandler        the handler to invoke for each bucket. If it returns <tt>false</tt>, the
+     *                             iteration is aborted
+     */
+    public void iterateCompositeBuckets(AggregationBuilder compositeAggregation, Predicate<Bucket> bucketHandler) {
+        iterateCompositeBuckets(compositeAggregation, false, bucketHandler);
+    }
+
+    /**
+     * Iterates over all buckets of the given {@link AggregationBuilder#COMPOSITE} aggregation.
+     * <p>
+     * If <tt>prefetch</tt> is enabled, the next page is already requested while the buckets of the current page
+     * are being processed. This hides the latency of Elasticsearch for handlers which perform some work per
+     * bucket, but also means that one request might be wasted if the iteration is aborted.
+     * <p>
+     * The iteration is also aborted once the current {@link TaskContext} is no longer active.
+     *
+     * @param compositeAggregation the composite aggregation to iterate over. The <tt>size</tt> of this aggregation
+     *                             determines the number of buckets fetched per request
+     * @param prefetch             determines if the next page should be fetched while the current one is processed
+     * @param bucketHandler        the handler to invoke for each bucket. If it returns <tt>false</tt>, the
+     *                             iteration is aborted
+     * @see #iterateCompositeBuckets(AggregationBuilder, Predicate)
+     */
+    public void iterateCompositeBuckets(AggregationBuilder compositeAggregation,
+                                        boolean prefetch,
+                                        Predicate<Bucket> bucketHandler) {
+        if (forceFail) {
+            return;
+        }
+
+        TaskContext ctx = TaskContext.get();
+        RateLimit rateLimit = RateLimit.timeInterval(1, TimeUnit.SECONDS);
+        Promise<AggregationResult> nextPage = fetchCompositePage(compositeAggregation, null);
+        while (nextPage != null) {
+            AggregationResult page = awaitCompositePage(nextPage);
+            List<Bucket> buckets = page.getBuckets();
+            String afterKey = buckets.isEmpty() ? null : page.getCompoundAfterKey();
+
+            nextPage = null;
+            if (prefetch && afterKey != null) {
+                nextPage = fetchCompositePage(compositeAggregation, afterKey);
+            }
+
+            for (Bucket bucket : buckets) {
+                // If the iteration is aborted, a prefetched page is simply discarded...
+                if ((rateLimit.check() && !ctx.isActive()) || !bucketHandler.test(bucket)) {
+                    return;
+                }
+            }
+
+            if (!prefetch && afterKey != null) {
+                nextPage = fetchCompositePage(compositeAggregation, afterKey);
+            }
+        }
+    }
+
+    private Promise<AggregationResult> fetchCompositePage(AggregationBuilder compositeAggregation,
+                                                          @Nullable String afterKey) {
+        ElasticQuery<E> pageQuery = copy();
+        pageQuery.skip = 0;
+        pageQuery.limit = 0;
+        pageQuery.cacheMaxAge = null;
+        pageQuery.clearAggregations().addAggregation(compositeAggregation.copy().withCompoundAfterKey(afterKey));
+
+        return pageQuery.computeAggregationsAsync()
+                        .map(query -> query.getAggregation(compositeAggregation.getName()));
+    }
+
+    private AggregationResult awaitCompositePage(Promise<AggregationResult> page) {
+        page.await(COMPOSITE_PAGE_TIMEOUT);
+        if (page.isFailed()) {
+            throw Exceptions.handle()
+                            .to(Elastic.LOG)
+                            .error(page.getFailure())
+                            .withSystemErrorMessage("Failed to fetch the buckets of a composite aggregation: %s (%s)")
+                            .handle();
+        }
+        if (!page.isCompleted()) {
+            throw Exceptions.handle()
+                            .to(Elastic.LOG)
+                            .withSystemErrorMessage("Fetching the buckets of a composite aggregation timed out"
+                                                    + " after %s. Query: %s", COMPOSITE_PAGE_TIMEOUT, this)
+                            .handle();
+        }
+
+        return page.get();
+    }
+
     /**
      * Returns the buckets which were computed as an aggregation while executing the query.
      * <p>
@@ -973,6 +1491,103 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
         return Optional.of(getAggregation(name).getJSONObject());
     }
 
+    /**
+     * Appends this query to the given multi search request.
+     * <p>
+     * In contrast to {@link #queryList()}, a limit of <tt>0</tt> isn't replaced by a default. Rather no hits are
+     * fetched at all, just like when using {@link #computeAggregations()}.
+     *
+     * @param request the request to append the query to
+     * @return the reader which binds the hits of this query or <tt>null</tt> if the query is known to fail and
+     * therefore has been skipped
+     * @see Elastic#multiSearch(ElasticQuery[])
+     */
+    @Nullable
+    protected Consumer<JSONReader> appendToMultiSearch(BulkRequestBuffer request) {
+        this.multiSearchError = null;
+        if (forceFail) {
+            this.multiSearchResults = Collections.emptyList();
+            return null;
+        }
+        if (limit > MAX_LIST_SIZE) {
+            throw Exceptions.handle()
+                            .to(Mixing.LOG)
+                            .withSystemErrorMessage("A limit of %s items can be selected when using 'multiSearch'. "
+                                                    + "Use 'iterate' for larger results. Query: %s",
+                                                    MAX_LIST_SIZE,
+                                                    this)
+                            .handle();
+        }
+
+        String filteredRouting = checkRouting(Elastic.RoutingAccessMode.READ);
+        JSONObject header = new JSONObject().fluentPut(KEY_INDEX, elastic.determineReadAlias(descriptor));
+        if (filteredRouting != null) {
+            header.put(KEY_ROUTING, filteredRouting);
+        }
+        JSONObject payload = (JSONObject) buildPayload().clone();
+        request.addCommand(header, payload.fluentPut(KEY_FROM, skip).fluentPut(KEY_SIZE, limit));
+
+        List<E> results = new ArrayList<>();
+        this.multiSearchResults = results;
+        this.pendingMultiSearch = new HitProcessor(entity -> results.add(entity), new JSONArray());
+        return pendingMultiSearch;
+    }
+
+    /**
+     * Applies the response which was received for this query as part of a multi search request.
+     * <p>
+     * If the search failed, the error is logged and kept, so that {@link #getMultiSearchResults()} reports it
+     * for this query only, while the other queries of the multi search are still completed.
+     *
+     * @param searchResponse the response of the search which was added by {@link #appendToMultiSearch}
+     */
+    protected void completeMultiSearch(JSONObject searchResponse) {
+        HitProcessor hitProcessor = pendingMultiSearch;
+        this.pendingMultiSearch = null;
+
+        if (searchResponse.containsKey(KEY_ERROR)) {
+            this.multiSearchResults = null;
+            this.multiSearchError = Exceptions.handle()
+                                              .to(Elastic.LOG)
+                                              .withSystemErrorMessage(
+                                                      "A search within a multi search request failed: %s - Query: %s",
+                                                      searchResponse.get(KEY_ERROR),
+                                                      this)
+                                              .handle();
+            return;
+        }
+
+        searchResponse.getJSONObject(KEY_HITS).put(KEY_HITS, hitProcessor.retainedHits);
+        this.response = searchResponse;
+        hitProcessor.isCompleted();
+    }
+
+    /**
+     * Returns the entities which were fetched for this query by {@link Elastic#multiSearch(ElasticQuery[])}.
+     * <p>
+     * All other information of the response (aggregations, total hits, suggestions...) can be accessed just
+     * like when executing the query directly.
+     *
+     * @return the entities which were fetched by the last multi search this query took part in
+     * @throws HandledException if the search of this query failed within the multi search
+     */
+    public List<E> getMultiSearchResults() {
+        if (multiSearchError != null) {
+            throw multiSearchError;
+        }
+        if (multiSearchResults == null) {
+            throw Exceptions.handle()
+                            .to(Mixing.LOG)
+                            .withSystemErrorMessage(
+                                    "Error while reading entities of type '%s': The query wasn't executed via"
+                                    + " 'multiSearch'!",
+                                    descriptor.getType().getSimpleName())
+                            .handle();
+        }
+
+        return Collections.unmodifiableList(multiSearchResults);
+    }
+
     /**
      * Determines if the query has been executed using either {@link #queryList()} or the like or
      * {@link #computeAggregations()}.
@@ -1141,103 +1756,438 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
      */
     private void scroll(Predicate<E> handler) {
         try {
-            if (sorts == null || sorts.isEmpty()) {
-                // If no explicit search order is given, we sort by _doc which improves the performance
-                // according to the Elasticsearch documentation.
-                orderAsc(Mapping.named(KEY_DOC_ID));
-            }
-
+            prepareScroll();
             String filteredRouting = checkRouting(Elastic.RoutingAccessMode.READ);
+            scroll(buildPayload(), filteredRouting, new HitProcessor(wrapForCursor(handler), null));
+        } catch (Exception t) {
+            throw Exceptions.handle(Elastic.LOG, t);
+        }
+    }
 
-            JSONObject scrollResponse = client.createScroll(elastic.determineReadAlias(descriptor),
-                                                            filteredRouting,
-                                                            0,
-                                                            filteredRouting == null ?
-                                                            MAX_SCROLL_RESULTS_FOR_SINGLE_SHARD :
-                                                            MAX_SCROLL_RESULTS_PER_SHARD,
-                                                            SCROLL_TTL_SECONDS,
-                                                            buildPayload());
-            try {
-                TaskContext ctx = TaskContext.get();
-                RateLimit rateLimit = RateLimit.timeInterval(1, TimeUnit.SECONDS);
-                Limit effectiveLimit = new Limit(skip, limit);
-                scrollResponse = executeScroll(entity -> {
-                    // Check if the user aborted processing...
-                    if (rateLimit.check() && !ctx.isActive()) {
-                        return false;
-                    }
+    private void prepareScroll() {
+        if (sorts == null || sorts.isEmpty()) {
+            // If no explicit search order is given, we sort by _doc which improves the performance
+            // according to the Elasticsearch documentation.
+            orderAsc(Mapping.named(KEY_DOC_ID));
+        }
+    }
 
-                    // If we are still skipping items, quickly process the next one...
-                    if (!effectiveLimit.nextRow()) {
-                        return true;
-                    }
+    /**
+     * Creates a scroll cursor for the given payload and iterates over it.
+     * <p>
+     * The cursor is always closed, even if processing fails.
+     *
+     * @param payload         the query to execute
+     * @param filteredRouting the routing to use
+     * @param hitProcessor    the processor which handles the hits and determines if we should continue
+     */
+    private void scroll(JSONObject payload, @Nullable String filteredRouting, HitProcessor hitProcessor) {
+        int batchSize = determineScrollBatchSize(filteredRouting);
+        long scrollStarted = System.currentTimeMillis();
+        elastic.scrollBatchSize.addValue(batchSize);
+        JSONObject scrollResponse = client.createScroll(elastic.determineReadAlias(descriptor),
+                                                        filteredRouting,
+                                                        0,
+                                                        batchSize,
+                                                        SCROLL_TTL_SECONDS,
+                                                        payload,
+                                                        hitProcessor);
+        try {
+            scrollResponse = executeScroll(hitProcessor, scrollResponse, batchSize, scrollStarted);
+        } finally {
+            client.closeScroll(scrollResponse.getString(KEY_SCROLL_ID));
+        }
+
+        if (isAdaptiveScrollBatchSize() && !hitProcessor.aborted) {
+            elastic.updateAdaptiveScrollBatchSize(descriptor,
+                                                  adaptBatchSize(batchSize,
+                                                                 hitProcessor.getSlowestPageMillis(),
+                                                                 determineTargetPageMillis(true)));
+        }
+    }
+
+    private int determineScrollBatchSize(@Nullable String filteredRouting) {
+        int batchSize = scrollBatchSize;
+        if (batchSize <= 0) {
+            batchSize = filteredRouting == null ? MAX_SCROLL_RESULTS_FOR_SINGLE_SHARD : MAX_SCROLL_RESULTS_PER_SHARD;
+        }
+        if (isAdaptiveScrollBatchSize()) {
+            batchSize = elastic.getAdaptiveScrollBatchSize(descriptor, batchSize);
+        }
+
+        return batchSize;
+    }
+
+    private boolean isAdaptiveScrollBatchSize() {
+        // An explicitly given batch size is always respected...
+        return adaptiveBatchSize && scrollBatchSize <= 0;
+    }
+
+    /**
+     * Determines the desired duration to fetch and process a single page.
+     *
+     * @param scroll <tt>true</tt> if a scroll cursor is used, which has to be kept alive between two pages
+     * @return the desired duration of a page in milliseconds
+     */
+    private long determineTargetPageMillis(boolean scroll) {
+        long targetMillis = targetPageDuration.toMillis();
+        if (scroll) {
+            // Ensure that even a page which takes several times longer than desired doesn't exceed the keep alive...
+            targetMillis = Math.min(targetMillis, TimeUnit.SECONDS.toMillis(SCROLL_TTL_SECONDS) / 10);
+        }
+
+        return Math.max(1, targetMillis);
+    }
+
+    /**
+     * Computes the next batch size based on the time it took to process the slowest batch.
+     * <p>
+     * The batch size is scaled by the ratio of the target duration and the observed duration, so that the next
+     * batch takes about the target duration. To remain stable, the batch size changes by at most a factor of two
+     * and it isn't changed at all if the observed duration is within 20% of the target duration.
+     *
+     * @param batchSize         the current batch size
+     * @param slowestPageMillis the time in milliseconds it took to fetch and process the slowest batch
+     * @param targetPageMillis  the desired time in milliseconds to fetch and process a batch
+     * @return the batch size to use next
+     */
+    static int adaptBatchSize(int batchSize, long slowestPageMillis, long targetPageMillis) {
+        double ratio = (double) targetPageMillis / Math.max(1, slowestPageMillis);
+        if (ratio > 0.8 && ratio < 1.2) {
+            return batchSize;
+        }
+
+        long nextBatchSize = Math.round(batchSize * Math.max(0.5, Math.min(2.0, ratio)));
+        return (int) Math.max(MIN_ADAPTIVE_BATCH_SIZE, Math.min(MAX_ADAPTIVE_BATCH_SIZE, nextBatchSize));
+    }
+
+    /**
+     * Iterates over all results by using several sliced scroll queries in parallel.
+     * <p>
+     * The result is split into the given number of slices, each of which is processed by a scroll cursor on its own
+     * worker thread. This utilizes all shards of an index at once and therefore greatly speeds up exporting large
+     * indices. Each slice checks if the current task is still active and all slices are aborted as soon as one of
+     * them fails. The scroll cursors are always closed and this method only returns once all slices have completed.
+     * <p>
+     * Note that the given consumer is invoked by several threads concurrently and therefore has to be thread-safe.
+     * Also note that neither {@link #skip(int)} nor {@link #limit(int)} are supported and that the entities are
+     * processed in no particular order.
+     *
+     * @param slices   the number of slices to process in parallel. This should be a multiple of the number of shards
+     * @param consumer the consumer to be supplied with each entity
+     */
+    public void iterateParallel(int slices, Consumer<E> consumer) {
+        if (forceFail) {
+            return;
+        }
+        if (skip > 0 || limit > 0) {
+            throw new IllegalStateException("iterateParallel does neither support skip nor limit.");
+        }
+        if (slices <= 1) {
+            iterateAll(consumer);
+            return;
+        }
 
-                    // Process entity, abort if the handler isn't interested in continuing...
-                    if (!handler.test(entity)) {
-                        return false;
+        try {
+            prepareScroll();
+            String filteredRouting = checkRouting(Elastic.RoutingAccessMode.READ);
+            JSONObject payload = buildPayload();
+
+            TaskContext ctx = TaskContext.get();
+            AtomicBoolean aborted = new AtomicBoolean();
+            List<Exception> errors = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch completedSlices = new CountDownLatch(slices);
+            for (int slice = 0; slice < slices; slice++) {
+                JSONObject slicePayload = (JSONObject) payload.clone();
+                slicePayload.put(KEY_SLICE, new JSONObject().fluentPut(KEY_ID, slice).fluentPut(KEY_MAX, slices));
+                HitProcessor hitProcessor = new HitProcessor(createSliceHandler(consumer, ctx, aborted), null);
+
+                tasks.executor(EXECUTOR_ELASTIC_PARALLEL_SCROLL).start(() -> {
+                    try {
+                        scroll(slicePayload, filteredRouting, hitProcessor);
+                    } catch (Exception e) {
+                        aborted.set(true);
+                        errors.add(e);
+                    } finally {
+                        completedSlices.countDown();
                     }
+                });
+            }
+
+            awaitSlices(completedSlices, aborted);
 
-                    // Let the limit deciede if we should continue or not...
-                    return effectiveLimit.shouldContinue();
-                }, scrollResponse);
-            } finally {
-                client.closeScroll(scrollResponse.getString(KEY_SCROLL_ID));
+            if (!errors.isEmpty()) {
+                throw errors.get(0);
             }
         } catch (Exception t) {
             throw Exceptions.handle(Elastic.LOG, t);
         }
     }
 
+    private Predicate<E> createSliceHandler(Consumer<E> consumer, TaskContext ctx, AtomicBoolean aborted) {
+        RateLimit rateLimit = RateLimit.timeInterval(1, TimeUnit.SECONDS);
+        return entity -> {
+            // Check if either another slice failed or the user aborted processing...
+            if (aborted.get() || (rateLimit.check() && !ctx.isActive())) {
+                return false;
+            }
+
+            consumer.accept(entity);
+            return true;
+        };
+    }
+
+    private void awaitSlices(CountDownLatch completedSlices, AtomicBoolean aborted) throws InterruptedException {
+        try {
+            completedSlices.await();
+        } catch (InterruptedException e) {
+            // Signal all slices to stop and wait for them so that the scroll cursors are closed...
+            aborted.set(true);
+            completedSlices.await(SCROLL_TTL_SECONDS, TimeUnit.SECONDS);
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
     /**
-     * Loops over the scroll cursor until either processing is aborted or all entities have been read.
+     * Wraps the given handler so that it can be used for a cursor (scroll or search after) which iterates over all
+     * results.
+     * <p>
+     * This will apply the requested limit and also check if the current task has been aborted.
      *
-     * @param handler       the handler which processes the entity and determines if we should continue
-     * @param firstResponse the first response we received when creating the scroll query.
-     * @return the last response we received when iterating over the scroll query
+     * @param handler the result handler as passed to {@link #iterate(Predicate)}
+     * @return the handler to pass to the {@link HitProcessor}
      */
-    @SuppressWarnings("unchecked")
-    private JSONObject executeScroll(Predicate<E> handler, JSONObject firstResponse) {
-        long lastScroll = 0;
-        JSONObject scrollResponse = firstResponse;
-        while (true) {
-            // we keep on executing queries until es returns an empty list of results...
-            JSONArray hits = scrollResponse.getJSONObject(KEY_HITS).getJSONArray(KEY_HITS);
-            if (hits.isEmpty()) {
-                return scrollResponse;
+    private Predicate<E> wrapForCursor(Predicate<E> handler) {
+        TaskContext ctx = TaskContext.get();
+        RateLimit rateLimit = RateLimit.timeInterval(1, TimeUnit.SECONDS);
+        Limit effectiveLimit = new Limit(skip, limit);
+        return entity -> {
+            // Check if the user aborted processing...
+            if (rateLimit.check() && !ctx.isActive()) {
+                return false;
+            }
+
+            // If we are still skipping items, quickly process the next one...
+            if (!effectiveLimit.nextRow()) {
+                return true;
+            }
+
+            // Process entity, abort if the handler isn't interested in continuing...
+            if (!handler.test(entity)) {
+                return false;
             }
 
-            for (Object obj : hits) {
-                if (!handler.test((E) Elastic.make(descriptor, (JSONObject) obj))) {
-                    return scrollResponse;
+            // Let the limit deciede if we should continue or not...
+            return effectiveLimit.shouldContinue();
+        };
+    }
+
+    /**
+     * Iterates over larger results by using <tt>search_after</tt>.
+     *
+     * @param handler the result handler as passed to {@link #iterate(Predicate)}
+     * @see #useSearchAfter(int)
+     */
+    private void searchAfter(Predicate<E> handler) {
+        try {
+            String filteredRouting = checkRouting(Elastic.RoutingAccessMode.READ);
+            String alias = elastic.determineReadAlias(descriptor);
+            JSONObject payload = (JSONObject) buildPayload().clone();
+            if (sorts == null || sorts.stream().noneMatch(sort -> sort.containsKey(Elastic.ID_FIELD))) {
+                // We need a unique tie-breaker so that no entity is skipped or returned twice. As the id isn't
+                // stored as a field of the document, we have to use _id. This is only added to the request, so
+                // that the sort order of the query itself remains unchanged...
+                List<JSONObject> effectiveSorts = sorts == null ? new ArrayList<>() : new ArrayList<>(sorts);
+                effectiveSorts.add(new JSONObject().fluentPut(Elastic.ID_FIELD,
+                                                              new JSONObject().fluentPut(KEY_ORDER, KEY_ASC)));
+                payload.put(KEY_SORT, effectiveSorts);
+            }
+            HitProcessor hitProcessor = new HitProcessor(wrapForCursor(handler), null);
+            int pageSize = searchAfterPageSize;
+            while (true) {
+                long pageStarted = System.currentTimeMillis();
+                elastic.scrollBatchSize.addValue(pageSize);
+                client.search(alias, filteredRouting, 0, pageSize, payload, hitProcessor);
+
+                // A page which isn't full is the last one, therefore we can skip the final (empty) request...
+                boolean lastPage = hitProcessor.getHitsInPage() < pageSize;
+                if (hitProcessor.isCompleted() || lastPage) {
+                    return;
+                }
+
+                payload.put(KEY_SEARCH_AFTER, hitProcessor.getLastSortValues());
+                if (adaptiveBatchSize) {
+                    pageSize = adaptBatchSize(pageSize,
+                                              System.currentTimeMillis() - pageStarted,
+                                              determineTargetPageMillis(false));
                 }
             }
+        } catch (Exception t) {
+            throw Exceptions.handle(Elastic.LOG, t);
+        }
+    }
+
+    /**
+     * Binds the hits to entities and passes them to the handler while the response is being parsed.
+     * <p>
+     * As the hits are streamed, the handler is invoked before the response (e.g. the scroll id) is available to the
+     * caller. Therefore any exception thrown by the handler is kept and re-thrown once the response has been read
+     * completely, so that e.g. the scroll cursor can still be closed properly.
+     */
+    private class HitProcessor implements Consumer<JSONReader> {
+
+        private final Predicate<E> handler;
+        private final JSONArray retainedHits;
+        private final Set<String> fetchedColumns;
+        private int hitsInPage;
+        private JSONArray lastSortValues;
+        private long slowestPageMillis;
+        private boolean aborted;
+        private RuntimeException error;
 
-            lastScroll = performScrollMonitoring(lastScroll);
-            scrollResponse = client.continueScroll(SCROLL_TTL_SECONDS, scrollResponse.getString(KEY_SCROLL_ID));
+        /**
+         * Creates a new processor.
+         *
+         * @param handler      the handler to pass the entities to
+         * @param retainedHits if non-null, all hits are collected into the given array
+         */
+        HitProcessor(Predicate<E> handler, @Nullable JSONArray retainedHits) {
+            this.handler = handler;
+            this.retainedHits = retainedHits;
+            this.fetchedColumns = determineFetchedColumns();
         }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void accept(JSONReader reader) {
+            hitsInPage++;
+            if (aborted) {
+                // Skip over (or collect) the remaining hits without building entities...
+                JSONObject hit = reader.readObject(JSONObject.class);
+                if (retainedHits != null) {
+                    retainedHits.add(hit);
+                }
+                return;
+            }
+
+            try {
+                E entity = (E) Elastic.make(descriptor, reader, fetchedColumns, retainedHits != null);
+                if (retainedHits != null) {
+                    retainedHits.add(entity.getSearchHit());
+                }
+                lastSortValues = entity.getSearchHitMetadata().getJSONArray(KEY_SORT);
+                aborted = !handler.test(entity);
+            } catch (RuntimeException e) {
+                error = e;
+                aborted = true;
+            }
+        }
+
+        /**
+         * Returns the number of hits in the current page.
+         *
+         * @return the number of hits read since the last call of {@link #isCompleted()}
+         */
+        int getHitsInPage() {
+            return hitsInPage;
+        }
+
+        /**
+         * Records the time it took to fetch and process a page.
+         *
+         * @param pageMillis the duration in milliseconds
+         */
+        void recordPageDuration(long pageMillis) {
+            slowestPageMillis = Math.max(slowestPageMillis, pageMillis);
+        }
+
+        /**
+         * Returns the longest duration recorded via {@link #recordPageDuration(long)}.
+         *
+         * @return the longest duration to fetch and process a page in milliseconds
+         */
+        long getSlowestPageMillis() {
+            return slowestPageMillis;
+        }
+
+        /**
+         * Returns the sort values of the last hit which has been processed.
+         *
+         * @return the sort values as required by <tt>search_after</tt>
+         */
+        JSONArray getLastSortValues() {
+            return lastSortValues;
+        }
+
+        /**
+         * Determines if processing is completed as either the handler aborted or an empty page was read.
+         * <p>
+         * Resets the hit counter for the next page.
+         *
+         * @return <tt>true</tt> if no further page should be fetched, <tt>false</tt> otherwise
+         * @throws RuntimeException if the handler threw an exception while processing the last page
+         */
+        boolean isCompleted() {
+            if (error != null) {
+                throw error;
+            }
+
+            boolean completed = aborted || hitsInPage == 0;
+            hitsInPage = 0;
+            return completed;
+        }
+    }
+
+    /**
+     * Loops over the scroll cursor until either processing is aborted or all entities have been read.
+     *
+     * @param hitProcessor  the processor which handles the hits and determines if we should continue
+     * @param firstResponse the first response we received when creating the scroll query.
+     * @param batchSize     the batch size of the scroll query
+     * @param scrollStarted the timestamp when the scroll query was created
+     * @return the last response we received when iterating over the scroll query
+     */
+    private JSONObject executeScroll(HitProcessor hitProcessor,
+                                     JSONObject firstResponse,
+                                     int batchSize,
+                                     long scrollStarted) {
+        long lastScroll = scrollStarted;
+        JSONObject scrollResponse = firstResponse;
+        // we keep on executing queries until es returns an empty list of results...
+        while (!hitProcessor.isCompleted()) {
+            lastScroll = performScrollMonitoring(lastScroll, hitProcessor);
+            elastic.scrollBatchSize.addValue(batchSize);
+            scrollResponse = client.continueScroll(SCROLL_TTL_SECONDS,
+                                                   scrollResponse.getString(KEY_SCROLL_ID),
+                                                   hitProcessor);
+        }
+
+        return scrollResponse;
     }
 
     /**
      * As a scroll cursor can timeout, we monitor the call interval and emit a warning if a timeout might have occurred.
      *
-     * @param lastScroll the timestamp when the last scoll was executed
+     * @param lastScroll   the timestamp when the last scoll was executed
+     * @param hitProcessor the processor used to record the duration of each page
      * @return the next timestamp
      */
-    private long performScrollMonitoring(long lastScroll) {
+    private long performScrollMonitoring(long lastScroll, HitProcessor hitProcessor) {
         long now = System.currentTimeMillis();
-        if (lastScroll > 0) {
-            long deltaInSeconds = TimeUnit.SECONDS.convert(now - lastScroll, TimeUnit.MILLISECONDS);
-            // Warn if processing of one scroll took longer thant our keep alive....
-            if (deltaInSeconds > SCROLL_TTL_SECONDS) {
-                Exceptions.handle()
-                          .withSystemErrorMessage(
-                                  "A scroll query against elasticserach took too long to process its data! "
-                                  + "The result is probably inconsistent! Query: %s\n%s",
-                                  this,
-                                  ExecutionPoint.snapshot())
-                          .to(Elastic.LOG)
-                          .handle();
-            }
+        hitProcessor.recordPageDuration(now - lastScroll);
+        long deltaInSeconds = TimeUnit.SECONDS.convert(now - lastScroll, TimeUnit.MILLISECONDS);
+        // Warn if processing of one scroll took longer thant our keep alive....
+        if (deltaInSeconds > SCROLL_TTL_SECONDS) {
+            elastic.numScrollTimeouts.inc();
+            Exceptions.handle()
+                      .withSystemErrorMessage(
+                              "A scroll query against elasticserach took too long to process its data! "
+                              + "The result is probably inconsistent! Query: %s\n%s",
+                              this,
+                              ExecutionPoint.snapshot())
+                      .to(Elastic.LOG)
+                      .handle();
         }
         return now;
     }
@@ -1270,6 +2220,10 @@ public class ElasticQuery<E extends ElasticEntity> extends Query<ElasticQuery<E>
 
     @Override
     public String toString() {
-        return descriptor.getType() + ": " + buildPayload();
+        if (cachedPayloadString == null) {
+            cachedPayloadString = buildPayload().toJSONString();
+        }
+
+        return descriptor.getType() + ": " + cachedPayloadString;
     }
 }
@@ -0,0 +1,228 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.db.es;
+
+import com.alibaba.fastjson.JSONObject;
+import sirius.db.mixing.Mapping;
+import sirius.db.mixing.OptimisticLockException;
+import sirius.kernel.health.Exceptions;
+
+import javax.annotation.Nullable;
+
+/**
+ * Fluent builder to modify single fields of an {@link ElasticEntity} using a script.
+ * <p>
+ * This is intended for small modifications of large documents (e.g. incrementing a counter), as neither the entity
+ * has to be serialized nor the whole document has to be transmitted. The modifications are applied by Elasticsearch
+ * using a painless script (<tt>_update</tt> with <tt>script</tt>).
+ * <p>
+ * Note that only top-level fields can be modified and that the given entity itself isn't modified - not even its
+ * version. Therefore it has to be re-fetched if the new values are required or if it is to be updated again.
+ * Otherwise, the optimistic locking of a {@link sirius.db.mixing.annotations.Versioned versioned} entity fails,
+ * as the entity doesn't reflect the changes made by the script.
+ *
+ * @see Elastic#updater(ElasticEntity)
+ */
+public class ElasticUpdater {
+
+    private static final String KEY_SOURCE = "source";
+    private static final String KEY_LANG = "lang";
+    private static final String KEY_PARAMS = "params";
+    private static final String LANG_PAINLESS = "painless";
+
+    private final Elastic elastic;
+    private final ElasticEntity entity;
+    private final StringBuilder source = new StringBuilder();
+    private final JSONObject params = new JSONObject();
+
+    protected ElasticUpdater(Elastic elastic, ElasticEntity entity) {
+        this.elastic = elastic;
+        this.entity = entity;
+    }
+
+    /**
+     * Sets a field to a new value.
+     *
+     * @param field the field to update
+     * @param value the new value of the field
+     * @return the builder itself for fluent method calls
+     */
+    public ElasticUpdater set(Mapping field, @Nullable Object value) {
+        source.append(field(field)).append(" = ").append(param(value)).append(";");
+        return this;
+    }
+
+    /**
+     * Removes a field from the document.
+     *
+     * @param field the field to remove
+     * @return the builder itself for fluent method calls
+     */
+    public ElasticUpdater unset(Mapping field) {
+        source.append("ctx._source.remove('").append(field).append("');");
+        return this;
+    }
+
+    /**
+     * Increments the given field by the given value.
+     * <p>
+     * If the field is empty, it is treated as 0.
+     *
+     * @param field the field to increment
+     * @param value the amount by which the field should be incremented (might be negative)
+     * @return the builder itself for fluent method calls
+     */
+    public ElasticUpdater inc(Mapping field, long value) {
+        String fieldAccess = field(field);
+        source.append(fieldAccess)
+              .append(" = (")
+              .append(fieldAccess)
+              .append(" == null ? 0 : ")
+              .append(fieldAccess)
+              .append(") + ")
+              .append(param(value))
+              .append(";");
+        return this;
+    }
+
+    /**
+     * Adds the given value to the given list unless it is already contained.
+     *
+     * @param field the field containing the list
+     * @param value the value to add
+     * @return the builder itself for fluent method calls
+     */
+    public ElasticUpdater addToSet(Mapping field, Object value) {
+        String fieldAccess = field(field);
+        String valueParam = param(value);
+        source.append("if (")
+              .append(fieldAccess)
+              .append(" == null) { ")
+              .append(fieldAccess)
+              .append(" = [")
+              .append(valueParam)
+              .append("]; } else if (!")
+              .append(fieldAccess)
+              .append(".contains(")
+              .append(valueParam)
+              .append(")) { ")
+              .append(fieldAccess)
+              .append(".add(")
+              .append(valueParam)
+              .append("); }");
+        return this;
+    }
+
+    /**
+     * Removes all occurrences of the given value from the given list.
+     *
+     * @param field the field containing the list
+     * @param value the value to remove
+     * @return the builder itself for fluent method calls
+     */
+    public ElasticUpdater pull(Mapping field, Object value) {
+        String fieldAccess = field(field);
+        source.append("if (")
+              .append(fieldAccess)
+              .append(" != null) { ")
+              .append(fieldAccess)
+              .append(".removeAll([")
+              .append(param(value))
+              .append("]); }");
+        return this;
+    }
+
+    private String field(Mapping field) {
+        return "ctx._source['" + field + "']";
+    }
+
+    private String param(@Nullable Object value) {
+        String name = "p" + params.size();
+        params.put(name, Elastic.FILTERS.transform(value));
+        return "params." + name;
+    }
+
+    /**
+     * Executes the modifications and fails if the entity has been modified concurrently.
+     * <p>
+     * If the entity isn't {@link sirius.db.mixing.annotations.Versioned}, no optimistic locking is performed.
+     *
+     * @throws OptimisticLockException in case of a concurrent modification
+     */
+    public void tryExecute() throws OptimisticLockException {
+        if (isEmpty()) {
+            return;
+        }
+
+        elastic.executeUpdater(this, false);
+    }
+
+    /**
+     * Executes the modifications and reports a concurrent modification as error.
+     *
+     * @see #tryExecute()
+     */
+    public void execute() {
+        try {
+            tryExecute();
+        } catch (OptimisticLockException e) {
+            throw Exceptions.handle(e);
+        }
+    }
+
+    /**
+     * Executes the modifications without performing any optimistic locking.
+     */
+    public void override() {
+        if (isEmpty()) {
+            return;
+        }
+
+        try {
+            elastic.executeUpdater(this, true);
+        } catch (OptimisticLockException e) {
+            // As no version is sent along, this cannot happen...
+            throw Exceptions.handle(e);
+        }
+    }
+
+    /**
+     * Determines if any modification has been specified.
+     *
+     * @return <tt>true</tt> if no modification has been specified yet, <tt>false</tt> otherwise
+     */
+    public boolean isEmpty() {
+        return source.length() == 0;
+    }
+
+    /**
+     * Returns the entity to update.
+     *
+     * @return the entity which is modified by this updater
+     */
+    public ElasticEntity getEntity() {
+        return entity;
+    }
+
+    /**
+     * Builds the script which applies all modifications.
+     *
+     * @return the script as expected by the <tt>_update</tt> API
+     */
+    protected JSONObject buildScript() {
+        return new JSONObject().fluentPut(KEY_SOURCE, source.toString())
+                               .fluentPut(KEY_LANG, LANG_PAINLESS)
+                               .fluentPut(KEY_PARAMS, params);
+    }
+
+    @Override
+    public String toString() {
+        return buildScript().toJSONString();
+    }
+}
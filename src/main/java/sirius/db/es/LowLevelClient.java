@@ -10,26 +10,28 @@ package sirius.db.es;
 
 import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.JSONReader;
 import org.apache.http.HttpEntity;
 import org.apache.http.entity.StringEntity;
 import org.elasticsearch.client.Request;
 import org.elasticsearch.client.Response;
 import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.ResponseListener;
 import org.elasticsearch.client.RestClient;
 import sirius.db.mixing.OptimisticLockException;
-import sirius.kernel.commons.Explain;
+import sirius.kernel.async.Promise;
 import sirius.kernel.commons.Strings;
 import sirius.kernel.health.Exceptions;
 import sirius.kernel.health.HandledException;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.net.SocketTimeoutException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
 
 /**
  * Provides a low-level client against Elasticsearch.
@@ -39,12 +41,23 @@ import java.util.stream.Collectors;
 public class LowLevelClient {
 
     private static final String API_REINDEX = "/_reindex?pretty";
+    private static final String API_START_REINDEX = "/_reindex";
+    private static final String API_TASKS = "/_tasks/";
+    private static final String API_CANCEL = "/_cancel";
     private static final String API_ALIAS = "/_alias";
     private static final String API_ALIASES = "/_aliases";
     private static final String API_SEARCH = "/_search";
+    private static final String API_MULTI_SEARCH = "_msearch";
+    private static final String API_MULTI_GET = "/_mget";
     private static final String API_DELETE_BY_QUERY = "/_delete_by_query";
     private static final String API_PREFIX_DOC = "/_doc/";
+    private static final String API_PREFIX_UPDATE = "/_update/";
+    private static final String KEY_DOC = "doc";
+    private static final String KEY_AGGS = "aggs";
+    private static final String KEY_AGGREGATIONS = "aggregations";
+    private static final String KEY_SCRIPT = "script";
     private static final String API_REFRESH = "/_refresh";
+    private static final String API_FORCE_MERGE = "/_forcemerge";
     private static final String API_SETTINGS = "/_settings";
     private static final String API_CLUSTER_HEALTH = "/_cluster/health";
     private static final String API_STATS = "/_stats";
@@ -137,6 +150,79 @@ public class LowLevelClient {
                            .response();
     }
 
+    /**
+     * Tells Elasticsearch to update the given fields of the given document.
+     * <p>
+     * In contrast to {@link #index(String, String, String, Long, Long, JSONObject)}, all fields which are not
+     * contained in the given data remain untouched.
+     *
+     * @param index       the target index
+     * @param id          the ID of the document to update
+     * @param routing     the routing to use
+     * @param primaryTerm the primaryTerm to use for optimistic locking during the update
+     * @param seqNo       the seqNo to use for optimistic locking during the update
+     * @param data        the fields to update
+     * @return the response of the call
+     * @throws OptimisticLockException in case of an optimistic locking error (wrong version provided)
+     */
+    public JSONObject update(String index,
+                             String id,
+                             @Nullable String routing,
+                             @Nullable Long primaryTerm,
+                             @Nullable Long seqNo,
+                             JSONObject data) throws OptimisticLockException {
+        return executeUpdate(index, id, routing, primaryTerm, seqNo, new JSONObject().fluentPut(KEY_DOC, data));
+    }
+
+    /**
+     * Tells Elasticsearch to update the given document using the given script.
+     *
+     * @param index       the target index
+     * @param id          the ID of the document to update
+     * @param routing     the routing to use
+     * @param primaryTerm the primaryTerm to use for optimistic locking during the update
+     * @param seqNo       the seqNo to use for optimistic locking during the update
+     * @param script      the script to execute (containing <tt>source</tt> and <tt>params</tt>)
+     * @return the response of the call
+     * @throws OptimisticLockException in case of an optimistic locking error (wrong version provided)
+     * @see ElasticUpdater
+     */
+    public JSONObject updateWithScript(String index,
+                                       String id,
+                                       @Nullable String routing,
+                                       @Nullable Long primaryTerm,
+                                       @Nullable Long seqNo,
+                                       JSONObject script) throws OptimisticLockException {
+        return executeUpdate(index, id, routing, primaryTerm, seqNo, new JSONObject().fluentPut(KEY_SCRIPT, script));
+    }
+
+    private JSONObject executeUpdate(String index,
+                                     String id,
+                                     @Nullable String routing,
+                                     @Nullable Long primaryTerm,
+                                     @Nullable Long seqNo,
+                                     JSONObject body) throws OptimisticLockException {
+        // A null value of a partial document has to be sent explicitly, as it clears the field...
+        return performPost().routing(routing)
+                            .primaryTerm(primaryTerm)
+                            .seqNo(seqNo)
+                            .dataWithNullValues(body)
+                            .tryExecute(index + API_PREFIX_UPDATE + id)
+                            .response();
+    }
+
+    /**
+     * Performs a lookup for several documents at once.
+     *
+     * @param index the index to search in
+     * @param docs  the documents to fetch, each containing an <tt>_id</tt> and optionally a <tt>routing</tt>
+     * @return the response of the call which contains one entry per requested document in <tt>docs</tt>
+     * @see Elastic#findAll(Class, java.util.Collection, sirius.db.mixing.ContextInfo...)
+     */
+    public JSONObject multiGet(String index, List<JSONObject> docs) {
+        return performPost().data(new JSONObject().fluentPut("docs", docs)).execute(index + API_MULTI_GET).response();
+    }
+
     /**
      * Performs a lookup for the given document.
      *
@@ -192,7 +278,11 @@ public class LowLevelClient {
      * @return the response of the call
      */
     public JSONObject deleteByQuery(String alias, @Nullable String routing, JSONObject query) {
-        return performPost().routing(routing).data(query).execute(alias + API_DELETE_BY_QUERY).response();
+        return performPost().routing(routing)
+                            .data(query)
+                            .expectSlowResponse(true)
+                            .execute(alias + API_DELETE_BY_QUERY)
+                            .response();
     }
 
     /**
@@ -210,10 +300,127 @@ public class LowLevelClient {
                            .withParam("size", size)
                            .withParam("from", from)
                            .data(query)
+                           .expectSlowResponse(hasAggregations(query))
+                           .execute(alias + API_SEARCH)
+                           .response();
+    }
+
+    /**
+     * Executes a search which only computes aggregations and permits Elasticsearch to cache its result.
+     * <p>
+     * This sets <tt>size=0</tt> and <tt>request_cache=true</tt>, so that the result is cached by the shard level
+     * request cache of Elasticsearch until the next refresh of the index.
+     *
+     * @param alias   the alias which determines the indices to search in
+     * @param routing the routing to use
+     * @param query   the query to execute
+     * @return the response of the call
+     */
+    public JSONObject searchWithRequestCache(String alias, @Nullable String routing, JSONObject query) {
+        return performGet().routing(routing)
+                           .withParam("size", 0)
+                           .withParam("request_cache", true)
+                           .data(query)
+                           .expectSlowResponse(true)
                            .execute(alias + API_SEARCH)
                            .response();
     }
 
+    /**
+     * Executes a search and streams the hits to the given reader while the response is being parsed.
+     *
+     * @param alias     the alias which determines the indices to search in
+     * @param routing   the routing to use
+     * @param from      the number of items to skip
+     * @param size      the maximal result length
+     * @param query     the query to execute
+     * @param hitReader invoked for each hit to consume it from the given JSON reader
+     * @return the response of the call (without any hits)
+     */
+    public JSONObject search(String alias,
+                             @Nullable String routing,
+                             int from,
+                             int size,
+                             JSONObject query,
+                             Consumer<JSONReader> hitReader) {
+        return performGet().routing(routing)
+                           .withParam("size", size)
+                           .withParam("from", from)
+                           .data(query)
+                           .expectSlowResponse(hasAggregations(query))
+                           .execute(alias + API_SEARCH)
+                           .streamResponse(hitReader);
+    }
+
+    /**
+     * Determines if the given search computes aggregations.
+     * <p>
+     * Large aggregations can take a while even on a healthy cluster, therefore their duration isn't reported to the
+     * concurrency limiter (see {@link RequestBuilder#expectSlowResponse(boolean)}).
+     *
+     * @param query the query to check
+     * @return <tt>true</tt> if the query contains aggregations, <tt>false</tt> otherwise
+     */
+    private boolean hasAggregations(JSONObject query) {
+        return query.containsKey(KEY_AGGREGATIONS) || query.containsKey(KEY_AGGS);
+    }
+
+    /**
+     * Asynchronously executes a search and streams the hits to the given reader while the response is being parsed.
+     * <p>
+     * Note that the hit reader is invoked within the I/O thread of the client and must therefore never block.
+     *
+     * @param alias     the alias which determines the indices to search in
+     * @param routing   the routing to use
+     * @param from      the number of items to skip
+     * @param size      the maximal result length
+     * @param query     the query to execute
+     * @param hitReader invoked for each hit to consume it from the given JSON reader
+     * @return a promise which is fulfilled with the response of the call (without any hits)
+     */
+    public Promise<JSONObject> searchAsync(String alias,
+                                           @Nullable String routing,
+                                           int from,
+                                           int size,
+                                           JSONObject query,
+                                           Consumer<JSONReader> hitReader) {
+        return performGet().routing(routing)
+                           .withParam("size", size)
+                           .withParam("from", from)
+                           .data(query)
+                           .expectSlowResponse(hasAggregations(query))
+                           .executeAsync(alias + API_SEARCH, request -> request.streamResponse(hitReader));
+    }
+
+    /**
+     * Asynchronously determines the number of hits for a given query.
+     *
+     * @param alias   the alias which determines the indices to search in
+     * @param routing the routing to use
+     * @param query   the query to execute
+     * @return a promise which is fulfilled with the response of the call
+     */
+    public Promise<JSONObject> countAsync(String alias, @Nullable String routing, JSONObject query) {
+        return performGet().routing(routing).data(query).executeAsync(alias + "/_count", RequestBuilder::response);
+    }
+
+    /**
+     * Executes several searches within a single request and streams the hits of each to the given readers.
+     * <p>
+     * The given buffer contains a header (index, routing) and a body (the query including <tt>from</tt> and
+     * <tt>size</tt>) for each search.
+     *
+     * @param searches   the searches to execute
+     * @param hitReaders invoked for each hit to consume it from the given JSON reader, one per search
+     * @return the responses of the individual searches (without any hits) in the order of the given searches
+     * @see Elastic#multiSearch(ElasticQuery[])
+     */
+    public JSONArray multiSearch(BulkRequestBuffer searches, List<Consumer<JSONReader>> hitReaders) {
+        return performPost().rawEntity(searches.toEntity())
+                            .execute(API_MULTI_SEARCH)
+                            .streamMultiResponse(hitReaders);
+    }
+
     /**
      * Executes a async reindex request.
      *
@@ -226,13 +433,69 @@ public class LowLevelClient {
                         String destinationIndexName,
                         @Nullable Consumer<Response> onSuccess,
                         @Nullable Consumer<HandledException> onFailure) {
-        performPost().data(new JSONObject().fluentPut("source",
-                                                      new JSONObject().fluentPut(PARAM_INDEX, sourceIndexName))
-                                           .fluentPut("dest",
-                                                      new JSONObject().fluentPut(PARAM_INDEX, destinationIndexName)))
+        performPost().data(createReindexRequest(sourceIndexName, destinationIndexName))
                      .executeAsync(API_REINDEX, onSuccess, onFailure);
     }
 
+    private JSONObject createReindexRequest(String sourceIndexName, String destinationIndexName) {
+        return new JSONObject().fluentPut("source", new JSONObject().fluentPut(PARAM_INDEX, sourceIndexName))
+                               .fluentPut("dest", new JSONObject().fluentPut(PARAM_INDEX, destinationIndexName));
+    }
+
+    /**
+     * Starts a reindex request which is executed as background task by Elasticsearch.
+     * <p>
+     * In contrast to {@link #reindex(String, String, Consumer, Consumer)}, the request returns immediately and the
+     * progress can be observed via {@link #getTask(String)}.
+     * <p>
+     * Documents which already exist in the destination index are not overwritten, as these have most probably been
+     * written after the destination index has been installed as write index and are therefore more recent.
+     *
+     * @param sourceIndexName      the source index to read from
+     * @param destinationIndexName the name of the index in which the documents should be reindexed
+     * @param slices               the number of slices to process in parallel. Use 0 to let Elasticsearch pick
+     *                             a suitable number (<tt>auto</tt>) and 1 to disable slicing
+     * @param requestsPerSecond    the maximal number of documents to reindex per second or 0 to disable throttling
+     * @return the id of the task which performs the reindex
+     * @see Elastic#reindexIntoWriteIndex(sirius.db.mixing.EntityDescriptor, int, int)
+     */
+    public String startReindex(String sourceIndexName,
+                               String destinationIndexName,
+                               int slices,
+                               int requestsPerSecond) {
+        JSONObject request = createReindexRequest(sourceIndexName, destinationIndexName);
+        request.getJSONObject("dest").put("op_type", "create");
+        request.put("conflicts", "proceed");
+
+        return performPost().withParam("wait_for_completion", false)
+                            .withParam("slices", slices > 0 ? String.valueOf(slices) : "auto")
+                            .withParam("requests_per_second", requestsPerSecond > 0 ? requestsPerSecond : -1)
+                            .data(request)
+                            .expectSlowResponse(true)
+                            .execute(API_START_REINDEX)
+                            .response()
+                            .getString("task");
+    }
+
+    /**
+     * Fetches the state of the given task.
+     *
+     * @param taskId the id of the task to fetch
+     * @return a JSON object as returned by <tt>/_tasks/taskId</tt>
+     */
+    public JSONObject getTask(String taskId) {
+        return performGet().execute(API_TASKS + taskId).response();
+    }
+
+    /**
+     * Cancels the given task.
+     *
+     * @param taskId the id of the task to cancel
+     */
+    public void cancelTask(String taskId) {
+        performPost().execute(API_TASKS + taskId + API_CANCEL).response();
+    }
+
     /**
      * Adds an alias to a given index.
      *
@@ -376,6 +639,51 @@ public class LowLevelClient {
                            .response();
     }
 
+    /**
+     * Creates a scroll search and streams the hits of the first page to the given reader.
+     * <p>
+     * As the hits are not retained, only a single hit has to be kept in memory at a time.
+     *
+     * @param alias        the alias which determines the indices to search in
+     * @param routing      the routing to use
+     * @param from         the number of items to skip
+     * @param sizePerShard the maximal number of results per shard
+     * @param ttlSeconds   the ttl of the scroll cursor in seconds
+     * @param query        the query to execute
+     * @param hitReader    invoked for each hit to consume it from the given JSON reader
+     * @return the response of the call (without any hits)
+     */
+    public JSONObject createScroll(String alias,
+                                   String routing,
+                                   int from,
+                                   int sizePerShard,
+                                   int ttlSeconds,
+                                   JSONObject query,
+                                   Consumer<JSONReader> hitReader) {
+        return performGet().routing(routing)
+                           .withParam("size", sizePerShard)
+                           .withParam("from", from)
+                           .withParam("scroll", ttlSeconds + "s")
+                           .data(query)
+                           .execute(alias + API_SEARCH)
+                           .streamResponse(hitReader);
+    }
+
+    /**
+     * Continues a scroll query and streams the hits of the next page to the given reader.
+     *
+     * @param ttlSeconds the ttl of the scroll cursor in seconds
+     * @param scrollId   the id of the scroll cursor
+     * @param hitReader  invoked for each hit to consume it from the given JSON reader
+     * @return the response of the call (without any hits)
+     */
+    public JSONObject continueScroll(int ttlSeconds, String scrollId, Consumer<JSONReader> hitReader) {
+        return performGet().data(new JSONObject().fluentPut("scroll", ttlSeconds + "s")
+                                                 .fluentPut("scroll_id", scrollId))
+                           .execute("/_search/scroll")
+                           .streamResponse(hitReader);
+    }
+
     /**
      * Closes a scroll query.
      *
@@ -424,11 +732,40 @@ public class LowLevelClient {
      * @return the response of the call
      * @see BulkContext
      */
-    @SuppressWarnings("squid:S1612")
-    @Explain("Due to method overloading the compiler cannot deduce which method to pick")
     public JSONObject bulk(List<JSONObject> bulkData) {
-        return performPost().rawData(bulkData.stream().map(obj -> obj.toJSONString()).collect(Collectors.joining("\n"))
-                                     + "\n").execute("_bulk").response();
+        BulkRequestBuffer buffer = new BulkRequestBuffer(false);
+        int index = 0;
+        while (index < bulkData.size()) {
+            JSONObject action = bulkData.get(index++);
+            // All actions except "delete" are followed by a source document...
+            JSONObject source = action.containsKey(BulkContext.COMMAND_DELETE) ? null : bulkData.get(index++);
+            buffer.addCommand(action, source);
+        }
+        return bulk(buffer);
+    }
+
+    /**
+     * Executes the bulk statements which have been collected in the given buffer.
+     *
+     * @param bulkData the statements to execute
+     * @return the response of the call
+     * @see BulkContext
+     */
+    public JSONObject bulk(BulkRequestBuffer bulkData) {
+        return performPost().rawEntity(bulkData.toEntity()).execute("_bulk").response();
+    }
+
+    /**
+     * Asynchronously executes the bulk statements which have been collected in the given buffer.
+     * <p>
+     * Note that the buffer must not be modified until the listener has been invoked.
+     *
+     * @param bulkData the statements to execute
+     * @param listener the listener to notify once the request has been completed or failed
+     * @see ConcurrentBulkContext
+     */
+    public void bulkAsync(BulkRequestBuffer bulkData, ResponseListener listener) {
+        performPost().rawEntity(bulkData.toEntity()).executeAsync("_bulk", listener);
     }
 
     /**
@@ -488,7 +825,47 @@ public class LowLevelClient {
      * @param index the index which should be refreshed
      */
     public void refresh(String index) {
-        performPost().execute(index + API_REFRESH).response();
+        performPost().expectSlowResponse(true).execute(index + API_REFRESH).response();
+    }
+
+    /**
+     * Starts merging the segments of the given index.
+     * <p>
+     * The request is sent asynchronously, so the caller doesn't wait for the merge. It is still subject to the
+     * socket timeout of the client (<tt>elasticsearch.http.socketTimeout</tt>), which is most probably reached when
+     * merging a large index. Elasticsearch doesn't abort the merge if the client stops waiting, and Elasticsearch 7.4
+     * supports neither <tt>wait_for_completion=false</tt> for this API nor a per-request socket timeout. Therefore
+     * a timeout is only logged as an info message. Its progress can be observed via the tasks API, using the action
+     * <tt>indices:admin/forcemerge</tt>. All other failures are reported as usual.
+     *
+     * @param index          the index to merge
+     * @param maxNumSegments the number of segments to merge the index into
+     */
+    public void forceMerge(String index, int maxNumSegments) {
+        performPost().withParam("max_num_segments", maxNumSegments)
+                     .executeAsync(index + API_FORCE_MERGE, new ResponseListener() {
+                         @Override
+                         public void onSuccess(Response response) {
+                             Elastic.LOG.FINE("The force merge of %s has been completed.", index);
+                         }
+
+                         @Override
+                         public void onFailure(Exception exception) {
+                             if (exception instanceof SocketTimeoutException) {
+                                 Elastic.LOG.INFO("The force merge of %s is still running in the background, as the "
+                                                  + "client stopped waiting for it: %s",
+                                                  index,
+                                                  exception.getMessage());
+                                 return;
+                             }
+
+                             Exceptions.handle()
+                                       .to(Elastic.LOG)
+                                       .error(exception)
+                                       .withSystemErrorMessage("Failed to force merge the index %s: %s (%s)", index)
+                                       .handle();
+                         }
+                     });
     }
 
     /**
@@ -510,6 +887,18 @@ public class LowLevelClient {
         return performGet().execute(index + API_SETTINGS).response();
     }
 
+    /**
+     * Updates the dynamic settings of the given index.
+     *
+     * @param index    the index to update
+     * @param settings the settings to apply (e.g. <tt>{"index": {"refresh_interval": "-1"}}</tt>). A setting with
+     *                 a <tt>null</tt> value is reset to its default
+     * @return the response of the call
+     */
+    public JSONObject updateIndexSettings(String index, JSONObject settings) {
+        return performPut().dataWithNullValues(settings).execute(index + API_SETTINGS).response();
+    }
+
 
     /**
      * Fetches the cluster health.
@@ -9,13 +9,19 @@
 package sirius.db.es;
 
 import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.JSONReader;
 import com.alibaba.fastjson.serializer.SerializerFeature;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.nio.entity.NStringEntity;
 import org.apache.http.util.EntityUtils;
 import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.Response;
 import org.elasticsearch.client.ResponseException;
 import org.elasticsearch.client.ResponseListener;
@@ -24,22 +30,30 @@ import sirius.db.DB;
 import sirius.db.mixing.OptimisticLockException;
 import sirius.kernel.async.ExecutionPoint;
 import sirius.kernel.async.Operation;
+import sirius.kernel.async.Promise;
 import sirius.kernel.commons.Strings;
 import sirius.kernel.commons.Watch;
+import sirius.kernel.di.std.ConfigValue;
 import sirius.kernel.di.std.Part;
 import sirius.kernel.health.Exceptions;
 import sirius.kernel.health.HandledException;
 import sirius.kernel.health.Microtiming;
 
 import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Internal fluent builder used to create, execute and handle requests via the given REST client.
@@ -52,13 +66,21 @@ class RequestBuilder {
     private static final String PARAM_IF_PRIMARY_TERM = "if_primary_term";
     private static final String PARAM_IF_SEQ_NO = "if_seq_no";
     private static final String PARAM_ERROR = "error";
+    private static final String PARAM_HITS = "hits";
+    private static final String PARAM_RESPONSES = "responses";
     private static final int MAX_CONTENT_LONG_LENGTH = 1024;
+    private static final int MIN_COMPRESSION_LENGTH = 1024;
+    private static final String ENCODING_GZIP = "gzip";
 
     private String method;
     private RestClient restClient;
     private Map<String, String> params;
     private JSONObject data;
+    private String serializedData;
+    private boolean writeNullValues;
+    private boolean expectSlowResponse;
     private String rawData;
+    private HttpEntity rawEntity;
     private HttpEntity responseEntity;
     private JSONObject responseObject;
     private Function<ResponseException, HttpEntity> customExceptionHandler;
@@ -66,6 +88,9 @@ class RequestBuilder {
     @Part
     private static Elastic elastic;
 
+    @ConfigValue("elasticsearch.http.compression")
+    private static boolean compression;
+
     protected RequestBuilder(String method, RestClient restClient) {
         this.method = method;
         this.restClient = restClient;
@@ -85,6 +110,22 @@ class RequestBuilder {
 
     protected RequestBuilder data(JSONObject data) {
         this.data = data;
+        this.serializedData = null;
+        this.writeNullValues = false;
+        return this;
+    }
+
+    /**
+     * Specifies the data to send, where <tt>null</tt> values are sent explicitly rather than being omitted.
+     * <p>
+     * This is required if a <tt>null</tt> has a meaning of its own, e.g. to reset an index setting to its default.
+     *
+     * @param data the data to send
+     * @return the builder itself for fluent method calls
+     */
+    protected RequestBuilder dataWithNullValues(JSONObject data) {
+        data(data);
+        this.writeNullValues = true;
         return this;
     }
 
@@ -93,11 +134,30 @@ class RequestBuilder {
         return this;
     }
 
+    protected RequestBuilder rawEntity(HttpEntity entity) {
+        this.rawEntity = entity;
+        return this;
+    }
+
     protected RequestBuilder withCustomErrorHandler(Function<ResponseException, HttpEntity> errorHandler) {
         this.customExceptionHandler = errorHandler;
         return this;
     }
 
+    /**
+     * Marks the request as one which is known to take a while (e.g. a delete by query or a refresh).
+     * <p>
+     * Its duration therefore doesn't reduce the limit of the concurrency limiter, as it doesn't indicate an
+     * overloaded cluster. Failures are still reported to the limiter.
+     *
+     * @param slow <tt>true</tt> if the request is expected to be slow, <tt>false</tt> otherwise
+     * @return the builder itself for fluent method calls
+     */
+    protected RequestBuilder expectSlowResponse(boolean slow) {
+        this.expectSlowResponse = slow;
+        return this;
+    }
+
     protected RequestBuilder routing(Object routing) {
         return withParam(PARAM_ROUTING, routing);
     }
@@ -111,14 +171,18 @@ class RequestBuilder {
     }
 
     protected RequestBuilder tryExecute(String uri) throws OptimisticLockException {
+        boolean probe = acquireSlot(uri);
+        boolean overloaded = false;
         Watch w = Watch.start();
         try (Operation op = new Operation(() -> Strings.apply("Elastic: %s %s", method, uri), Duration.ofSeconds(30))) {
             Request request = setupRequest(uri);
-            responseEntity = restClient.performRequest(request).getEntity();
+            responseEntity = decodeEntity(restClient.performRequest(request).getEntity());
             return this;
         } catch (ResponseException e) {
+            overloaded = isOverloaded(e);
             return handleResponseException(e);
         } catch (IOException e) {
+            overloaded = true;
             throw Exceptions.handle()
                             .to(Elastic.LOG)
                             .error(e)
@@ -126,18 +190,63 @@ class RequestBuilder {
                                     "An IO exception ocurred when performing a request against elasticsearch: %s")
                             .handle();
         } finally {
-            elastic.callDuration.addValue(w.elapsedMillis());
-            if (Microtiming.isEnabled()) {
-                w.submitMicroTiming("ELASTIC", method + ": " + uri);
-            }
-            if (w.elapsedMillis() > Elastic.getLogQueryThresholdMillis()) {
-                elastic.numSlowQueries.inc();
-                DB.SLOW_DB_LOG.INFO("A slow Elasticsearch query was executed (%s): %s\n%s\n%s",
-                                    w.duration(),
-                                    method + ": " + uri,
-                                    Strings.limit(buildContent().orElse("no content"), MAX_CONTENT_LONG_LENGTH),
-                                    ExecutionPoint.snapshot().toString());
-            }
+            releaseSlot(w, overloaded, probe);
+            recordCall(w, uri);
+        }
+    }
+
+    /**
+     * Reserves a slot of the concurrency limiter (if enabled).
+     *
+     * @param uri the uri to invoke
+     * @return <tt>true</tt> if the request is the probe of a half open circuit breaker, <tt>false</tt> otherwise
+     * @throws ElasticOverloadedException if the request is rejected as the cluster is overloaded or unavailable
+     */
+    private boolean acquireSlot(String uri) {
+        if (elastic.concurrencyLimiter != null) {
+            return elastic.concurrencyLimiter.acquire(method + " " + uri);
+        }
+
+        return false;
+    }
+
+    private void releaseSlot(Watch w, boolean overloaded, boolean probe) {
+        if (elastic.concurrencyLimiter != null) {
+            elastic.concurrencyLimiter.release(expectSlowResponse ? 0 : w.elapsedMillis(), overloaded, probe);
+        }
+    }
+
+    /**
+     * Determines if the given error indicates an overloaded or unavailable cluster.
+     * <p>
+     * In contrast to errors caused by the request itself (e.g. a malformed query), these are reported to the
+     * concurrency limiter so that it can back off.
+     *
+     * @param e the error to check
+     * @return <tt>true</tt> if the cluster couldn't be reached, rejected the request (HTTP 429) or failed to
+     * handle it (HTTP 5xx)
+     */
+    private boolean isOverloaded(Exception e) {
+        if (!(e instanceof ResponseException)) {
+            return true;
+        }
+
+        int statusCode = ((ResponseException) e).getResponse().getStatusLine().getStatusCode();
+        return statusCode == 429 || statusCode >= 500;
+    }
+
+    private void recordCall(Watch w, String uri) {
+        elastic.callDuration.addValue(w.elapsedMillis());
+        if (Microtiming.isEnabled()) {
+            w.submitMicroTiming("ELASTIC", method + ": " + uri);
+        }
+        if (w.elapsedMillis() > Elastic.getLogQueryThresholdMillis()) {
+            elastic.numSlowQueries.inc();
+            DB.SLOW_DB_LOG.INFO("A slow Elasticsearch query was executed (%s): %s\n%s\n%s",
+                                w.duration(),
+                                method + ": " + uri,
+                                Strings.limit(describeContent().orElse("no content"), MAX_CONTENT_LONG_LENGTH),
+                                ExecutionPoint.snapshot().toString());
         }
     }
 
@@ -146,22 +255,69 @@ class RequestBuilder {
             Elastic.LOG.FINE("%s %s: %s",
                              method,
                              uri,
-                             Strings.limit(buildContent().orElse("-"), MAX_CONTENT_LONG_LENGTH));
+                             Strings.limit(describeContent().orElse("-"), MAX_CONTENT_LONG_LENGTH));
         }
 
         Request request = new Request(method, uri);
         request.addParameters(determineParams());
-        NStringEntity requestContent =
-                buildContent().map(content -> new NStringEntity(content, ContentType.APPLICATION_JSON)).orElse(null);
-        request.setEntity(requestContent);
+        if (rawEntity != null) {
+            request.setEntity(rawEntity);
+        } else {
+            request.setEntity(buildContent().map(this::createContentEntity).orElse(null));
+        }
+        if (compression) {
+            RequestOptions.Builder options = RequestOptions.DEFAULT.toBuilder();
+            options.addHeader(HttpHeaders.ACCEPT_ENCODING, ENCODING_GZIP);
+            request.setOptions(options);
+        }
         return request;
     }
 
+    private HttpEntity createContentEntity(String content) {
+        if (!compression || content.length() < MIN_COMPRESSION_LENGTH) {
+            return new NStringEntity(content, ContentType.APPLICATION_JSON);
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length() / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw Exceptions.handle()
+                            .to(Elastic.LOG)
+                            .error(e)
+                            .withSystemErrorMessage("Failed to compress a request: %s (%s)")
+                            .handle();
+        }
+
+        ByteArrayEntity entity = new ByteArrayEntity(compressed.toByteArray(), ContentType.APPLICATION_JSON);
+        entity.setContentEncoding(ENCODING_GZIP);
+        return entity;
+    }
+
+    /**
+     * Transparently decompresses the given entity if it has been compressed by Elasticsearch.
+     * <p>
+     * This is the case if <tt>elasticsearch.http.compression</tt> is enabled, as responses are then requested
+     * using <tt>Accept-Encoding: gzip</tt>.
+     *
+     * @param entity the entity as received from the client
+     * @return the entity which provides the uncompressed content
+     */
+    protected static HttpEntity decodeEntity(@Nullable HttpEntity entity) {
+        if (entity != null
+            && entity.getContentEncoding() != null
+            && ENCODING_GZIP.equalsIgnoreCase(entity.getContentEncoding().getValue())) {
+            return new GzipDecompressingEntity(entity);
+        }
+
+        return entity;
+    }
+
     private RequestBuilder handleResponseException(ResponseException e) throws OptimisticLockException {
         if (customExceptionHandler != null) {
             HttpEntity result = customExceptionHandler.apply(e);
             if (result != null) {
-                responseEntity = result;
+                responseEntity = decodeEntity(result);
                 return this;
             }
         }
@@ -187,7 +343,15 @@ class RequestBuilder {
 
     private Optional<String> buildContent() {
         if (data != null) {
-            return Optional.of(JSON.toJSONString(data, SerializerFeature.DisableCircularReferenceDetect));
+            // The content is serialized only once, even if it is also logged (e.g. as slow query)...
+            if (serializedData == null) {
+                serializedData = writeNullValues ?
+                                 JSON.toJSONString(data,
+                                                   SerializerFeature.DisableCircularReferenceDetect,
+                                                   SerializerFeature.WriteMapNullValue) :
+                                 JSON.toJSONString(data, SerializerFeature.DisableCircularReferenceDetect);
+            }
+            return Optional.of(serializedData);
         }
         if (rawData != null) {
             return Optional.of(rawData);
@@ -196,6 +360,15 @@ class RequestBuilder {
         return Optional.empty();
     }
 
+    private Optional<String> describeContent() {
+        if (rawEntity != null) {
+            // Raw entities might be huge or compressed, therefore we only log their size...
+            return Optional.of(Strings.apply("%s bytes of raw data", rawEntity.getContentLength()));
+        }
+
+        return buildContent();
+    }
+
     protected RequestBuilder execute(String uri) {
         try {
             return tryExecute(uri);
@@ -208,6 +381,16 @@ class RequestBuilder {
         }
     }
 
+    /**
+     * Executes the request asynchronously and passes the raw response to the given callbacks.
+     * <p>
+     * Note that this bypasses the {@link ConcurrencyLimiter}, as it is only used for fire-and-forget requests
+     * (e.g. starting a reindex) which must not be rejected and whose duration doesn't indicate an overloaded cluster.
+     *
+     * @param uri       the uri to invoke
+     * @param onSuccess invoked with the response once the request has been completed successfully
+     * @param onFailure invoked with the logged error if the request failed
+     */
     protected void executeAsync(String uri,
                                 @Nullable Consumer<Response> onSuccess,
                                 @Nullable Consumer<HandledException> onFailure) {
@@ -231,6 +414,101 @@ class RequestBuilder {
         });
     }
 
+    /**
+     * Executes the request asynchronously and notifies the given listener.
+     * <p>
+     * Just like {@link #executeAsync(String, Consumer, Consumer)}, this bypasses the {@link ConcurrencyLimiter}.
+     * Callers are responsible for limiting their requests themselves (as {@link ConcurrentBulkContext} does).
+     *
+     * @param uri      the uri to invoke
+     * @param listener the listener to notify once the request has been completed or failed
+     */
+    protected void executeAsync(String uri, ResponseListener listener) {
+        restClient.performRequestAsync(setupRequest(uri), listener);
+    }
+
+    /**
+     * Executes the request asynchronously and transforms the response using the given handler.
+     * <p>
+     * Just like {@link #execute(String)}, this records the call duration, submits a microtiming and logs slow
+     * queries. Also errors reported by Elasticsearch are handled the same way (including a custom error handler)
+     * and passed to the returned promise. The request is also subject to the {@link ConcurrencyLimiter}.
+     * <p>
+     * Note that the response handler (as well as any callback attached to the promise) is invoked within the
+     * I/O thread of the client and must therefore never block.
+     *
+     * @param uri             the uri to invoke
+     * @param responseHandler transforms the response (e.g. by calling {@link #response()})
+     * @param <T>             the type of the transformed response
+     * @return a promise which is fulfilled with the transformed response or failed with a
+     * {@link HandledException}, an {@link OptimisticLockException} or an {@link ElasticOverloadedException}
+     */
+    protected <T> Promise<T> executeAsync(String uri, Function<RequestBuilder, T> responseHandler) {
+        Promise<T> result = new Promise<>();
+        Request request = setupRequest(uri);
+        boolean probe;
+        try {
+            probe = acquireSlot(uri);
+        } catch (ElasticOverloadedException e) {
+            result.fail(e);
+            return result;
+        }
+
+        Watch w = Watch.start();
+        try {
+            performRequestAsync(request, uri, w, probe, result, responseHandler);
+        } catch (Exception e) {
+            // The request couldn't even be started (e.g. as the client has been closed), therefore the listener
+            // will never be invoked and we have to release the slot here...
+            releaseSlot(w, isOverloaded(e), probe);
+            result.fail(handleAsyncFailure(e, uri));
+        }
+
+        return result;
+    }
+
+    private <T> void performRequestAsync(Request request,
+                                         String uri,
+                                         Watch w,
+                                         boolean probe,
+                                         Promise<T> result,
+                                         Function<RequestBuilder, T> responseHandler) {
+        restClient.performRequestAsync(request, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                releaseSlot(w, false, probe);
+                recordCall(w, uri);
+                responseEntity = decodeEntity(response.getEntity());
+                completeAsync(result, responseHandler);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                releaseSlot(w, isOverloaded(exception), probe);
+                recordCall(w, uri);
+                if (!(exception instanceof ResponseException)) {
+                    result.fail(handleAsyncFailure(exception, uri));
+                    return;
+                }
+
+                try {
+                    handleResponseException((ResponseException) exception);
+                    completeAsync(result, responseHandler);
+                } catch (Exception e) {
+                    result.fail(e);
+                }
+            }
+        });
+    }
+
+    private <T> void completeAsync(Promise<T> promise, Function<RequestBuilder, T> responseHandler) {
+        try {
+            promise.success(responseHandler.apply(this));
+        } catch (Exception e) {
+            promise.fail(e);
+        }
+    }
+
     private HandledException handleAsyncFailure(Exception exception, String uri) {
         return Exceptions.handle()
                          .to(Elastic.LOG)
@@ -241,7 +519,7 @@ class RequestBuilder {
 
     protected JSONObject extractErrorJSON(ResponseException e) {
         try {
-            JSONObject response = JSON.parseObject(EntityUtils.toString(e.getResponse().getEntity()));
+            JSONObject response = JSON.parseObject(EntityUtils.toString(decodeEntity(e.getResponse().getEntity())));
             return response.getJSONObject(PARAM_ERROR);
         } catch (IOException ex) {
             Exceptions.handle(Elastic.LOG, ex);
@@ -261,7 +539,10 @@ class RequestBuilder {
                     throw new IllegalStateException("No response is available before making a request.");
                 }
 
-                responseObject = JSON.parseObject(EntityUtils.toString(responseEntity));
+                // Parse directly from the stream so that the response isn't copied into a string first...
+                try (InputStream content = responseEntity.getContent()) {
+                    responseObject = JSON.parseObject(content, StandardCharsets.UTF_8, JSONObject.class);
+                }
             }
 
             return responseObject;
@@ -275,6 +556,116 @@ class RequestBuilder {
         }
     }
 
+    /**
+     * Parses a search response while streaming over its hits.
+     * <p>
+     * In contrast to {@link #response()}, the response is parsed directly from the underlying stream. For each
+     * hit, the given reader is invoked while the JSON reader is positioned on it. Therefore the response is never
+     * materialized as string and the hits are never collected into a single tree.
+     * <p>
+     * Note that the hit reader has to consume exactly one value (the hit object) from the given JSON reader.
+     *
+     * @param hitReader invoked for each hit to consume it from the given JSON reader
+     * @return the response object, where <tt>hits.hits</tt> is left empty
+     */
+    protected JSONObject streamResponse(Consumer<JSONReader> hitReader) {
+        if (responseEntity == null) {
+            throw new IllegalStateException("No response is available before making a request.");
+        }
+
+        try (JSONReader reader = new JSONReader(new InputStreamReader(responseEntity.getContent(),
+                                                                      StandardCharsets.UTF_8))) {
+            return readSearchResponse(reader, hitReader);
+        } catch (IOException e) {
+            throw Exceptions.handle()
+                            .to(Elastic.LOG)
+                            .error(e)
+                            .withSystemErrorMessage(
+                                    "An IO exception ocurred when performing a request against elasticsearch: %s")
+                            .handle();
+        }
+    }
+
+    /**
+     * Parses a multi search response while streaming over the hits of each contained search response.
+     * <p>
+     * This behaves just like {@link #streamResponse(Consumer)} for each entry of <tt>responses</tt>, where the
+     * hits of the n-th response are passed to the n-th hit reader.
+     *
+     * @param hitReaders the hit readers to use, one per search of the multi search request
+     * @return the search responses, where <tt>hits.hits</tt> is left empty
+     */
+    protected JSONArray streamMultiResponse(List<Consumer<JSONReader>> hitReaders) {
+        if (responseEntity == null) {
+            throw new IllegalStateException("No response is available before making a request.");
+        }
+
+        try (JSONReader reader = new JSONReader(new InputStreamReader(responseEntity.getContent(),
+                                                                      StandardCharsets.UTF_8))) {
+            JSONArray responses = new JSONArray();
+            reader.startObject();
+            while (reader.hasNext()) {
+                String key = reader.readString();
+                if (PARAM_RESPONSES.equals(key)) {
+                    reader.startArray();
+                    while (reader.hasNext()) {
+                        responses.add(readSearchResponse(reader, hitReaders.get(responses.size())));
+                    }
+                    reader.endArray();
+                } else {
+                    reader.readObject();
+                }
+            }
+            reader.endObject();
+
+            return responses;
+        } catch (IOException e) {
+            throw Exceptions.handle()
+                            .to(Elastic.LOG)
+                            .error(e)
+                            .withSystemErrorMessage(
+                                    "An IO exception ocurred when performing a request against elasticsearch: %s")
+                            .handle();
+        }
+    }
+
+    private JSONObject readSearchResponse(JSONReader reader, Consumer<JSONReader> hitReader) {
+        JSONObject result = new JSONObject();
+        reader.startObject();
+        while (reader.hasNext()) {
+            String key = reader.readString();
+            if (PARAM_HITS.equals(key)) {
+                result.put(PARAM_HITS, readHits(reader, hitReader));
+            } else {
+                result.put(key, reader.readObject());
+            }
+        }
+        reader.endObject();
+
+        return result;
+    }
+
+    private JSONObject readHits(JSONReader reader, Consumer<JSONReader> hitReader) {
+        JSONObject result = new JSONObject();
+        reader.startObject();
+        while (reader.hasNext()) {
+            String key = reader.readString();
+            if (PARAM_HITS.equals(key)) {
+                reader.startArray();
+                while (reader.hasNext()) {
+                    hitReader.accept(reader);
+                }
+                reader.endArray();
+                result.put(PARAM_HITS, new JSONArray());
+            } else {
+                result.put(key, reader.readObject());
+            }
+        }
+        reader.endObject();
+
+        return result;
+    }
+
     protected RequestBuilder toggle(String param, boolean toggle) {
         return withParam(param, String.valueOf(toggle));
     }
@@ -0,0 +1,190 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.db.es;
+
+import com.alibaba.fastjson.JSONObject;
+import sirius.kernel.cache.Cache;
+import sirius.kernel.cache.CacheManager;
+import sirius.kernel.commons.Hasher;
+import sirius.kernel.commons.RateLimit;
+import sirius.kernel.commons.Strings;
+import sirius.kernel.di.std.ConfigValue;
+import sirius.kernel.di.std.Part;
+import sirius.kernel.di.std.Register;
+import sirius.kernel.health.Exceptions;
+import sirius.kernel.timer.EveryHour;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores large sets of values in a side index so that these can be referenced by a <tt>terms</tt> lookup.
+ * <p>
+ * Filtering on tens of thousands of values (e.g. permitted ids) would otherwise send all values along with each
+ * query, which then have to be parsed by Elasticsearch for every search. Using a lookup, each set is stored once
+ * as a document in the index given by <tt>elasticsearch.termsLookup.index</tt>, using the hash of its values
+ * as id. Queries then only reference this document.
+ * <p>
+ * Which sets have already been stored is kept in a local cache. As a set is written again once it dropped out of
+ * the cache, all documents which haven't been written within <tt>elasticsearch.termsLookup.retention</tt> are
+ * removed from the side index periodically.
+ * <p>
+ * A lookup which references a missing document would silently yield no values at all, so that e.g. a
+ * <tt>noneInField</tt> would match everything. Therefore the UUID of the side index is rechecked regularly. If the
+ * index has been deleted (or replaced), it is re-created and the cache is flushed so that all sets are stored
+ * again. A lookup which references a missing index is rejected by Elasticsearch, so the query fails.
+ *
+ * @see sirius.db.es.constraints.ElasticFilterFactory#terms(sirius.db.mixing.Mapping, java.util.Collection)
+ */
+@Register(classes = {TermsLookups.class, EveryHour.class})
+public class TermsLookups implements EveryHour {
+
+    private static final String FIELD_VALUES = "values";
+    private static final String FIELD_TIMESTAMP = "timestamp";
+    private static final String KEY_INDEX = "index";
+    private static final String KEY_ID = "id";
+    private static final String KEY_PATH = "path";
+    private static final String KEY_SETTINGS = "settings";
+    private static final String SETTING_UUID = "uuid";
+
+    @Part
+    private Elastic elastic;
+
+    @ConfigValue("elasticsearch.termsLookup.index")
+    private String index;
+
+    @ConfigValue("elasticsearch.termsLookup.threshold")
+    private int threshold;
+
+    @ConfigValue("elasticsearch.termsLookup.retention")
+    private Duration retention;
+
+    private Cache<String, Boolean> storedLookups = CacheManager.createLocalCache("elastic-terms-lookups");
+    private final RateLimit indexCheck = RateLimit.timeInterval(1, TimeUnit.MINUTES);
+    private volatile String indexUUID;
+
+    /**
+     * Determines if the given number of values should be stored as lookup instead of being sent along with the query.
+     *
+     * @param numberOfValues the number of values to filter on
+     * @return <tt>true</tt> if a lookup should be used, <tt>false</tt> otherwise
+     */
+    public boolean shouldUseLookup(int numberOfValues) {
+        return threshold > 0 && numberOfValues >= threshold && elastic.isConfigured();
+    }
+
+    /**
+     * Stores the given values (unless already present) and returns the lookup which references them.
+     *
+     * @param values the values to store, which have already been transformed into their JSON representation
+     * @return the lookup to be used as value of a <tt>terms</tt> query
+     */
+    public JSONObject createLookup(List<Object> values) {
+        // The values are sorted so that the same set always yields the same document...
+        Hasher hasher = Hasher.sha256();
+        values.stream().map(String::valueOf).sorted().forEach(value -> hasher.hash(value).hash("\n"));
+        String id = hasher.toHexString();
+
+        verifyIndex();
+        if (storedLookups.get(id) == null) {
+            storeLookup(id, values);
+            storedLookups.put(id, Boolean.TRUE);
+        }
+
+        return new JSONObject().fluentPut(KEY_INDEX, index).fluentPut(KEY_ID, id).fluentPut(KEY_PATH, FIELD_VALUES);
+    }
+
+    private void storeLookup(String id, List<Object> values) {
+        try {
+            elastic.getLowLevelClient()
+                   .index(index,
+                          id,
+                          null,
+                          null,
+                          null,
+                          new JSONObject().fluentPut(FIELD_VALUES, values)
+                                          .fluentPut(FIELD_TIMESTAMP, System.currentTimeMillis()));
+        } catch (Exception e) {
+            throw Exceptions.handle()
+                            .to(Elastic.LOG)
+                            .error(e)
+                            .withSystemErrorMessage("Failed to store a terms lookup with %s values: %s (%s)",
+                                                    values.size())
+                            .handle();
+        }
+    }
+
+    private void verifyIndex() {
+        // After the initial check, the index is only verified once per minute...
+        if (indexUUID == null || indexCheck.check()) {
+            checkIndex();
+        }
+    }
+
+    /**
+     * Ensures that the side index exists and flushes the cache if it has been deleted or replaced in the meantime.
+     */
+    private void checkIndex() {
+        synchronized (this) {
+            try {
+                String currentIndexUUID = readIndexUUID();
+                if (indexUUID != null && !Strings.areEqual(indexUUID, currentIndexUUID)) {
+                    Elastic.LOG.WARN("The terms lookup index '%s' has been deleted or replaced. "
+                                     + "All value sets will be stored again.", index);
+                    storedLookups.clear();
+                }
+                indexUUID = currentIndexUUID;
+            } catch (Exception e) {
+                throw Exceptions.handle()
+                                .to(Elastic.LOG)
+                                .error(e)
+                                .withSystemErrorMessage("Failed to verify the terms lookup index '%s': %s (%s)", index)
+                                .handle();
+            }
+        }
+    }
+
+    private String readIndexUUID() {
+        LowLevelClient client = elastic.getLowLevelClient();
+        if (!client.indexExists(index)) {
+            client.createIndex(index, 1, 1);
+            // The values are only read from the source, therefore we only need to index the timestamp...
+            JSONObject timestampMapping = new JSONObject().fluentPut("type", "date");
+            client.putMapping(index,
+                              new JSONObject().fluentPut("dynamic", false)
+                                              .fluentPut("properties",
+                                                         new JSONObject().fluentPut(FIELD_TIMESTAMP,
+                                                                                    timestampMapping)));
+        }
+
+        return client.indexSettings(index)
+                     .getJSONObject(index)
+                     .getJSONObject(KEY_SETTINGS)
+                     .getJSONObject(KEY_INDEX)
+                     .getString(SETTING_UUID);
+    }
+
+    @Override
+    public void runTimer() throws Exception {
+        if (!elastic.isConfigured()) {
+            return;
+        }
+        if (indexUUID != null) {
+            checkIndex();
+        } else if (!elastic.getLowLevelClient().indexExists(index)) {
+            return;
+        }
+
+        long limit = System.currentTimeMillis() - retention.toMillis();
+        JSONObject range = new JSONObject().fluentPut(FIELD_TIMESTAMP, new JSONObject().fluentPut("lt", limit));
+        JSONObject query = new JSONObject().fluentPut("query", new JSONObject().fluentPut("range", range));
+        elastic.getLowLevelClient().deleteByQuery(index, null, query);
+    }
+}
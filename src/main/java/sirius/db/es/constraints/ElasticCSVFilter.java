@@ -34,9 +34,7 @@ class ElasticCSVFilter extends CSVFilter<ElasticConstraint> {
 
         BoolQueryBuilder bqb = new BoolQueryBuilder();
         if (mode == Mode.CONTAINS_ANY) {
-            for (String val : values) {
-                bqb.should(Elastic.FILTERS.eq(field, val));
-            }
+            bqb.should(Elastic.FILTERS.terms(field, values));
         } else if (mode == Mode.CONTAINS_ALL) {
             for (String val : values) {
                 bqb.must(Elastic.FILTERS.eq(field, val));
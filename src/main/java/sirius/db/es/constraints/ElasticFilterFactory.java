@@ -11,15 +11,18 @@ package sirius.db.es.constraints;
 import com.alibaba.fastjson.JSONObject;
 import sirius.db.es.Elastic;
 import sirius.db.es.ElasticEntity;
+import sirius.db.es.TermsLookups;
 import sirius.db.mixing.EntityDescriptor;
 import sirius.db.mixing.Mapping;
 import sirius.db.mixing.properties.StringMapProperty;
 import sirius.db.mixing.query.QueryField;
 import sirius.db.mixing.query.constraints.CSVFilter;
 import sirius.db.mixing.query.constraints.FilterFactory;
+import sirius.db.mixing.query.constraints.OneInField;
 import sirius.kernel.commons.Strings;
 import sirius.kernel.commons.Tuple;
 import sirius.kernel.commons.Value;
+import sirius.kernel.di.std.Part;
 
 import javax.annotation.Nullable;
 import java.time.Instant;
@@ -28,9 +31,12 @@ import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoField;
 import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Objects;
+import java.util.Set;
 
 /**
  * Generates filters and constraints for {@link sirius.db.es.ElasticQuery}.
@@ -39,6 +45,9 @@ import java.util.Objects;
  */
 public class ElasticFilterFactory extends FilterFactory<ElasticConstraint> {
 
+    @Part
+    private static TermsLookups termsLookups;
+
     @Override
     protected Object customTransform(Object value) {
         if (value instanceof Instant) {
@@ -212,6 +221,76 @@ public class ElasticFilterFactory extends FilterFactory<ElasticConstraint> {
         return namedOr(name, Arrays.asList(constraints));
     }
 
+    /**
+     * Creates a constraint which ensures that the given field contains at least one of the given values.
+     * <p>
+     * For small sets, the values are sent along with the query. Once a set reaches
+     * <tt>elasticsearch.termsLookup.threshold</tt> values, it is stored in a side index (see {@link TermsLookups})
+     * and only referenced by the query. This keeps the requests small for large sets (e.g. permitted ids) which
+     * are used over and over again.
+     * <p>
+     * Just like {@link #eq(Mapping, Object)}, a value which is (or is transformed to) <tt>null</tt> (e.g. an empty
+     * entity reference) matches documents where the field is empty.
+     *
+     * @param field  the field to filter on
+     * @param values the values to check
+     * @return the generated constraint or <tt>null</tt> if no values were given
+     */
+    @Nullable
+    public ElasticConstraint terms(Mapping field, Collection<?> values) {
+        if (values.isEmpty()) {
+            return null;
+        }
+
+        Set<Object> effectiveValues = new LinkedHashSet<>();
+        boolean matchEmpty = false;
+        for (Object value : values) {
+            Object effectiveValue = transform(value);
+            if (effectiveValue == null) {
+                matchEmpty = true;
+            } else {
+                effectiveValues.add(effectiveValue);
+            }
+        }
+
+        ElasticConstraint constraint = effectiveValues.isEmpty() ? null : termsValue(field, effectiveValues);
+        if (!matchEmpty) {
+            return constraint;
+        }
+
+        return constraint == null ? notFilled(field) : or(constraint, notFilled(field));
+    }
+
+    private ElasticConstraint termsValue(Mapping field, Collection<Object> values) {
+        List<Object> effectiveValues = new ArrayList<>(values);
+        Object terms = effectiveValues;
+        if (termsLookups != null && termsLookups.shouldUseLookup(effectiveValues.size())) {
+            terms = termsLookups.createLookup(effectiveValues);
+        }
+
+        return wrap(new JSONObject().fluentPut("terms",
+                                               new JSONObject().fluentPut(determineFilterField(field), terms)));
+    }
+
+    @Override
+    public OneInField<ElasticConstraint> containsOne(Mapping field, Object... values) {
+        return oneInField(field, Arrays.asList(values));
+    }
+
+    @Override
+    public OneInField<ElasticConstraint> oneInField(Mapping field, List<?> values) {
+        return new ElasticOneInField(this, field, values);
+    }
+
+    @Override
+    public ElasticConstraint noneInField(Mapping field, List<?> values) {
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+
+        return not(terms(field, values));
+    }
+
     @Override
     public CSVFilter<ElasticConstraint> containsAny(Mapping field, Value commaSeparatedValues) {
         return new ElasticCSVFilter(this, field, commaSeparatedValues.asString(), CSVFilter.Mode.CONTAINS_ANY);
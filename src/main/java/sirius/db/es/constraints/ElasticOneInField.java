@@ -0,0 +1,38 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.db.es.constraints;
+
+import sirius.db.mixing.Mapping;
+import sirius.db.mixing.query.constraints.OneInField;
+
+import java.util.Collection;
+
+/**
+ * Generates a single <tt>terms</tt> constraint for ES instead of one <tt>term</tt> constraint per value.
+ */
+class ElasticOneInField extends OneInField<ElasticConstraint> {
+
+    protected ElasticOneInField(ElasticFilterFactory factory, Mapping field, Collection<?> values) {
+        super(factory, field, values);
+    }
+
+    @Override
+    public ElasticConstraint build() {
+        if (values.isEmpty()) {
+            return super.build();
+        }
+
+        ElasticConstraint constraint = ((ElasticFilterFactory) factory).terms(field, values);
+        if (orEmpty) {
+            return factory.or(constraint, factory.notFilled(field));
+        }
+
+        return constraint;
+    }
+}
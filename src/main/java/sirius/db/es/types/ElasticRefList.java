@@ -15,7 +15,9 @@ import sirius.db.mixing.types.BaseEntityRef;
 import sirius.db.mixing.types.BaseEntityRefList;
 import sirius.kernel.di.std.Part;
 
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Represents a list of {@link ElasticEntity entities} being referenced by id.
@@ -43,4 +45,24 @@ public class ElasticRefList<E extends ElasticEntity> extends BaseEntityRefList<E
     protected Optional<E> resolve(String id, ContextInfo... context) {
         return elastic.find(type, id, context);
     }
+
+    /**
+     * Returns all entities in the list by resolving them against the database.
+     * <p>
+     * In contrast to the default implementation, the entities are fetched using as few <tt>_mget</tt> requests
+     * as possible (see {@link Elastic#findAll(Class, java.util.Collection, ContextInfo...)}).
+     * <p>
+     * Note that therefore all entities are loaded eagerly, before the returned stream is consumed. All of them are
+     * kept in memory, and a stream which is only consumed partially (e.g. via <tt>findFirst</tt>) still loads the
+     * whole list. Use {@link Elastic#find(Class, Object, ContextInfo...)} to look up single entries of a very
+     * large list.
+     *
+     * @param context the lookup context
+     * @return a stream of all entities in the list, wrapped as optional. May contain empty optionals for stale IDs
+     */
+    @Override
+    public Stream<Optional<E>> fetchAll(ContextInfo... context) {
+        Map<String, E> entities = elastic.findAll(type, data(), context);
+        return data().stream().map(id -> Optional.ofNullable(entities.get(id)));
+    }
 }
@@ -17,7 +17,6 @@ import sirius.kernel.commons.Tuple;
 import sirius.kernel.di.Initializable;
 import sirius.kernel.di.std.ConfigValue;
 import sirius.kernel.di.std.Register;
-import sirius.kernel.health.Average;
 import sirius.kernel.health.Counter;
 import sirius.kernel.health.Exceptions;
 import sirius.kernel.health.Log;
@@ -43,6 +42,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 /**
@@ -68,11 +69,20 @@ public class Databases implements Initializable {
     private static Duration logConnectionThreshold;
     private static long logConnectionThresholdMillis = -1;
 
+    @ConfigValue("jdbc.operationSamplingRate")
+    private static int operationSamplingRate;
+
     protected static Counter numUses = new Counter();
     protected static Counter numConnects = new Counter();
-    protected static Counter numQueries = new Counter();
     protected static Counter numSlowQueries = new Counter();
-    protected static Average queryDuration = new Average();
+
+    /*
+     * Query counts and durations are recorded for each and every JDBC call. Therefore we use striped
+     * adders rather than contended atomics here and only aggregate them once the metrics are collected.
+     */
+    protected static final LongAdder numQueries = new LongAdder();
+    protected static final LongAdder numTimedQueries = new LongAdder();
+    protected static final LongAdder timedQueryNanos = new LongAdder();
 
     private static final long SECOND_SHIFT = 1;
     private static final long MINUTE_SHIFT = SECOND_SHIFT * 100;
@@ -87,6 +97,9 @@ public class Databases implements Initializable {
     @Register
     public static class DatabaseMetricProvider implements MetricProvider {
 
+        private long lastTimedQueries;
+        private long lastTimedQueryNanos;
+
         @Override
         public void gather(MetricsCollector collector) {
             // Only report statistics if we have at least one database connection...
@@ -108,7 +121,7 @@ public class Databases implements Initializable {
                 collector.differentialMetric("jdbc_queries",
                                              "db-queries",
                                              "JDBC Queries",
-                                             numQueries.getCount(),
+                                             numQueries.sum(),
                                              "/min");
                 collector.differentialMetric("jdbc_slow_queries",
                                              "db-slow-queries",
@@ -118,11 +131,31 @@ public class Databases implements Initializable {
                 collector.metric("jdbc_query_duration",
                                  "db-query-duration",
                                  "JDBC Query Duration",
-                                 queryDuration.getAndClear(),
+                                 computeAverageQueryDuration(),
                                  "ms");
             }
         }
 
+        /**
+         * Computes the average duration of all queries executed since the last invocation.
+         *
+         * @return the average query duration in milliseconds
+         */
+        protected double computeAverageQueryDuration() {
+            long timedQueries = numTimedQueries.sum();
+            long queryNanos = timedQueryNanos.sum();
+            long deltaQueries = timedQueries - lastTimedQueries;
+            long deltaNanos = queryNanos - lastTimedQueryNanos;
+            lastTimedQueries = timedQueries;
+            lastTimedQueryNanos = queryNanos;
+
+            if (deltaQueries <= 0) {
+                return 0;
+            }
+
+            return deltaNanos / (double) deltaQueries / 1_000_000d;
+        }
+
         protected int determineHighestUtilization() {
             int highestUtilization = 0;
             for (Database db : datasources.values()) {
@@ -196,6 +229,34 @@ public class Databases implements Initializable {
         return logQueryThresholdMillis;
     }
 
+    /**
+     * Determines if the current JDBC call should be fully tracked as {@link sirius.kernel.async.Operation}.
+     * <p>
+     * By default (<tt>jdbc.operationSamplingRate = 1</tt>) every call is tracked. Setting a higher value
+     * <b>N</b> will only track one in <b>N</b> calls (randomly), whereas all others only record their
+     * duration and are therefore considerably cheaper.
+     *
+     * @return <tt>true</tt> if the call should be tracked as operation, <tt>false</tt> otherwise
+     */
+    protected static boolean shouldTrackOperation() {
+        return operationSamplingRate <= 1 || ThreadLocalRandom.current().nextInt(operationSamplingRate) == 0;
+    }
+
+    /**
+     * Records the execution of a JDBC query.
+     *
+     * @param durationNanos the duration of the query in nanoseconds
+     * @param timed         <tt>true</tt> if the duration should be included in the average query duration,
+     *                      <tt>false</tt> if the query is only counted (e.g. for long running queries)
+     */
+    protected static void recordQuery(long durationNanos, boolean timed) {
+        numQueries.increment();
+        if (timed) {
+            numTimedQueries.increment();
+            timedQueryNanos.add(durationNanos);
+        }
+    }
+
     /**
      * Converts the threshold for "long connections" into a long containing milliseconds for performance reasons.
      *
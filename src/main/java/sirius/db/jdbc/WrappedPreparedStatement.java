@@ -12,7 +12,9 @@ import sirius.db.DB;
 import sirius.kernel.async.ExecutionPoint;
 import sirius.kernel.async.Operation;
 import sirius.kernel.commons.Explain;
-import sirius.kernel.commons.Watch;
+import sirius.kernel.health.Microtiming;
+
+import javax.annotation.Nullable;
 
 import java.io.InputStream;
 import java.io.Reader;
@@ -37,9 +39,14 @@ import java.sql.Time;
 import java.sql.Timestamp;
 import java.time.Duration;
 import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Wrapper for {@link PreparedStatement} to add microtiming.
+ * <p>
+ * Note that this is in the hot path of each and every JDBC query. Therefore only a sample of all calls is
+ * tracked as {@link Operation} (see <tt>jdbc.operationSamplingRate</tt>), all others are merely timed using
+ * {@link System#nanoTime()}.
  */
 class WrappedPreparedStatement implements PreparedStatement {
 
@@ -56,31 +63,77 @@ class WrappedPreparedStatement implements PreparedStatement {
         this.preparedSQL = preparedSQL;
     }
 
-    protected void updateStatistics(String sql, Watch w) {
-        w.submitMicroTiming("SQL", sql);
-        Databases.numQueries.inc();
+    /**
+     * Starts an operation for the given SQL statement if the call is sampled.
+     * <p>
+     * Depending on <tt>jdbc.operationSamplingRate</tt> not every call is tracked via an {@link Operation}, as
+     * this bookkeeping is a measurable overhead for very fast queries.
+     *
+     * @param sql the statement being executed
+     * @return the operation which has been started or <tt>null</tt> if the call isn't sampled
+     */
+    @Nullable
+    private Operation startOperation(String sql) {
+        return startOperation(sql, determineOperationDuration());
+    }
+
+    @Nullable
+    private Operation startOperation(String sql, Duration duration) {
+        if (!Databases.shouldTrackOperation()) {
+            return null;
+        }
+
+        return new Operation(() -> sql, duration);
+    }
+
+    private void completeOperation(@Nullable Operation op, String sql, long startNanos) {
+        long durationNanos = System.nanoTime() - startNanos;
+        if (op != null) {
+            op.close();
+        }
+        updateStatistics("SQL", sql, -1, durationNanos);
+    }
+
+    protected void updateStatistics(String category, String sql, int rows, long durationNanos) {
+        if (Microtiming.isEnabled()) {
+            Microtiming.submit(category, sql, durationNanos);
+        }
+        Databases.recordQuery(durationNanos, !longRunning);
         if (!longRunning) {
-            Databases.queryDuration.addValue(w.elapsedMillis());
-            if (w.elapsedMillis() > Databases.getLogQueryThresholdMillis()) {
-                Databases.numSlowQueries.inc();
-                DB.SLOW_DB_LOG.INFO("A slow JDBC query was executed (%s): %s\n%s",
-                                    w.duration(),
-                                    sql,
-                                    ExecutionPoint.snapshot().toString());
+            long durationMillis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+            if (durationMillis > Databases.getLogQueryThresholdMillis()) {
+                logSlowQuery(sql, rows, durationMillis);
             }
         }
     }
 
+    private void logSlowQuery(String sql, int rows, long durationMillis) {
+        Databases.numSlowQueries.inc();
+        if (rows >= 0) {
+            DB.SLOW_DB_LOG.INFO("A slow JDBC batch query was executed (%s ms): %s (%s rows)\n%s",
+                                durationMillis,
+                                sql,
+                                rows,
+                                ExecutionPoint.snapshot().toString());
+        } else {
+            DB.SLOW_DB_LOG.INFO("A slow JDBC query was executed (%s ms): %s\n%s",
+                                durationMillis,
+                                sql,
+                                ExecutionPoint.snapshot().toString());
+        }
+    }
+
     @Override
     public ResultSet executeQuery(String sql) throws SQLException {
         if (Databases.LOG.isFINE()) {
             Databases.LOG.FINE(sql);
         }
-        Watch w = Watch.start();
-        try (Operation op = new Operation(() -> sql, determineOperationDuration())) {
+        Operation op = startOperation(sql);
+        long startNanos = System.nanoTime();
+        try {
             return delegate.executeQuery(sql);
         } finally {
-            updateStatistics(sql, w);
+            completeOperation(op, sql, startNanos);
         }
     }
 
@@ -98,11 +151,12 @@ class WrappedPreparedStatement implements PreparedStatement {
         if (Databases.LOG.isFINE()) {
             Databases.LOG.FINE(preparedSQL);
         }
-        Watch w = Watch.start();
-        try (Operation op = new Operation(() -> preparedSQL, determineOperationDuration())) {
+        Operation op = startOperation(preparedSQL);
+        long startNanos = System.nanoTime();
+        try {
             return delegate.executeQuery();
         } finally {
-            updateStatistics(preparedSQL, w);
+            completeOperation(op, preparedSQL, startNanos);
         }
     }
 
@@ -111,11 +165,12 @@ class WrappedPreparedStatement implements PreparedStatement {
         if (Databases.LOG.isFINE()) {
             Databases.LOG.FINE(sql);
         }
-        Watch w = Watch.start();
-        try (Operation op = new Operation(() -> sql, determineOperationDuration())) {
+        Operation op = startOperation(sql);
+        long startNanos = System.nanoTime();
+        try {
             return delegate.executeUpdate(sql);
         } finally {
-            updateStatistics(sql, w);
+            completeOperation(op, sql, startNanos);
         }
     }
 
@@ -129,11 +184,12 @@ class WrappedPreparedStatement implements PreparedStatement {
         if (Databases.LOG.isFINE()) {
             Databases.LOG.FINE(preparedSQL);
         }
-        Watch w = Watch.start();
-        try (Operation op = new Operation(() -> preparedSQL, determineOperationDuration())) {
+        Operation op = startOperation(preparedSQL);
+        long startNanos = System.nanoTime();
+        try {
             return delegate.executeUpdate();
         } finally {
-            updateStatistics(preparedSQL, w);
+            completeOperation(op, preparedSQL, startNanos);
         }
     }
 
@@ -272,11 +328,12 @@ class WrappedPreparedStatement implements PreparedStatement {
         if (Databases.LOG.isFINE()) {
             Databases.LOG.FINE(sql);
         }
-        Watch w = Watch.start();
-        try (Operation op = new Operation(() -> sql, determineOperationDuration())) {
+        Operation op = startOperation(sql);
+        long startNanos = System.nanoTime();
+        try {
             return delegate.execute(sql);
         } finally {
-            updateStatistics(sql, w);
+            completeOperation(op, sql, startNanos);
         }
     }
 
@@ -399,34 +456,31 @@ class WrappedPreparedStatement implements PreparedStatement {
         if (Databases.LOG.isFINE()) {
             Databases.LOG.FINE(preparedSQL);
         }
-        Watch w = Watch.start();
-        try (Operation op = new Operation(() -> preparedSQL, Duration.ofSeconds(30))) {
+        Operation op = startOperation(preparedSQL, QUERY_OPERATION);
+        long startNanos = System.nanoTime();
+        try {
             return delegate.execute();
         } finally {
-            updateStatistics(preparedSQL, w);
+            completeOperation(op, preparedSQL, startNanos);
         }
     }
 
     @Override
     public int[] executeBatch() throws SQLException {
-        Watch w = Watch.start();
-        try (Operation op = new Operation(() -> "executeBatch: " + preparedSQL, determineOperationDuration())) {
+        Operation op = Databases.shouldTrackOperation() ?
+                       new Operation(() -> "executeBatch: " + preparedSQL, determineOperationDuration()) :
+                       null;
+        long startNanos = System.nanoTime();
+        int rows = 0;
+        try {
             int[] result = delegate.executeBatch();
-            w.submitMicroTiming("BATCH-SQL", preparedSQL);
-            Databases.numQueries.inc();
-            if (!longRunning) {
-                Databases.queryDuration.addValue(w.elapsedMillis());
-                if (w.elapsedMillis() > Databases.getLogQueryThresholdMillis()) {
-                    Databases.numSlowQueries.inc();
-                    DB.SLOW_DB_LOG.INFO("A slow JDBC batch query was executed (%s): %s (%s rows)\n%s",
-                                        w.duration(),
-                                        preparedSQL,
-                                        result.length,
-                                        ExecutionPoint.snapshot().toString());
-                }
-            }
-
+            rows = result.length;
             return result;
+        } finally {
+            if (op != null) {
+                op.close();
+            }
+            updateStatistics("BATCH-SQL", preparedSQL, rows, System.nanoTime() - startNanos);
         }
     }
 
@@ -490,11 +544,12 @@ class WrappedPreparedStatement implements PreparedStatement {
         if (Databases.LOG.isFINE()) {
             Databases.LOG.FINE(sql);
         }
-        Watch w = Watch.start();
-        try (Operation op = new Operation(() -> sql, determineOperationDuration())) {
+        Operation op = startOperation(sql);
+        long startNanos = System.nanoTime();
+        try {
             return delegate.executeUpdate(sql, autoGeneratedKeys);
         } finally {
-            updateStatistics(sql, w);
+            completeOperation(op, sql, startNanos);
         }
     }
 
@@ -508,11 +563,12 @@ class WrappedPreparedStatement implements PreparedStatement {
         if (Databases.LOG.isFINE()) {
             Databases.LOG.FINE(sql);
         }
-        Watch w = Watch.start();
-        try (Operation op = new Operation(() -> sql, determineOperationDuration())) {
+        Operation op = startOperation(sql);
+        long startNanos = System.nanoTime();
+        try {
             return delegate.executeUpdate(sql, columnIndexes);
         } finally {
-            updateStatistics(sql, w);
+            completeOperation(op, sql, startNanos);
         }
     }
 
@@ -531,11 +587,12 @@ class WrappedPreparedStatement implements PreparedStatement {
         if (Databases.LOG.isFINE()) {
             Databases.LOG.FINE(sql);
         }
-        Watch w = Watch.start();
-        try (Operation op = new Operation(() -> sql, determineOperationDuration())) {
+        Operation op = startOperation(sql);
+        long startNanos = System.nanoTime();
+        try {
             return delegate.executeUpdate(sql, columnNames);
         } finally {
-            updateStatistics(sql, w);
+            completeOperation(op, sql, startNanos);
         }
     }
 
@@ -544,11 +601,12 @@ class WrappedPreparedStatement implements PreparedStatement {
         if (Databases.LOG.isFINE()) {
             Databases.LOG.FINE(sql);
         }
-        Watch w = Watch.start();
-        try (Operation op = new Operation(() -> sql, determineOperationDuration())) {
+        Operation op = startOperation(sql);
+        long startNanos = System.nanoTime();
+        try {
             return delegate.execute(sql, autoGeneratedKeys);
         } finally {
-            updateStatistics(sql, w);
+            completeOperation(op, sql, startNanos);
         }
     }
 
@@ -572,11 +630,12 @@ class WrappedPreparedStatement implements PreparedStatement {
         if (Databases.LOG.isFINE()) {
             Databases.LOG.FINE(sql);
         }
-        Watch w = Watch.start();
-        try (Operation op = new Operation(() -> sql, determineOperationDuration())) {
+        Operation op = startOperation(sql);
+        long startNanos = System.nanoTime();
+        try {
             return delegate.execute(sql, columnIndexes);
         } finally {
-            updateStatistics(sql, w);
+            completeOperation(op, sql, startNanos);
         }
     }
 
@@ -595,11 +654,12 @@ class WrappedPreparedStatement implements PreparedStatement {
         if (Databases.LOG.isFINE()) {
             Databases.LOG.FINE(sql);
         }
-        Watch w = Watch.start();
-        try (Operation op = new Operation(() -> sql, determineOperationDuration())) {
+        Operation op = startOperation(sql);
+        long startNanos = System.nanoTime();
+        try {
             return delegate.execute(sql, columnNames);
         } finally {
-            updateStatistics(sql, w);
+            completeOperation(op, sql, startNanos);
         }
     }
 
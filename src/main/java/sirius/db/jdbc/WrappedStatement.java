@@ -19,6 +19,7 @@ import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.sql.Statement;
 import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Wrapper for {@link Statement} to add microtiming.
@@ -47,8 +48,7 @@ class WrappedStatement implements Statement {
 
     protected void updateStatistics(String sql, Watch w) {
         w.submitMicroTiming("SQL", sql);
-        Databases.numQueries.inc();
-        Databases.queryDuration.addValue(w.elapsedMillis());
+        Databases.recordQuery(TimeUnit.MILLISECONDS.toNanos(w.elapsedMillis()), true);
         if (w.elapsedMillis() > Databases.getLogQueryThresholdMillis()) {
             Databases.numSlowQueries.inc();
             DB.SLOW_DB_LOG.INFO("A slow JDBC query was executed (%s): %s\n%s",
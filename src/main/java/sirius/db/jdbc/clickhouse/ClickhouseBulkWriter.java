@@ -0,0 +1,579 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.db.jdbc.clickhouse;
+
+import sirius.db.jdbc.Database;
+import sirius.db.jdbc.OMA;
+import sirius.db.jdbc.Row;
+import sirius.db.jdbc.SQLEntity;
+import sirius.db.mixing.EntityDescriptor;
+import sirius.db.mixing.Mixing;
+import sirius.db.mixing.Property;
+import sirius.kernel.async.Tasks;
+import sirius.kernel.commons.Strings;
+import sirius.kernel.commons.Watch;
+import sirius.kernel.di.std.ConfigValue;
+import sirius.kernel.di.std.Part;
+import sirius.kernel.health.Average;
+import sirius.kernel.health.Exceptions;
+import sirius.kernel.health.HandledException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Provides a high throughput writer which bulk loads rows or entities into a ClickHouse table.
+ * <p>
+ * Using the generic JDBC path ({@link sirius.db.jdbc.batch.InsertQuery} or
+ * {@link sirius.db.jdbc.batch.external.ExternalBatchQuery}) for ClickHouse is rather slow, as each row is converted
+ * into a textual format and - even worse - as small batches create lots of parts which have to be merged by the
+ * server. This writer therefore encodes each row directly into an in-memory buffer using the
+ * {@link RowBinaryEncoder RowBinary} format and sends a single large <tt>INSERT</tt> per flush via the HTTP interface
+ * of ClickHouse.
+ * <p>
+ * A flush is triggered once the buffer contains {@link #withMaxRows(int) max rows} or
+ * {@link #withMaxBufferSize(int) max bytes} or when its oldest row is older than the
+ * {@link #withFlushInterval(Duration) flush interval}. Flushes are executed in the background (using the executor
+ * <tt>clickhouse-bulk</tt>). If {@link #withMaxPendingFlushes(int) too many flushes} are already in progress,
+ * inserting threads are blocked until one has completed (backpressure), so that the memory consumption is bounded.
+ * <p>
+ * Errors which occur in background flushes are logged and re-thrown by the next call to {@link #flush()} or
+ * {@link #close()}. Therefore a writer must always be closed, which also sends all remaining rows.
+ * <p>
+ * The default limits can be controlled via <tt>jdbc.clickhouseBulk</tt> in the system config.
+ */
+@ThreadSafe
+public class ClickhouseBulkWriter implements Closeable {
+
+    private static final String EXECUTOR_CLICKHOUSE_BULK = "clickhouse-bulk";
+    private static final String HEADER_USER = "X-ClickHouse-User";
+    private static final String HEADER_KEY = "X-ClickHouse-Key";
+    private static final String JDBC_PREFIX = "jdbc:";
+    private static final String DEFAULT_DATABASE = "default";
+    private static final String PARAM_SSL = "ssl=true";
+
+    /**
+     * Contains the default HTTP port of ClickHouse, which is also used by the JDBC driver if no port is given.
+     */
+    private static final int DEFAULT_HTTP_PORT = 8123;
+
+    /**
+     * Contains the default HTTPS port of ClickHouse, which is also used by the JDBC driver if no port is given.
+     */
+    private static final int DEFAULT_HTTPS_PORT = 8443;
+
+    /**
+     * Contains all writers which are currently open, so that {@link ClickhouseBulkWriterTimer} can flush idle buffers.
+     */
+    protected static final Set<ClickhouseBulkWriter> OPEN_WRITERS = ConcurrentHashMap.newKeySet();
+
+    @ConfigValue("jdbc.clickhouseBulk.maxRows")
+    private static int defaultMaxRows;
+
+    @ConfigValue("jdbc.clickhouseBulk.maxBufferSize")
+    private static int defaultMaxBufferSize;
+
+    @ConfigValue("jdbc.clickhouseBulk.flushInterval")
+    private static Duration defaultFlushInterval;
+
+    @ConfigValue("jdbc.clickhouseBulk.maxPendingFlushes")
+    private static int defaultMaxPendingFlushes;
+
+    @ConfigValue("jdbc.clickhouseBulk.connectTimeout")
+    private static Duration connectTimeout;
+
+    @ConfigValue("jdbc.clickhouseBulk.readTimeout")
+    private static Duration readTimeout;
+
+    @Part
+    private static Mixing mixing;
+
+    @Part
+    private static OMA oma;
+
+    @Part
+    private static Tasks tasks;
+
+    private final Database database;
+    private final String table;
+    private final List<String> columns;
+    private final EntityDescriptor descriptor;
+    private final List<Property> properties;
+    private final RowBinaryEncoder encoder;
+    private final URL endpoint;
+
+    private int maxRows = defaultMaxRows;
+    private int maxBufferSize = defaultMaxBufferSize;
+    private long flushIntervalMillis = defaultFlushInterval.toMillis();
+    private int maxPendingFlushes = defaultMaxPendingFlushes;
+    private Semaphore pendingFlushes;
+
+    private ByteArrayOutputStream buffer;
+    private final ByteArrayOutputStream rowBuffer = new ByteArrayOutputStream();
+    private int bufferedRows;
+    private long oldestRowTimestamp;
+    private volatile HandledException lastError;
+    private volatile boolean closed;
+
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong rowsDiscarded = new AtomicLong();
+    private final Average flushDuration = new Average();
+
+    /**
+     * Creates a new writer which inserts the given columns of the given table.
+     * <p>
+     * Use {@link #insertValues(Object...)} or {@link #insertRow(Row)} to write data.
+     *
+     * @param database the ClickHouse database to write to
+     * @param table    the name of the table to write to
+     * @param columns  the columns to fill. Columns which are not listed here, will be filled with their default value
+     */
+    public ClickhouseBulkWriter(@Nonnull Database database, @Nonnull String table, @Nonnull List<String> columns) {
+        this(database, table, columns, null, null);
+    }
+
+    private ClickhouseBulkWriter(Database database,
+                                 String table,
+                                 List<String> columns,
+                                 @Nullable EntityDescriptor descriptor,
+                                 @Nullable List<Property> properties) {
+        this.database = database;
+        this.table = table;
+        this.columns = Collections.unmodifiableList(new ArrayList<>(columns));
+        this.descriptor = descriptor;
+        this.properties = properties;
+        this.encoder = new RowBinaryEncoder(determineColumnTypes());
+        this.endpoint = determineEndpoint();
+        OPEN_WRITERS.add(this);
+    }
+
+    /**
+     * Creates a new writer which inserts entities of the given type.
+     * <p>
+     * Use {@link #insert(SQLEntity)} to write data.
+     *
+     * @param type the type of entities to write. This has to be an entity which is stored in a ClickHouse realm
+     * @return a new writer for the given entity type
+     */
+    public static ClickhouseBulkWriter forEntity(@Nonnull Class<? extends SQLEntity> type) {
+        EntityDescriptor descriptor = mixing.getDescriptor(type);
+        List<Property> properties = descriptor.getProperties()
+                                              .stream()
+                                              .filter(p -> !SQLEntity.ID.getName().equals(p.getName()))
+                                              .collect(Collectors.toList());
+
+        return new ClickhouseBulkWriter(oma.getDatabase(descriptor.getRealm()),
+                                        descriptor.getRelationName(),
+                                        properties.stream().map(Property::getPropertyName).collect(Collectors.toList()),
+                                        descriptor,
+                                        properties);
+    }
+
+    /**
+     * Specifies the max number of rows to buffer before a flush is triggered.
+     *
+     * @param maxRows the max number of rows per insert
+     * @return the writer itself for fluent method calls
+     */
+    public ClickhouseBulkWriter withMaxRows(int maxRows) {
+        this.maxRows = maxRows;
+        return this;
+    }
+
+    /**
+     * Specifies the max size of the (encoded) buffer before a flush is triggered.
+     *
+     * @param maxBufferSize the max number of bytes per insert
+     * @return the writer itself for fluent method calls
+     */
+    public ClickhouseBulkWriter withMaxBufferSize(int maxBufferSize) {
+        this.maxBufferSize = maxBufferSize;
+        return this;
+    }
+
+    /**
+     * Specifies the max age of a buffered row before a flush is triggered.
+     * <p>
+     * Note that idle writers are checked every ten seconds, therefore smaller intervals only have an effect while
+     * rows are being inserted.
+     *
+     * @param flushInterval the max time a row is kept in the buffer
+     * @return the writer itself for fluent method calls
+     */
+    public ClickhouseBulkWriter withFlushInterval(Duration flushInterval) {
+        this.flushIntervalMillis = flushInterval.toMillis();
+        return this;
+    }
+
+    /**
+     * Specifies the max number of flushes which are executed in parallel.
+     * <p>
+     * If this limit is reached, inserting threads will block until a flush has completed.
+     *
+     * @param maxPendingFlushes the max number of flushes being executed in the background
+     * @return the writer itself for fluent method calls
+     */
+    public ClickhouseBulkWriter withMaxPendingFlushes(int maxPendingFlushes) {
+        if (pendingFlushes != null) {
+            throw new IllegalStateException("Cannot change the max pending flushes once data has been inserted.");
+        }
+        this.maxPendingFlushes = Math.max(1, maxPendingFlushes);
+        return this;
+    }
+
+    private List<String> determineColumnTypes() {
+        try {
+            Map<String, String> types = new HashMap<>();
+            database.createQuery("SELECT name, type FROM system.columns"
+                                 + " WHERE database = currentDatabase() AND table = ${table}")
+                    .set("table", table)
+                    .iterateAll(row -> types.put(row.getValue("name").asString(), row.getValue("type").asString()),
+                                null);
+
+            List<String> result = new ArrayList<>(columns.size());
+            for (String column : columns) {
+                String type = types.get(column);
+                if (type == null) {
+                    throw new IllegalArgumentException(Strings.apply("Unknown column: %s", column));
+                }
+                result.add(type);
+            }
+
+            return result;
+        } catch (SQLException | IllegalArgumentException e) {
+            throw Exceptions.handle()
+                            .to(OMA.LOG)
+                            .error(e)
+                            .withSystemErrorMessage("Cannot determine the columns of the table %s in %s: %s (%s)",
+                                                    table,
+                                                    database)
+                            .handle();
+        }
+    }
+
+    private URL determineEndpoint() {
+        try {
+            URI jdbcUri = URI.create(database.getUrl().substring(JDBC_PREFIX.length()));
+            String databaseName = Strings.isFilled(jdbcUri.getPath()) && jdbcUri.getPath().length() > 1 ?
+                                  jdbcUri.getPath().substring(1) :
+                                  DEFAULT_DATABASE;
+            boolean ssl = jdbcUri.getQuery() != null && jdbcUri.getQuery().contains(PARAM_SSL);
+            int port = jdbcUri.getPort();
+            if (port < 0) {
+                port = ssl ? DEFAULT_HTTPS_PORT : DEFAULT_HTTP_PORT;
+            }
+            String query = "INSERT INTO `" + table + "` (" + columns.stream()
+                                                                  .map(column -> "`" + column + "`")
+                                                                  .collect(Collectors.joining(", "))
+                           + ") FORMAT RowBinary";
+
+            return new URL(ssl ? "https" : "http",
+                           jdbcUri.getHost(),
+                           port,
+                           "/?database=" + urlEncode(databaseName) + "&query=" + urlEncode(query));
+        } catch (Exception e) {
+            throw Exceptions.handle()
+                            .to(OMA.LOG)
+                            .error(e)
+                            .withSystemErrorMessage("Cannot determine the HTTP endpoint of %s: %s (%s)", database)
+                            .handle();
+        }
+    }
+
+    private String urlEncode(String value) throws UnsupportedEncodingException {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+    }
+
+    /**
+     * Adds the given entity to the buffer.
+     * <p>
+     * Note that the <tt>beforeSave</tt> checks of the entity are executed, the <tt>afterSave</tt> handlers are not,
+     * as the entity is only written asynchronously. Also note that no ID is assigned to the entity.
+     *
+     * @param entity the entity to write
+     */
+    public void insert(@Nonnull SQLEntity entity) {
+        if (descriptor == null) {
+            throw new IllegalStateException("This writer has not been created for entities. Use insertValues!");
+        }
+
+        descriptor.beforeSave(entity);
+        Object[] values = new Object[properties.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = properties.get(i).getValueForDatasource(OMA.class, entity);
+        }
+
+        insertValues(values);
+    }
+
+    /**
+     * Adds the given row to the buffer.
+     *
+     * @param row the row which contains the values for all columns of this writer
+     */
+    public void insertRow(@Nonnull Row row) {
+        Object[] values = new Object[columns.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = row.getValue(columns.get(i)).get();
+        }
+
+        insertValues(values);
+    }
+
+    /**
+     * Adds the given values as row to the buffer.
+     *
+     * @param values the values of the row in the order of the columns given when creating the writer
+     */
+    public void insertValues(Object... values) {
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("This writer has already been closed.");
+            }
+            if (buffer == null) {
+                buffer = new ByteArrayOutputStream(Math.min(maxBufferSize, 64 * 1024));
+                oldestRowTimestamp = System.currentTimeMillis();
+            }
+
+            // A row is encoded separately and only appended once it has been encoded completely. Otherwise, a value
+            // which cannot be encoded would leave a partial row in the buffer and corrupt the whole insert...
+            rowBuffer.reset();
+            encoder.encodeRow(values, rowBuffer);
+            rowBuffer.writeTo(buffer);
+            bufferedRows++;
+
+            if (bufferedRows >= maxRows
+                || buffer.size() >= maxBufferSize
+                || System.currentTimeMillis() - oldestRowTimestamp >= flushIntervalMillis) {
+                dispatch(true);
+            }
+        }
+    }
+
+    /**
+     * Hands the current buffer to a background flush.
+     * <p>
+     * Must be invoked while holding the lock on this writer.
+     *
+     * @param block determines if the call should block until a flush slot is available (<tt>true</tt>) or skip
+     *              the flush if all slots are occupied (<tt>false</tt>)
+     */
+    private void dispatch(boolean block) {
+        if (bufferedRows == 0) {
+            return;
+        }
+
+        Semaphore semaphore = getPendingFlushes();
+        if (block) {
+            semaphore.acquireUninterruptibly();
+        } else if (!semaphore.tryAcquire()) {
+            return;
+        }
+
+        ByteArrayOutputStream data = buffer;
+        int rows = bufferedRows;
+        buffer = null;
+        bufferedRows = 0;
+
+        try {
+            tasks.executor(EXECUTOR_CLICKHOUSE_BULK).start(() -> {
+                try {
+                    send(data, rows);
+                } finally {
+                    semaphore.release();
+                }
+            });
+        } catch (Exception e) {
+            semaphore.release();
+            throw Exceptions.handle(OMA.LOG, e);
+        }
+    }
+
+    private Semaphore getPendingFlushes() {
+        if (pendingFlushes == null) {
+            pendingFlushes = new Semaphore(maxPendingFlushes);
+        }
+        return pendingFlushes;
+    }
+
+    private void send(ByteArrayOutputStream data, int rows) {
+        Watch w = Watch.start();
+        try {
+            HttpURLConnection connection = (HttpURLConnection) endpoint.openConnection();
+            connection.setConnectTimeout((int) connectTimeout.toMillis());
+            connection.setReadTimeout((int) readTimeout.toMillis());
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(data.size());
+            if (Strings.isFilled(database.getUsername())) {
+                connection.setRequestProperty(HEADER_USER, database.getUsername());
+            }
+            if (Strings.isFilled(database.getPassword())) {
+                connection.setRequestProperty(HEADER_KEY, database.getPassword());
+            }
+
+            try (OutputStream out = connection.getOutputStream()) {
+                data.writeTo(out);
+            }
+
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException(Strings.apply("ClickHouse responded with %s: %s",
+                                                    status,
+                                                    readFully(connection.getErrorStream())));
+            }
+            readFully(connection.getInputStream());
+
+            rowsWritten.addAndGet(rows);
+            bytesWritten.addAndGet(data.size());
+            flushDuration.addValue(w.elapsedMillis());
+            w.submitMicroTiming("CLICKHOUSE", "Bulk insert into " + table);
+        } catch (Exception e) {
+            // The rows are not retried, therefore we at least report how many have been lost so far...
+            long totalRowsDiscarded = rowsDiscarded.addAndGet(rows);
+            lastError = Exceptions.handle()
+                                  .to(OMA.LOG)
+                                  .error(e)
+                                  .withSystemErrorMessage(
+                                          "Failed to bulk insert %s rows into %s (%s). These rows have been discarded"
+                                          + " (%s rows discarded by this writer in total): %s (%s)",
+                                          rows,
+                                          table,
+                                          database,
+                                          totalRowsDiscarded)
+                                  .handle();
+        }
+    }
+
+    private String readFully(@Nullable InputStream input) throws IOException {
+        if (input == null) {
+            return "";
+        }
+
+        try (InputStream in = input) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            int read = in.read(chunk);
+            while (read >= 0) {
+                out.write(chunk, 0, read);
+                read = in.read(chunk);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Flushes the buffer if its oldest row exceeds the flush interval.
+     * <p>
+     * This is invoked by {@link ClickhouseBulkWriterTimer} and never blocks.
+     */
+    protected void flushIfExpired() {
+        synchronized (this) {
+            if (!closed
+                && bufferedRows > 0
+                && System.currentTimeMillis() - oldestRowTimestamp >= flushIntervalMillis) {
+                dispatch(false);
+            }
+        }
+    }
+
+    /**
+     * Sends all buffered rows and waits until all pending flushes have completed.
+     *
+     * @throws HandledException if a flush failed since the last call to this method
+     */
+    public void flush() {
+        synchronized (this) {
+            dispatch(true);
+            awaitPendingFlushes();
+        }
+
+        HandledException error = lastError;
+        if (error != null) {
+            lastError = null;
+            throw error;
+        }
+    }
+
+    private void awaitPendingFlushes() {
+        Semaphore semaphore = getPendingFlushes();
+        semaphore.acquireUninterruptibly(maxPendingFlushes);
+        semaphore.release(maxPendingFlushes);
+    }
+
+    /**
+     * Returns the number of rows which have successfully been written by this writer.
+     *
+     * @return the number of rows written
+     */
+    public long getRowsWritten() {
+        return rowsWritten.get();
+    }
+
+    /**
+     * Returns the number of rows which have been discarded as their flush failed.
+     *
+     * @return the number of rows which could not be written
+     */
+    public long getRowsDiscarded() {
+        return rowsDiscarded.get();
+    }
+
+    /**
+     * Sends all remaining rows and closes the writer.
+     *
+     * @throws HandledException if a flush failed since the last call to {@link #flush()}
+     */
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            closed = true;
+            OPEN_WRITERS.remove(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Strings.apply(
+                "ClickHouse bulk writer for %s: %s rows, %s bytes written, %s flushes (avg. %s ms), %s rows discarded",
+                table,
+                rowsWritten.get(),
+                bytesWritten.get(),
+                flushDuration.getCount(),
+                Math.round(flushDuration.getAvg()),
+                rowsDiscarded.get());
+    }
+}
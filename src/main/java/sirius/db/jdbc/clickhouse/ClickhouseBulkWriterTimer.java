@@ -0,0 +1,26 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.db.jdbc.clickhouse;
+
+import sirius.kernel.di.std.Register;
+import sirius.kernel.timer.EveryTenSeconds;
+
+/**
+ * Flushes the buffers of {@link ClickhouseBulkWriter writers} which haven't received new rows for a while.
+ */
+@Register(classes = EveryTenSeconds.class)
+public class ClickhouseBulkWriterTimer implements EveryTenSeconds {
+
+    @Override
+    public void runTimer() throws Exception {
+        for (ClickhouseBulkWriter writer : ClickhouseBulkWriter.OPEN_WRITERS) {
+            writer.flushIfExpired();
+        }
+    }
+}
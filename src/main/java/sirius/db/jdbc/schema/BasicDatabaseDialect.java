@@ -9,7 +9,6 @@
 package sirius.db.jdbc.schema;
 
 import sirius.db.jdbc.OMA;
-import sirius.db.mixing.annotations.Engine;
 import sirius.kernel.commons.Explain;
 import sirius.kernel.commons.Strings;
 import sirius.kernel.commons.Value;
@@ -19,6 +18,7 @@ import javax.annotation.Nullable;
 import java.math.BigDecimal;
 import java.sql.Blob;
 import java.sql.Clob;
+import java.sql.Connection;
 import java.sql.Date;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -60,6 +60,22 @@ public abstract class BasicDatabaseDialect implements DatabaseDialect {
         return table;
     }
 
+    @Override
+    public void readTableOptions(Connection connection, Table table) throws SQLException {
+        // By default, all required infos are provided by the JDBC metadata...
+    }
+
+    @Nullable
+    @Override
+    public String areTableOptionsEqual(Table target, Table current) {
+        return null;
+    }
+
+    @Override
+    public List<String> generateAlterTableOptions(Table target, Table current) {
+        return Collections.emptyList();
+    }
+
     @SuppressWarnings("squid:S1067")
     @Explain("We rather have all checks in one place.")
     protected boolean hasEscapedDefaultValue(TableColumn col) {
@@ -425,7 +441,7 @@ public abstract class BasicDatabaseDialect implements DatabaseDialect {
     }
 
     protected Value getEngine(Table table) {
-        return table.getSource().getAnnotation(Engine.class).map(Engine::value).map(Value::of).orElse(Value.EMPTY);
+        return Value.of(table.getEngine());
     }
 
     /**
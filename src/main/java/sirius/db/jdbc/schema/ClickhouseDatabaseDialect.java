@@ -13,27 +13,70 @@ import sirius.db.mixing.properties.EnumProperty;
 import sirius.kernel.commons.Monoflop;
 import sirius.kernel.commons.Strings;
 import sirius.kernel.di.std.Register;
+import sirius.kernel.nls.NLS;
 
 import javax.annotation.Nullable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Types;
 import java.text.MessageFormat;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * Defines the dialect used to sync the schema against a Clickhouse database.
  * <p>
  * Note that this is quite simple due to the fact that clickhouse cannot modify a schema after the fact
  * (one cannot add / drop columns once a table has been created).
+ * <p>
+ * The engine, the partition expression, the ordering key, the TTL and settings of MergeTree tables are taken from the
+ * {@link sirius.db.mixing.annotations.Engine} annotation. Columns can be dictionary encoded via
+ * {@link sirius.db.mixing.annotations.LowCardinality} and compressed using {@link sirius.db.mixing.annotations.Codec}.
  */
 @Register(name = "clickhouse", classes = DatabaseDialect.class)
 public class ClickhouseDatabaseDialect extends BasicDatabaseDialect {
 
+    private static final String MERGE_TREE = "MergeTree";
+    private static final String LOW_CARDINALITY = "LowCardinality(";
+    private static final String CODEC = "CODEC(";
+    private static final String KEY_OPTION = "option";
+
+    /**
+     * Extracts the TTL expression from the full engine specification as reported by <tt>system.tables</tt>.
+     */
+    private static final Pattern TTL_EXPRESSION = Pattern.compile("\\sTTL\\s+(.+?)(\\s+SETTINGS\\s.*)?$");
+
+    /**
+     * Matches <tt>INTERVAL 1 MONTH</tt> which is reported as <tt>toIntervalMonth(1)</tt> by Clickhouse.
+     */
+    private static final Pattern INTERVAL = Pattern.compile("INTERVAL\\s*(\\d+)\\s*([A-Z]+)",
+                                                            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Matches the numeric types whose width (in bits) is part of the type name, e.g. <tt>Int64</tt>.
+     */
+    private static final Pattern SIZED_NUMERIC_TYPE = Pattern.compile("(U?Int|Float)(\\d+)");
+
+    private static final String CODEC_DELTA = "delta";
+    private static final String CODEC_DOUBLE_DELTA = "doubledelta";
+    private static final String CODEC_ZSTD = "zstd";
+    private static final String DEFAULT_ZSTD_LEVEL = "1";
+
     @Override
     public String generateCreateTable(Table table) {
+        return generateCreateTable(table, table.getName());
+    }
+
+    private String generateCreateTable(Table table, String tableName) {
         StringBuilder sb = new StringBuilder();
         sb.append("CREATE TABLE `");
-        sb.append(table.getName());
+        sb.append(tableName);
         sb.append("` (\n");
         Monoflop mf = Monoflop.create();
         for (TableColumn col : table.getColumns()) {
@@ -41,19 +84,63 @@ public class ClickhouseDatabaseDialect extends BasicDatabaseDialect {
                 if (mf.successiveCall()) {
                     sb.append(",");
                 }
-                sb.append(MessageFormat.format("  {0} {1} {2}\n",
-                                               col.getName(),
-                                               getTypeName(col),
-                                               getDefaultValueAsString(col)));
+                sb.append(MessageFormat.format("  {0} {1}\n", col.getName(), generateColumnDefinition(col)));
             }
         }
 
         sb.append("\n) ENGINE=");
         sb.append(getEngine(table).asString("Log"));
+        appendEngineOptions(table, sb);
+
+        return sb.toString();
+    }
+
+    private String generateColumnDefinition(TableColumn col) {
+        StringBuilder sb = new StringBuilder(getTypeName(col));
+        String defaultValue = getDefaultValueAsString(col);
+        if (Strings.isFilled(defaultValue)) {
+            sb.append(" ").append(defaultValue);
+        }
+        if (Strings.isFilled(col.getCodec())) {
+            sb.append(" CODEC(").append(col.getCodec()).append(")");
+        }
 
         return sb.toString();
     }
 
+    private void appendEngineOptions(Table table, StringBuilder sb) {
+        if (Strings.isFilled(table.getPartitionBy())) {
+            sb.append("\nPARTITION BY ").append(table.getPartitionBy());
+        }
+        if (Strings.isFilled(table.getOrderBy())) {
+            sb.append("\nORDER BY ").append(table.getOrderBy());
+        } else if (requiresOrderBy(table)) {
+            // A MergeTree table always needs an ordering key - tuple() simply disables sorting...
+            sb.append("\nORDER BY tuple()");
+        }
+        if (Strings.isFilled(table.getTtl())) {
+            sb.append("\nTTL ").append(table.getTtl());
+        }
+        if (Strings.isFilled(table.getSettings())) {
+            sb.append("\nSETTINGS ").append(table.getSettings());
+        }
+    }
+
+    /**
+     * Determines if an explicit ordering key is required.
+     * <p>
+     * This is the case for all engines of the MergeTree family which use the new syntax (no engine parameters). The
+     * legacy syntax (e.g. <tt>MergeTree(EventDate, (CounterID, EventDate), 8192)</tt>) specifies the ordering key
+     * as parameter of the engine.
+     *
+     * @param table the table to check
+     * @return <tt>true</tt> if an ordering key is required, <tt>false</tt> otherwise
+     */
+    private boolean requiresOrderBy(Table table) {
+        String engine = Strings.isFilled(table.getEngine()) ? table.getEngine().trim() : "";
+        return engine.endsWith(MERGE_TREE) || engine.endsWith(MERGE_TREE + "()");
+    }
+
     /**
      * Determines if the column should be generated / added to the target table.
      * <p>
@@ -69,10 +156,15 @@ public class ClickhouseDatabaseDialect extends BasicDatabaseDialect {
 
     @Override
     protected String getTypeName(TableColumn column) {
+        String type = getClickHouseType(column);
         if (column.isNullable()) {
-            return "Nullable(" + getClickHouseType(column) + ")";
+            type = "Nullable(" + type + ")";
+        }
+        if (column.isLowCardinality()) {
+            type = LOW_CARDINALITY + type + ")";
         }
-        return getClickHouseType(column);
+
+        return type;
     }
 
     private String getClickHouseType(TableColumn column) {
@@ -196,11 +288,10 @@ public class ClickhouseDatabaseDialect extends BasicDatabaseDialect {
                                                                   oldName,
                                                                   toColumn.getName()));
         } else {
-            return Collections.singletonList(MessageFormat.format("ALTER TABLE `{0}` MODIFY COLUMN `{1}` {2} {3}",
+            return Collections.singletonList(MessageFormat.format("ALTER TABLE `{0}` MODIFY COLUMN `{1}` {2}",
                                                                   table.getName(),
                                                                   toColumn.getName(),
-                                                                  getTypeName(toColumn),
-                                                                  getDefaultValueAsString(toColumn)));
+                                                                  generateColumnDefinition(toColumn)));
         }
     }
 
@@ -209,11 +300,10 @@ public class ClickhouseDatabaseDialect extends BasicDatabaseDialect {
         if (!shouldGenerateColumn(col)) {
             return null;
         }
-        return MessageFormat.format("ALTER TABLE `{0}` ADD COLUMN `{1}` {2} {3}",
+        return MessageFormat.format("ALTER TABLE `{0}` ADD COLUMN `{1}` {2}",
                                     table.getName(),
                                     col.getName(),
-                                    getTypeName(col),
-                                    getDefaultValueAsString(col));
+                                    generateColumnDefinition(col));
     }
 
     @Override
@@ -260,4 +350,320 @@ public class ClickhouseDatabaseDialect extends BasicDatabaseDialect {
     public boolean shouldDropKey(Table targetTable, Table currentTable, Key key) {
         return false;
     }
+
+    @Override
+    public void readTableOptions(Connection connection, Table table) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT engine, engine_full, partition_key, sorting_key FROM system.tables"
+                + " WHERE database = currentDatabase() AND name = ?")) {
+            stmt.setString(1, table.getName());
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    table.setEngine(rs.getString("engine"));
+                    table.setPartitionBy(emptyAsNull(rs.getString("partition_key")));
+                    table.setOrderBy(emptyAsNull(rs.getString("sorting_key")));
+                    table.setTtl(extractTtl(rs.getString("engine_full")));
+                }
+            }
+        }
+
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT name, type, compression_codec FROM system.columns"
+                + " WHERE database = currentDatabase() AND table = ?")) {
+            stmt.setString(1, table.getName());
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    readColumnOptions(table, rs);
+                }
+            }
+        }
+    }
+
+    @Nullable
+    private String emptyAsNull(@Nullable String value) {
+        return Strings.isFilled(value) ? value : null;
+    }
+
+    @Nullable
+    private String extractTtl(@Nullable String engineFull) {
+        if (Strings.isEmpty(engineFull)) {
+            return null;
+        }
+
+        Matcher matcher = TTL_EXPRESSION.matcher(engineFull);
+        if (matcher.find()) {
+            return matcher.group(1).trim();
+        }
+
+        return null;
+    }
+
+    private void readColumnOptions(Table table, ResultSet rs) throws SQLException {
+        String name = rs.getString("name");
+        for (TableColumn column : table.getColumns()) {
+            if (Strings.areEqual(column.getName(), name)) {
+                String type = rs.getString("type");
+                column.setLowCardinality(type != null && type.startsWith(LOW_CARDINALITY));
+                if (column.isLowCardinality() && column.getType() == Types.OTHER) {
+                    // Older drivers don't know about low cardinality columns, as we only use these
+                    // for strings, we can safely assume this type here...
+                    column.setType(Types.VARCHAR);
+                }
+
+                String codec = rs.getString("compression_codec");
+                if (Strings.isFilled(codec) && codec.startsWith(CODEC) && codec.endsWith(")")) {
+                    column.setCodec(codec.substring(CODEC.length(), codec.length() - 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Compares the columns just like {@link BasicDatabaseDialect} but also checks if the dictionary encoding or
+     * the compression codec changed.
+     * <p>
+     * Note that codecs are only compared if the target column explicitly specifies one.
+     *
+     * @param target  the target column as expected by the schema
+     * @param current the current database column was read from the metadata
+     * @return null if they are equal or a string which contains a reason why they are not
+     */
+    @Nullable
+    @Override
+    public String areColumnsEqual(TableColumn target, TableColumn current) {
+        String reason = super.areColumnsEqual(target, current);
+        if (reason != null) {
+            return reason;
+        }
+
+        if (target.isLowCardinality() != current.isLowCardinality()) {
+            return formatOptionDifference("LowCardinality", target.isLowCardinality(), current.isLowCardinality());
+        }
+
+        if (Strings.isFilled(target.getCodec()) && !Strings.areEqual(normalizeCodec(target, target.getCodec()),
+                                                                     normalizeCodec(target, current.getCodec()))) {
+            return formatOptionDifference("CODEC", target.getCodec(), current.getCodec());
+        }
+
+        return null;
+    }
+
+    /**
+     * Compares the engine, the partition expression, the ordering key and the TTL.
+     * <p>
+     * Only options which are explicitly specified by the {@link sirius.db.mixing.annotations.Engine} annotation of
+     * the entity are compared.
+     *
+     * @param target  the target table as expected by the schema
+     * @param current the current table as read from the database
+     * @return null if they are equal or a string which contains a reason why they are not
+     */
+    @Nullable
+    @Override
+    public String areTableOptionsEqual(Table target, Table current) {
+        String reason = checkStructuralOptions(target, current);
+        if (reason != null) {
+            return reason;
+        }
+        if (isOptionChanged(target.getTtl(), current.getTtl())) {
+            return formatOptionDifference("TTL", target.getTtl(), current.getTtl());
+        }
+
+        return null;
+    }
+
+    @Nullable
+    private String checkStructuralOptions(Table target, Table current) {
+        if (Strings.isEmpty(current.getEngine()) || Strings.isEmpty(target.getEngine())) {
+            return null;
+        }
+        if (!getEngineName(target.getEngine()).equalsIgnoreCase(getEngineName(current.getEngine()))) {
+            return formatOptionDifference("ENGINE", target.getEngine(), current.getEngine());
+        }
+        if (isOptionChanged(target.getPartitionBy(), current.getPartitionBy())) {
+            return formatOptionDifference("PARTITION BY", target.getPartitionBy(), current.getPartitionBy());
+        }
+        if (isOptionChanged(target.getOrderBy(), current.getOrderBy())) {
+            return formatOptionDifference("ORDER BY", target.getOrderBy(), current.getOrderBy());
+        }
+
+        return null;
+    }
+
+    private String getEngineName(String engine) {
+        int parameterIndex = engine.indexOf('(');
+        return parameterIndex < 0 ? engine.trim() : engine.substring(0, parameterIndex).trim();
+    }
+
+    private boolean isOptionChanged(@Nullable String target, @Nullable String current) {
+        return Strings.isFilled(target) && !Strings.areEqual(normalizeExpression(target),
+                                                             normalizeExpression(current));
+    }
+
+    private String formatOptionDifference(String option, Object target, Object current) {
+        return NLS.fmtr("BasicDatabaseDialect.differentTableOption")
+                  .set(KEY_OPTION, option)
+                  .set(KEY_TARGET, target)
+                  .set(KEY_CURRENT, current)
+                  .format();
+    }
+
+    /**
+     * Normalizes the given codec chain so that it can be compared against the one reported by Clickhouse.
+     * <p>
+     * Clickhouse always reports the parameters of a codec, even if these were omitted. Therefore a bare
+     * <tt>Delta</tt> or <tt>DoubleDelta</tt> receives the width of the column type (e.g. <tt>Delta(8)</tt> for
+     * <tt>Int64</tt>) and a bare <tt>ZSTD</tt> is expanded to <tt>ZSTD(1)</tt>.
+     *
+     * @param column the target column which determines the default width of delta codecs
+     * @param codec  the codec chain to normalize
+     * @return the normalized codec chain
+     */
+    private String normalizeCodec(TableColumn column, @Nullable String codec) {
+        String normalizedCodec = normalizeExpression(codec);
+        if (Strings.isEmpty(normalizedCodec)) {
+            return normalizedCodec;
+        }
+
+        String deltaWidth = String.valueOf(determineDeltaWidth(getClickHouseType(column)));
+        return Arrays.stream(normalizedCodec.split(","))
+                     .map(singleCodec -> applyCodecDefaults(singleCodec, deltaWidth))
+                     .collect(Collectors.joining(","));
+    }
+
+    private String applyCodecDefaults(String codec, String deltaWidth) {
+        if (CODEC_DELTA.equals(codec) || CODEC_DOUBLE_DELTA.equals(codec)) {
+            return codec + "(" + deltaWidth + ")";
+        }
+        if (CODEC_ZSTD.equals(codec)) {
+            return codec + "(" + DEFAULT_ZSTD_LEVEL + ")";
+        }
+
+        return codec;
+    }
+
+    /**
+     * Determines the number of bytes per value which is used by Clickhouse as default for <tt>Delta</tt> codecs.
+     *
+     * @param type the Clickhouse type of the column
+     * @return the size of a value in bytes or 1 if the type has no fixed size
+     */
+    private int determineDeltaWidth(String type) {
+        Matcher matcher = SIZED_NUMERIC_TYPE.matcher(type);
+        if (matcher.matches()) {
+            return Integer.parseInt(matcher.group(2)) / 8;
+        }
+        if ("Date".equals(type)) {
+            return 2;
+        }
+        if ("DateTime".equals(type)) {
+            return 4;
+        }
+
+        return 1;
+    }
+
+    /**
+     * Normalizes the given expression so that it can be compared against the one reported by Clickhouse.
+     * <p>
+     * This removes all whitespace and quotes, rewrites intervals into their functional form and strips the outer
+     * braces of tuples.
+     *
+     * @param expression the expression to normalize
+     * @return the normalized expression
+     */
+    private String normalizeExpression(@Nullable String expression) {
+        if (Strings.isEmpty(expression)) {
+            return "";
+        }
+
+        Matcher matcher = INTERVAL.matcher(expression);
+        StringBuffer sb = new StringBuffer();
+        while (matcher.find()) {
+            String unit = matcher.group(2).toLowerCase();
+            matcher.appendReplacement(sb,
+                                      "toInterval"
+                                      + Character.toUpperCase(unit.charAt(0))
+                                      + unit.substring(1)
+                                      + "("
+                                      + matcher.group(1)
+                                      + ")");
+        }
+        matcher.appendTail(sb);
+
+        String result = sb.toString().replaceAll("[\\s`]", "").toLowerCase();
+        while (isWrappedInBraces(result)) {
+            result = result.substring(1, result.length() - 1);
+        }
+
+        return result;
+    }
+
+    private boolean isWrappedInBraces(String expression) {
+        if (!expression.startsWith("(") || !expression.endsWith(")")) {
+            return false;
+        }
+
+        int depth = 0;
+        for (int i = 0; i < expression.length(); i++) {
+            char ch = expression.charAt(i);
+            if (ch == '(') {
+                depth++;
+            } else if (ch == ')') {
+                depth--;
+                if (depth == 0 && i < expression.length() - 1) {
+                    return false;
+                }
+            }
+        }
+
+        return depth == 0;
+    }
+
+    /**
+     * Generates the statements to apply the table options.
+     * <p>
+     * A change of the TTL can be applied directly. A change of the engine, the partition expression or the ordering
+     * key however requires to rebuild the table: The data is copied into a new table which then replaces the
+     * existing one.
+     *
+     * @param target  the target table as expected by the schema
+     * @param current the current table as read from the database
+     * @return the statements to execute
+     */
+    @Override
+    public List<String> generateAlterTableOptions(Table target, Table current) {
+        if (checkStructuralOptions(target, current) != null) {
+            return generateRebuildTable(target, current);
+        }
+        if (isOptionChanged(target.getTtl(), current.getTtl())) {
+            return Collections.singletonList(MessageFormat.format("ALTER TABLE `{0}` MODIFY TTL {1}",
+                                                                  target.getName(),
+                                                                  target.getTtl()));
+        }
+
+        return Collections.emptyList();
+    }
+
+    private List<String> generateRebuildTable(Table target, Table current) {
+        String rebuildName = target.getName() + "_rebuild";
+        String oldName = target.getName() + "_old";
+        String columns = target.getColumns()
+                               .stream()
+                               .filter(this::shouldGenerateColumn)
+                               .filter(column -> current.getColumns().contains(column))
+                               .map(column -> "`" + column.getName() + "`")
+                               .collect(Collectors.joining(", "));
+
+        return Arrays.asList(generateCreateTable(target, rebuildName),
+                             MessageFormat.format("INSERT INTO `{0}` ({1}) SELECT {1} FROM `{2}`",
+                                                  rebuildName,
+                                                  columns,
+                                                  target.getName()),
+                             MessageFormat.format("RENAME TABLE `{0}` TO `{1}`, `{2}` TO `{0}`",
+                                                  target.getName(),
+                                                  oldName,
+                                                  rebuildName),
+                             MessageFormat.format("DROP TABLE `{0}`", oldName));
+    }
 }
@@ -9,6 +9,7 @@
 package sirius.db.jdbc.schema;
 
 import javax.annotation.Nullable;
+import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
@@ -29,6 +30,37 @@ public interface DatabaseDialect {
      */
     Table completeTableInfos(Table table);
 
+    /**
+     * Reads DB-specific table options (like the engine or the ordering key) which are not available via the
+     * JDBC metadata.
+     *
+     * @param connection the connection to use
+     * @param table      the table (with its columns already being filled) to enhance
+     * @throws SQLException in case of a database error
+     */
+    void readTableOptions(Connection connection, Table table) throws SQLException;
+
+    /**
+     * Determines if the table options (engine, ordering key, partitioning...) of the given tables are equal.
+     * <p>
+     * Note that only options which are explicitly specified by the target table should be compared.
+     *
+     * @param target  the target table as expected by the schema
+     * @param current the current table as read from the database
+     * @return null if they are equal or a string which contains a reason why they are not
+     */
+    @Nullable
+    String areTableOptionsEqual(Table target, Table current);
+
+    /**
+     * Builds the statements required to change the table options of the current table into the ones of the target.
+     *
+     * @param target  the target table as expected by the schema
+     * @param current the current table as read from the database
+     * @return the generated SQL statements or an empty list if nothing can be done
+     */
+    List<String> generateAlterTableOptions(Table target, Table current);
+
     /**
      * Converts the given class into the JDBC-Value (@see {@link Types}).
      *
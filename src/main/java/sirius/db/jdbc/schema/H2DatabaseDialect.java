@@ -0,0 +1,224 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.db.jdbc.schema;
+
+import sirius.kernel.di.std.Register;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Defines the dialect used to sync the schema against an embedded H2 database.
+ * <p>
+ * This is mainly intended for tests and benchmarks which have to run without an external database server. The
+ * database is expected to run in MySQL compatibility mode (<tt>MODE=MySQL;DATABASE_TO_LOWER=TRUE</tt>) which is
+ * what the <tt>h2</tt> profile in <tt>jdbc.profile</tt> sets up.
+ */
+@Register(name = "h2", classes = DatabaseDialect.class)
+public class H2DatabaseDialect extends BasicDatabaseDialect {
+
+    private static final String NOT_NULL = "NOT NULL";
+    private static final String AUTO_INCREMENT = "AUTO_INCREMENT";
+
+    /**
+     * H2 creates an index named <tt>[CONSTRAINT]_INDEX_[N]</tt> for each unique constraint.
+     */
+    private static final Pattern CONSTRAINT_INDEX = Pattern.compile("_INDEX_[0-9A-F]+$", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * H2 creates an index named <tt>PRIMARY_KEY_[N]</tt> for the primary key.
+     */
+    private static final String PRIMARY_KEY_INDEX_PREFIX = "primary_key";
+
+    @Override
+    public Table completeTableInfos(Table table) {
+        super.completeTableInfos(table);
+        table.getKeys().removeIf(key -> key.getName().toLowerCase().startsWith(PRIMARY_KEY_INDEX_PREFIX));
+        table.getKeys().forEach(key -> key.setName(CONSTRAINT_INDEX.matcher(key.getName()).replaceFirst("")));
+
+        return table;
+    }
+
+    @Override
+    protected boolean areTypesEqual(int type, int other) {
+        if (type == other) {
+            return true;
+        }
+        if (in(type, other, Types.BOOLEAN, Types.BIT, Types.TINYINT)) {
+            return true;
+        }
+        if (in(type, other, Types.VARCHAR, Types.CHAR)) {
+            return true;
+        }
+        if (in(type, other, Types.LONGVARCHAR, Types.CLOB)) {
+            return true;
+        }
+        if (in(type, other, Types.LONGVARBINARY, Types.BLOB, Types.VARBINARY)) {
+            return true;
+        }
+
+        return in(type, other, Types.NUMERIC, Types.DECIMAL);
+    }
+
+    @Override
+    protected String getTypeName(TableColumn column) {
+        int type = column.getType();
+        if (Types.BIGINT == type) {
+            return "BIGINT";
+        }
+        if (Types.BOOLEAN == type || Types.BIT == type) {
+            return "TINYINT";
+        }
+        if (Types.CHAR == type) {
+            return "VARCHAR(" + ensurePositiveLength(column, 255) + ")";
+        }
+        if (Types.CLOB == type) {
+            return "CLOB";
+        }
+        if (Types.BLOB == type || Types.VARBINARY == type || Types.LONGVARBINARY == type) {
+            return "BLOB";
+        }
+
+        return super.getTypeName(column);
+    }
+
+    private String generateColumnDefinition(TableColumn col) {
+        return MessageFormat.format("`{0}` {1} {2} {3} {4}",
+                                    col.getName(),
+                                    getTypeName(col),
+                                    getDefaultValueAsString(col),
+                                    col.isNullable() ? "" : NOT_NULL,
+                                    col.isAutoIncrement() ? AUTO_INCREMENT : "");
+    }
+
+    @Override
+    public String generateAddColumn(Table table, TableColumn col) {
+        return MessageFormat.format("ALTER TABLE `{0}` ADD COLUMN {1}", table.getName(), generateColumnDefinition(col));
+    }
+
+    @Override
+    public List<String> generateAlterColumnTo(Table table, String oldName, TableColumn toColumn) {
+        List<String> result = new ArrayList<>();
+        if (oldName != null && !oldName.equals(toColumn.getName())) {
+            result.add(MessageFormat.format("ALTER TABLE `{0}` ALTER COLUMN `{1}` RENAME TO `{2}`",
+                                            table.getName(),
+                                            oldName,
+                                            toColumn.getName()));
+        }
+        result.add(MessageFormat.format("ALTER TABLE `{0}` ALTER COLUMN {1}",
+                                        table.getName(),
+                                        generateColumnDefinition(toColumn)));
+
+        return result;
+    }
+
+    @Override
+    public String generateCreateTable(Table table) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("CREATE TABLE `");
+        sb.append(table.getName());
+        sb.append("` (\n");
+        for (TableColumn col : table.getColumns()) {
+            sb.append("  ").append(generateColumnDefinition(col)).append(",\n");
+        }
+        for (Key key : table.getKeys()) {
+            if (key.isUnique()) {
+                sb.append(MessageFormat.format("   CONSTRAINT `{0}` UNIQUE ({1}),\n",
+                                               key.getName(),
+                                               String.join(", ", key.getColumns())));
+            } else {
+                sb.append(MessageFormat.format("   KEY `{0}` ({1}),\n",
+                                               key.getName(),
+                                               String.join(", ", key.getColumns())));
+            }
+        }
+        // Just like for MySQL, foreign keys are generated by the sync tool in the next run...
+        sb.append(MessageFormat.format(" PRIMARY KEY ({0})\n)", String.join(", ", table.getPrimaryKey())));
+        return sb.toString();
+    }
+
+    @Override
+    public String generateRenameTable(Table table) {
+        return MessageFormat.format("ALTER TABLE `{0}` RENAME TO `{1}`", table.getOldName(), table.getName());
+    }
+
+    @Override
+    public List<String> generateAlterPrimaryKey(Table table) {
+        return Arrays.asList(MessageFormat.format("ALTER TABLE `{0}` DROP PRIMARY KEY", table.getName()),
+                             MessageFormat.format("ALTER TABLE `{0}` ADD PRIMARY KEY ({1})",
+                                                  table.getName(),
+                                                  String.join(", ", table.getPrimaryKey())));
+    }
+
+    @Override
+    public String generateAddKey(Table table, Key key) {
+        if (key.isUnique()) {
+            return super.generateAddKey(table, key);
+        }
+
+        return MessageFormat.format("CREATE INDEX `{0}` ON `{1}` ({2})",
+                                    key.getName(),
+                                    table.getName(),
+                                    String.join(", ", key.getColumns()));
+    }
+
+    @Override
+    public String generateDropKey(Table table, Key key) {
+        if (key.isUnique()) {
+            return MessageFormat.format("ALTER TABLE `{0}` DROP CONSTRAINT `{1}`", table.getName(), key.getName());
+        }
+
+        return MessageFormat.format("DROP INDEX `{0}`", key.getName());
+    }
+
+    @Override
+    public String generateDropForeignKey(Table table, ForeignKey key) {
+        return MessageFormat.format("ALTER TABLE `{0}` DROP CONSTRAINT `{1}`", table.getName(), key.getName());
+    }
+
+    /**
+     * As index names are unique per schema (and not per table) in H2, we prefix each key with its table name.
+     *
+     * @param targetTable the table which contains the key
+     * @param key         the key itself
+     * @return the effective name for the key
+     */
+    @Override
+    public String getEffectiveKeyName(Table targetTable, Key key) {
+        return targetTable.getName() + "_" + key.getName();
+    }
+
+    @Override
+    public boolean isColumnCaseSensitive() {
+        return true;
+    }
+
+    @Override
+    public boolean shouldDropKey(Table targetTable, Table currentTable, Key key) {
+        // Foreign keys are backed by an index named like the constraint, these must not be dropped...
+        return currentTable.getForeignKeys().stream().noneMatch(fk -> fk.getName().equalsIgnoreCase(key.getName()));
+    }
+
+    @Override
+    public String getDefaultValue(ResultSet rs) throws SQLException {
+        String defaultValue = super.getDefaultValue(rs);
+
+        if ("NULL".equals(defaultValue)) {
+            return null;
+        }
+
+        return defaultValue;
+    }
+}
@@ -18,6 +18,7 @@ import sirius.db.mixing.BaseMapper;
 import sirius.db.mixing.EntityDescriptor;
 import sirius.db.mixing.Mixing;
 import sirius.db.mixing.Property;
+import sirius.db.mixing.annotations.Engine;
 import sirius.db.mixing.annotations.Index;
 import sirius.kernel.Sirius;
 import sirius.kernel.Startable;
@@ -219,6 +220,7 @@ public class Schema implements Startable, Initializable {
                          entityDescriptor.getRelationName());
         }
 
+        applyEngine(table, entityDescriptor);
         collectColumns(table, entityDescriptor);
         collectKeys(table, entityDescriptor);
         applyRenamings(table);
@@ -226,6 +228,16 @@ public class Schema implements Startable, Initializable {
         return table;
     }
 
+    private void applyEngine(Table table, EntityDescriptor entityDescriptor) {
+        entityDescriptor.getAnnotation(Engine.class).ifPresent(engine -> {
+            table.setEngine(engine.value());
+            table.setOrderBy(Strings.isFilled(engine.orderBy()) ? engine.orderBy() : null);
+            table.setPartitionBy(Strings.isFilled(engine.partitionBy()) ? engine.partitionBy() : null);
+            table.setTtl(Strings.isFilled(engine.ttl()) ? engine.ttl() : null);
+            table.setSettings(Strings.isFilled(engine.settings()) ? engine.settings() : null);
+        });
+    }
+
     private void applyRenamings(Table table) {
         if (table.getSource().getLegacyInfo() != null) {
             if (table.getSource().getLegacyInfo().hasPath("oldTableName")) {
@@ -84,6 +84,7 @@ public class SchemaTool {
         Table table = new Table();
         table.setName(rs.getString("TABLE_NAME"));
         fillTable(c, table);
+        dialect.readTableOptions(c, table);
         tables.add(dialect.completeTableInfos(table));
     }
 
@@ -301,6 +302,26 @@ public class SchemaTool {
                 result.add(action);
             }
         }
+        syncTableOptions(targetTable, other, result);
+    }
+
+    private void syncTableOptions(Table targetTable, Table other, List<SchemaUpdateAction> result) {
+        String reason = dialect.areTableOptionsEqual(targetTable, other);
+        if (reason == null) {
+            return;
+        }
+
+        List<String> sql = dialect.generateAlterTableOptions(targetTable, other);
+        if (!sql.isEmpty()) {
+            SchemaUpdateAction action = new SchemaUpdateAction(realm);
+            action.setReason(NLS.fmtr("SchemaTool.tableOptionsChanged")
+                                .set(KEY_TABLE, targetTable.getName())
+                                .set("reason", reason)
+                                .format());
+            action.setDataLossPossible(true);
+            action.setSql(sql);
+            result.add(action);
+        }
     }
 
     private void generateEffectiveKeyNames(Table targetTable) {
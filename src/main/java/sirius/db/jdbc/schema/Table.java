@@ -12,6 +12,7 @@ import sirius.db.mixing.EntityDescriptor;
 import sirius.kernel.commons.Explain;
 import sirius.kernel.commons.Strings;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -27,6 +28,11 @@ public class Table {
     private List<TableColumn> columns = new ArrayList<>();
     private List<Key> keys = new ArrayList<>();
     private List<ForeignKey> foreignKeys = new ArrayList<>();
+    private String engine;
+    private String orderBy;
+    private String partitionBy;
+    private String ttl;
+    private String settings;
 
     /**
      * Creates a new table based on the given entity descriptor.
@@ -159,6 +165,101 @@ public class Table {
         return null;
     }
 
+    /**
+     * Returns the engine of the table.
+     *
+     * @return the engine or <tt>null</tt> if the engine is unknown or the default one is used
+     */
+    @Nullable
+    public String getEngine() {
+        return engine;
+    }
+
+    /**
+     * Specifies the engine of the table.
+     *
+     * @param engine the engine to use
+     */
+    public void setEngine(@Nullable String engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Returns the ordering key of the table (used by Clickhouse).
+     *
+     * @return the ordering key expression or <tt>null</tt> if none is present
+     */
+    @Nullable
+    public String getOrderBy() {
+        return orderBy;
+    }
+
+    /**
+     * Specifies the ordering key of the table.
+     *
+     * @param orderBy the ordering key expression
+     */
+    public void setOrderBy(@Nullable String orderBy) {
+        this.orderBy = orderBy;
+    }
+
+    /**
+     * Returns the partition expression of the table (used by Clickhouse).
+     *
+     * @return the partition expression or <tt>null</tt> if none is present
+     */
+    @Nullable
+    public String getPartitionBy() {
+        return partitionBy;
+    }
+
+    /**
+     * Specifies the partition expression of the table.
+     *
+     * @param partitionBy the partition expression
+     */
+    public void setPartitionBy(@Nullable String partitionBy) {
+        this.partitionBy = partitionBy;
+    }
+
+    /**
+     * Returns the TTL expression of the table (used by Clickhouse).
+     *
+     * @return the TTL expression or <tt>null</tt> if none is present
+     */
+    @Nullable
+    public String getTtl() {
+        return ttl;
+    }
+
+    /**
+     * Specifies the TTL expression of the table.
+     *
+     * @param ttl the TTL expression
+     */
+    public void setTtl(@Nullable String ttl) {
+        this.ttl = ttl;
+    }
+
+    /**
+     * Returns additional settings of the table (used by Clickhouse).
+     *
+     * @return the settings or <tt>null</tt> if none are present
+     */
+    @Nullable
+    public String getSettings() {
+        return settings;
+    }
+
+    /**
+     * Specifies additional settings of the table.
+     *
+     * @param settings the settings to apply
+     */
+    public void setSettings(@Nullable String settings) {
+        this.settings = settings;
+    }
+
     @Override
     public String toString() {
         return name;
@@ -178,6 +279,11 @@ public class Table {
             sb.append(col);
             sb.append("\n");
         }
+        if (Strings.isFilled(engine)) {
+            sb.append("   ENGINE: ");
+            sb.append(engine);
+            sb.append("\n");
+        }
         sb.append("   PK: ");
         sb.append(Strings.join(primaryKey, ", "));
         sb.append("\n");
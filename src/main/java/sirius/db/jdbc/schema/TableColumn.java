@@ -9,6 +9,8 @@
 package sirius.db.jdbc.schema;
 
 import sirius.db.mixing.Property;
+import sirius.db.mixing.annotations.Codec;
+import sirius.db.mixing.annotations.LowCardinality;
 import sirius.db.mixing.annotations.Numeric;
 import sirius.kernel.commons.Strings;
 
@@ -28,6 +30,8 @@ public class TableColumn {
     private int scale;
     private String defaultValue;
     private Property source;
+    private String codec;
+    private boolean lowCardinality;
 
     /**
      * Creates a new table column.
@@ -53,6 +57,8 @@ public class TableColumn {
             this.precision = numeric.precision();
             this.scale = numeric.scale();
         });
+        property.getAnnotation(Codec.class).ifPresent(annotation -> this.codec = annotation.value());
+        this.lowCardinality = property.getAnnotation(LowCardinality.class).isPresent();
     }
 
     /**
@@ -230,6 +236,43 @@ public class TableColumn {
         this.defaultValue = defaultValue;
     }
 
+    /**
+     * Returns the compression codec of the column (used by Clickhouse).
+     *
+     * @return the codec specification or <tt>null</tt> if the default compression is used
+     */
+    @Nullable
+    public String getCodec() {
+        return codec;
+    }
+
+    /**
+     * Specifies the compression codec of the column.
+     *
+     * @param codec the codec specification
+     */
+    public void setCodec(@Nullable String codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * Determines if the column is dictionary encoded (<tt>LowCardinality</tt> in Clickhouse).
+     *
+     * @return <tt>true</tt> if the column is dictionary encoded, <tt>false</tt> otherwise
+     */
+    public boolean isLowCardinality() {
+        return lowCardinality;
+    }
+
+    /**
+     * Specifies if the column is dictionary encoded.
+     *
+     * @param lowCardinality <tt>true</tt> to dictionary encode the column
+     */
+    public void setLowCardinality(boolean lowCardinality) {
+        this.lowCardinality = lowCardinality;
+    }
+
     @Override
     public String toString() {
         return name;
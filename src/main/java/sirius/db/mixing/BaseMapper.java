@@ -375,7 +375,13 @@ public abstract class BaseMapper<B extends BaseEntity<?>, C extends Constraint,
         }
     }
 
-    private Function<String, Value> makeContext(ContextInfo[] info) {
+    /**
+     * Transforms the given context infos into a lookup function.
+     *
+     * @param info the context infos as passed to {@link #find(Class, Object, ContextInfo...)}
+     * @return a function which returns the value for a given key or {@link Value#EMPTY} if no value is present
+     */
+    protected Function<String, Value> makeContext(ContextInfo[] info) {
         if (info == null || info.length == 0) {
             return EMPTY_CONTEXT;
         }
@@ -106,6 +106,18 @@ public class EntityDescriptor {
      */
     protected final Map<String, Property> properties = new TreeMap<>();
 
+    /**
+     * Contains all properties indexed by their property name (column name) as used by {@link #make(Class, Consumer)}.
+     * <p>
+     * This is lazily computed as all properties (including composites and mixins) have to be known.
+     */
+    private volatile Map<String, Integer> propertyIndexByColumn;
+
+    /**
+     * Contains all properties in the order used by {@link #propertyIndexByColumn}.
+     */
+    private volatile List<Property> indexedProperties;
+
     /**
      * Contains a set of all composites contained within this entity.
      */
@@ -790,16 +802,96 @@ public class EntityDescriptor {
             String columnName = (alias == null) ? p.getPropertyName() : alias + "_" + p.getPropertyName();
             Value data = supplier.apply(columnName);
             if (data != null) {
-                p.setValueFromDatasource(mapperType, entity, data);
-                if (isBaseEntity(entity)) {
-                    asBaseEntity(entity).persistedData.put(p, p.getValueAsCopy(entity));
-                }
+                fillProperty(mapperType, entity, p, data);
+            }
+        }
+
+        return entity;
+    }
+
+    /**
+     * Creates an entity from the given column values which are pushed by the given producer.
+     * <p>
+     * In contrast to {@link #make(Class, String, ValueSupplier)}, the values aren't looked up per property but
+     * are rather provided in the order in which they occur in the underlying data (e.g. while parsing a JSON
+     * document). Unknown columns are simply ignored. Properties for which no value was provided are filled with an
+     * empty value, so that the result is the same as if the values were supplied via
+     * {@link #make(Class, String, ValueSupplier)}.
+     *
+     * @param mapperType    the mapper which is currently active
+     * @param valueProducer invoked with a callback which has to be called for each column name and its value
+     * @return an entity containing the given values
+     * @throws Exception in case of an error while building the entity
+     */
+    public Object make(Class<? extends BaseMapper<?, ?, ?>> mapperType,
+                       Consumer<BiConsumer<String, Value>> valueProducer) throws Exception {
+        return make(mapperType, valueProducer, null);
+    }
+
+    /**
+     * Creates an entity from the given column values which are pushed by the given producer.
+     * <p>
+     * In contrast to {@link #make(Class, Consumer)}, only the given columns are considered to be fetched. Therefore
+     * properties which are neither provided nor listed remain untouched and are reported as not being
+     * {@link #isFetched(BaseEntity, Property) fetched}.
+     *
+     * @param mapperType     the mapper which is currently active
+     * @param valueProducer  invoked with a callback which has to be called for each column name and its value
+     * @param fetchedColumns the names of the columns which were requested from the database or <tt>null</tt> if
+     *                       all columns were requested
+     * @return an entity containing the given values
+     * @throws Exception in case of an error while building the entity
+     */
+    public Object make(Class<? extends BaseMapper<?, ?, ?>> mapperType,
+                       Consumer<BiConsumer<String, Value>> valueProducer,
+                       @Nullable Set<String> fetchedColumns) throws Exception {
+        Object entity = type.getDeclaredConstructor().newInstance();
+
+        Map<String, Integer> indexByColumn = getPropertyIndexByColumn();
+        List<Property> propertiesByIndex = indexedProperties;
+        boolean[] filled = new boolean[propertiesByIndex.size()];
+        valueProducer.accept((columnName, data) -> {
+            Integer index = indexByColumn.get(columnName);
+            if (index != null && data != null) {
+                filled[index] = true;
+                fillProperty(mapperType, entity, propertiesByIndex.get(index), data);
+            }
+        });
+
+        for (int i = 0; i < filled.length; i++) {
+            Property property = propertiesByIndex.get(i);
+            if (!filled[i] && (fetchedColumns == null || fetchedColumns.contains(property.getPropertyName()))) {
+                fillProperty(mapperType, entity, property, Value.EMPTY);
             }
         }
 
         return entity;
     }
 
+    private void fillProperty(Class<? extends BaseMapper<?, ?, ?>> mapperType,
+                              Object entity,
+                              Property property,
+                              Value data) {
+        property.setValueFromDatasource(mapperType, entity, data);
+        if (isBaseEntity(entity)) {
+            asBaseEntity(entity).persistedData.put(property, property.getValueAsCopy(entity));
+        }
+    }
+
+    private Map<String, Integer> getPropertyIndexByColumn() {
+        if (propertyIndexByColumn == null) {
+            List<Property> propertyList = new ArrayList<>(getProperties());
+            Map<String, Integer> indexMap = new HashMap<>();
+            for (int i = 0; i < propertyList.size(); i++) {
+                indexMap.put(propertyList.get(i).getPropertyName(), i);
+            }
+            indexedProperties = propertyList;
+            propertyIndexByColumn = indexMap;
+        }
+
+        return propertyIndexByColumn;
+    }
+
     /**
      * Applies legacy renaming rules to determine the effective property name based on the name generated by the
      * property.
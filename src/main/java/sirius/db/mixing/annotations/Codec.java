@@ -0,0 +1,36 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.db.mixing.annotations;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Specifies the compression codec of a column in Clickhouse.
+ * <p>
+ * Parameters which are omitted are compared using the defaults of Clickhouse, therefore e.g. <tt>Delta, ZSTD</tt>
+ * on an <tt>Int64</tt> column matches <tt>Delta(8), ZSTD(1)</tt> as reported by the server.
+ * <p>
+ * This is ignored by all other databases.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Codec {
+
+    /**
+     * The codec (or a chain of codecs) to apply.
+     *
+     * @return the codec specification, e.g. <tt>ZSTD(3)</tt> or <tt>Delta, LZ4</tt>
+     */
+    String value();
+}
@@ -17,8 +17,14 @@ import java.lang.annotation.Target;
 /**
  * Can be placed on a {@link sirius.db.jdbc.SQLEntity} to specify the database engine to use.
  * <p>
- * Use e.g. <tt>InnoDB</tt> for MySQL or <tt>MergeTree(EventDate, (CounterID, EventDate), 8192)</tt>
- * for Clickhouse.
+ * Use e.g. <tt>InnoDB</tt> for MySQL or <tt>MergeTree</tt> for Clickhouse. For the MergeTree family of Clickhouse,
+ * the ordering key, the partition expression, the TTL and additional settings can be specified via the respective
+ * attributes, e.g. <tt>@Engine(value = "MergeTree", partitionBy = "toYYYYMM(date)", orderBy = "(type, date)")</tt>.
+ * These attributes are ignored by all other databases.
+ * <p>
+ * Note that once a Clickhouse table exists, a change of the engine, the ordering key or the partition expression
+ * requires the table to be rebuilt. The schema tool therefore proposes such changes as actions which might lose data
+ * so that they have to be confirmed manually.
  */
 @Documented
 @Retention(RetentionPolicy.RUNTIME)
@@ -31,4 +37,34 @@ public @interface Engine {
      * @return the engine used for the annotated type
      */
     String value();
+
+    /**
+     * Contains the ordering key (<tt>ORDER BY</tt>) of a Clickhouse MergeTree table.
+     * <p>
+     * If no ordering key is given for a MergeTree table, <tt>tuple()</tt> is used, which disables sorting.
+     *
+     * @return the ordering key expression, e.g. a column name or a tuple like <tt>(type, date)</tt>
+     */
+    String orderBy() default "";
+
+    /**
+     * Contains the partition expression (<tt>PARTITION BY</tt>) of a Clickhouse MergeTree table.
+     *
+     * @return the partition expression, e.g. <tt>toYYYYMM(date)</tt>
+     */
+    String partitionBy() default "";
+
+    /**
+     * Contains the TTL expression of a Clickhouse MergeTree table.
+     *
+     * @return the TTL expression, e.g. <tt>date + INTERVAL 1 MONTH</tt>
+     */
+    String ttl() default "";
+
+    /**
+     * Contains additional settings of a Clickhouse MergeTree table.
+     *
+     * @return the settings to apply, e.g. <tt>index_granularity = 8192</tt>
+     */
+    String settings() default "";
 }
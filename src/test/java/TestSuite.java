@@ -24,6 +24,10 @@ import sirius.kernel.Scope;
         scope = Scope.SCOPE_NIGHTLY)
 @Scenario(file = "test-redis-latest.conf", includes = "sirius\\.db\\.redis.*", scope = Scope.SCOPE_NIGHTLY)
 @Scenario(file = "test-mongo-latest.conf", includes = "sirius\\.db\\.mongo.*", scope = Scope.SCOPE_NIGHTLY)
+@Scenario(file = "test-h2.conf", includes = "sirius\\.db\\.jdbc\\.schema.*", scope = Scope.SCOPE_NIGHTLY)
+@Scenario(file = "test-standins.conf",
+        includes = "sirius\\.db\\.(redis|mongo).*",
+        scope = Scope.SCOPE_NIGHTLY)
 public class TestSuite {
 
 }
@@ -8,6 +8,7 @@
 
 package sirius.db.es
 
+import com.alibaba.fastjson.JSONObject
 import sirius.kernel.BaseSpecification
 import sirius.kernel.di.std.Part
 import sirius.kernel.health.HandledException
@@ -31,6 +32,9 @@ class BulkContextSpec extends BaseSpecification {
         btx.tryUpdate(new BatchTestEntity().withValue(1))
         btx.tryUpdate(new BatchTestEntity().withValue(2))
         btx.tryUpdate(new BatchTestEntity().withValue(3))
+        then:
+        btx.countQueuedCommands() == 3
+        when:
         btx.commit()
         elastic.refresh(BatchTestEntity.class)
         then:
@@ -131,4 +135,98 @@ class BulkContextSpec extends BaseSpecification {
         and:
         result.getFailedIds().contains(refreshed.getId())
     }
+
+    def "bulk requests can be compressed"() {
+        setup:
+        elastic.select(BatchTestEntity.class).delete()
+        BulkRequestBuffer buffer = new BulkRequestBuffer(true)
+        String index = elastic.determineWriteAlias(new BatchTestEntity().getDescriptor())
+        when:
+        for (int i = 0; i < 10; i++) {
+            buffer.addCommand(new JSONObject().fluentPut(BulkContext.COMMAND_INDEX,
+                                                         new JSONObject().fluentPut("_index", index)
+                                                                         .fluentPut(BulkContext.KEY_ID, "GZIP" + i)),
+                              new JSONObject().fluentPut("value", i))
+        }
+        and:
+        def result = new BulkResult(elastic.getLowLevelClient().bulk(buffer))
+        elastic.refresh(BatchTestEntity.class)
+        then:
+        buffer.getNumberOfCommands() == 10
+        buffer.getNumberOfLines() == 20
+        and:
+        result.isSuccessful()
+        and:
+        elastic.select(BatchTestEntity.class).count() == 10
+    }
+
+    def "concurrent batch insert works"() {
+        setup:
+        elastic.select(BatchTestEntity.class).delete()
+        ConcurrentBulkContext btx = elastic.concurrentBatch(2)
+        when:
+        for (int i = 0; i < 500; i++) {
+            btx.tryUpdate(new BatchTestEntity().withValue(i))
+            if (btx.countQueuedCommands() >= 100) {
+                btx.commit()
+            }
+        }
+        def result = btx.awaitCompletion()
+        elastic.refresh(BatchTestEntity.class)
+        then:
+        result.isSuccessful()
+        and:
+        elastic.select(BatchTestEntity.class).count() == 500
+    }
+
+    def "bulkLoad makes the entities visible and restores the index settings"() {
+        setup:
+        elastic.select(BatchTestEntity.class).delete()
+        def index = elastic.determineEffectiveIndex(new BatchTestEntity().getDescriptor())
+        def settings = { -> elastic.getLowLevelClient().indexSettings(index)
+                                   .getJSONObject(index)
+                                   .getJSONObject("settings")
+                                   .getJSONObject("index") }
+        def replicas = settings().getString("number_of_replicas")
+        def refreshInterval = settings().getString("refresh_interval")
+        when:
+        elastic.bulkLoad(BatchTestEntity.class, true, true, { btx ->
+            for (int i = 0; i < 200; i++) {
+                btx.tryUpdate(new BatchTestEntity().withValue(i))
+            }
+        })
+        then:
+        elastic.select(BatchTestEntity.class).count() == 200
+        and:
+        settings().getString("number_of_replicas") == replicas
+        settings().getString("refresh_interval") == refreshInterval
+    }
+
+    def "overlapping bulkLoads restore the settings which were present before the first one"() {
+        setup:
+        elastic.select(BatchTestEntity.class).delete()
+        def index = elastic.determineEffectiveIndex(new BatchTestEntity().getDescriptor())
+        def settings = { -> elastic.getLowLevelClient().indexSettings(index)
+                                   .getJSONObject(index)
+                                   .getJSONObject("settings")
+                                   .getJSONObject("index") }
+        def replicas = settings().getString("number_of_replicas")
+        def refreshInterval = settings().getString("refresh_interval")
+        def refreshIntervalAfterInnerLoad = null
+        when:
+        elastic.bulkLoad(BatchTestEntity.class, { outer ->
+            outer.tryUpdate(new BatchTestEntity().withValue(1))
+            elastic.bulkLoad(BatchTestEntity.class, true, false, { inner ->
+                inner.tryUpdate(new BatchTestEntity().withValue(2))
+            })
+            refreshIntervalAfterInnerLoad = settings().getString("refresh_interval")
+        })
+        then:
+        refreshIntervalAfterInnerLoad == "-1"
+        and:
+        settings().getString("number_of_replicas") == replicas
+        settings().getString("refresh_interval") == refreshInterval
+        and:
+        elastic.select(BatchTestEntity.class).count() == 2
+    }
 }
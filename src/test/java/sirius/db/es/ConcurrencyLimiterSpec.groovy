@@ -0,0 +1,101 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.db.es
+
+import sirius.kernel.BaseSpecification
+import sirius.kernel.health.Exceptions
+
+import java.time.Duration
+
+class ConcurrencyLimiterSpec extends BaseSpecification {
+
+    def "requests beyond the limit are rejected"() {
+        given:
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 10, Duration.ofSeconds(5), 0, Duration.ofSeconds(1))
+        when:
+        limiter.acquire("first")
+        limiter.acquire("second")
+        limiter.acquire("third")
+        then:
+        ElasticOverloadedException e = thrown(ElasticOverloadedException)
+        and:
+        ElasticOverloadedException.isCausedBy(Exceptions.handle(e))
+        limiter.numRejected.getCount() == 1
+        limiter.getInFlight() == 2
+    }
+
+    def "the limit adapts to the observed latency"() {
+        given:
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 5, 20, Duration.ofSeconds(5), 0, Duration.ofSeconds(1))
+        when:
+        limiter.acquire("slow")
+        limiter.release(10_000, false, false)
+        then:
+        limiter.getLimit() == 9
+        when:
+        6.times { limiter.acquire("fast") }
+        limiter.release(10, false, false)
+        then:
+        limiter.getLimit() == 10
+    }
+
+    def "the circuit breaker opens after consecutive failures and closes after a successful probe"() {
+        given:
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 10, Duration.ofSeconds(5), 2, Duration.ofMillis(100))
+        when:
+        2.times {
+            limiter.acquire("failing")
+            limiter.release(10, true, false)
+        }
+        then:
+        limiter.isOpen()
+        when:
+        limiter.acquire("rejected")
+        then:
+        thrown(ElasticOverloadedException)
+        when:
+        Thread.sleep(150)
+        boolean probe = limiter.acquire("probe")
+        limiter.release(10, false, probe)
+        then:
+        probe
+        !limiter.isOpen()
+    }
+
+    def "only the outcome of the probe itself decides on the circuit breaker"() {
+        given:
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 10, Duration.ofSeconds(5), 2, Duration.ofMillis(100))
+        and: "a request which is still running while the circuit opens"
+        boolean straggler = limiter.acquire("straggler")
+        2.times {
+            limiter.acquire("failing")
+            limiter.release(10, true, false)
+        }
+        when:
+        Thread.sleep(150)
+        boolean probe = limiter.acquire("probe")
+        limiter.release(10, false, straggler)
+        then: "the completed straggler neither closes the circuit nor permits another probe"
+        !straggler
+        probe
+        limiter.isOpen()
+        when:
+        limiter.acquire("rejected")
+        then:
+        thrown(ElasticOverloadedException)
+        when:
+        limiter.release(10, true, probe)
+        then: "the failed probe re-opens the circuit"
+        limiter.isOpen()
+        when:
+        limiter.acquire("rejected")
+        then:
+        thrown(ElasticOverloadedException)
+    }
+}
@@ -11,8 +11,10 @@ package sirius.db.es
 
 import sirius.db.es.properties.ESStringListEntity
 import sirius.db.es.properties.ESStringMapEntity
+import sirius.db.es.types.ElasticRef
 import sirius.db.mixing.Mapping
 import sirius.db.mixing.properties.StringMapProperty
+import sirius.db.mixing.types.BaseEntityRef
 import sirius.kernel.BaseSpecification
 import sirius.kernel.Scope
 import sirius.kernel.commons.Doubles
@@ -23,12 +25,16 @@ import sirius.kernel.health.HandledException
 
 import java.time.Duration
 import java.time.LocalDateTime
+import java.util.concurrent.atomic.AtomicInteger
 
 class ElasticQuerySpec extends BaseSpecification {
 
     @Part
     private static Elastic elastic
 
+    @Part
+    private static TermsLookups termsLookups
+
     def setupSpec() {
         elastic.getReadyFuture().await(Duration.ofSeconds(60))
     }
@@ -246,6 +252,360 @@ class ElasticQuerySpec extends BaseSpecification {
         sum == (1500 * 1501) / 2
     }
 
+    def "entities are bound directly from the source of a hit"() {
+        given:
+        QueryTestEntity entity = new QueryTestEntity()
+        entity.setValue("BIND")
+        entity.setCounter(42)
+        entity.setDateTime(LocalDateTime.now().withNano(0))
+        elastic.update(entity)
+        elastic.refresh(QueryTestEntity.class)
+        when:
+        QueryTestEntity loaded = elastic.select(QueryTestEntity.class).eq(QueryTestEntity.VALUE, "BIND").queryFirst()
+        QueryTestEntity found = elastic.findOrFail(QueryTestEntity.class, entity.getId())
+        then:
+        loaded.getId() == found.getId()
+        loaded.getValue() == found.getValue()
+        loaded.getCounter() == found.getCounter()
+        loaded.getDateTime() == found.getDateTime()
+        and:
+        !loaded.isAnyMappingChanged()
+        and:
+        loaded.getSearchHit().getString("_id") == entity.getId()
+        loaded.getSearchHit().getJSONObject("_source").getString("value") == "BIND"
+        when:
+        def query = elastic.select(QueryTestEntity.class).eq(QueryTestEntity.VALUE, "BIND")
+        query.queryList()
+        then:
+        query.getRawResponse().getJSONObject("hits").getJSONArray("hits").getJSONObject(0).
+                getJSONObject("_source").getString("value") == "BIND"
+        when:
+        QueryTestEntity scrolled = null
+        elastic.select(QueryTestEntity.class).eq(QueryTestEntity.VALUE, "BIND").iterateAll({ e -> scrolled = e })
+        then: "the source isn't kept for scrolled entities but re-created on demand"
+        scrolled.getSearchHitMetadata().getString("_id") == entity.getId()
+        !scrolled.getSearchHitMetadata().containsKey("_source")
+        scrolled.getSearchHit().getJSONObject("_source").getString("value") == "BIND"
+        scrolled.getSearchHit().getJSONObject("_source").getIntValue("counter") == 42
+    }
+
+    def "search after query works"() {
+        when:
+        for (int i = 1; i <= 150; i++) {
+            QueryTestEntity entity = new QueryTestEntity()
+            entity.setValue("SEARCHAFTER")
+            entity.setCounter(i % 10)
+            elastic.update(entity)
+        }
+        elastic.refresh(QueryTestEntity.class)
+        and:
+        int count = 0
+        Set<String> ids = new HashSet<>()
+        def query = elastic.select(QueryTestEntity.class).
+                eq(QueryTestEntity.VALUE, "SEARCHAFTER").
+                orderAsc(QueryTestEntity.COUNTER).
+                useSearchAfter(20)
+        def payloadBefore = query.toString()
+        query.iterateAll({ e ->
+            count++
+            ids.add(e.getId())
+        })
+        then:
+        count == 150
+        ids.size() == 150
+        and: "the tie-breaker is only added to the request"
+        query.toString() == payloadBefore
+    }
+
+    def "the memoized payload is rebuilt once the query is modified"() {
+        when:
+        def query = elastic.select(QueryTestEntity.class).eq(QueryTestEntity.VALUE, "MEMO")
+        def before = query.toString()
+        query.eq(QueryTestEntity.COUNTER, 4711).orderDesc(QueryTestEntity.COUNTER)
+        def after = query.toString()
+        then:
+        before.contains("MEMO")
+        !before.contains("4711")
+        after.contains("4711")
+        after.contains("desc")
+        query.toString().is(after)
+    }
+
+    def "cached aggregations are reused until an entity is written"() {
+        given:
+        for (int i = 0; i < 10; i++) {
+            QueryTestEntity entity = new QueryTestEntity()
+            entity.setValue("CACHED" + (i % 2))
+            elastic.update(entity)
+        }
+        elastic.refresh(QueryTestEntity.class)
+        when:
+        def first = elastic.select(QueryTestEntity.class)
+                           .addTermAggregation(QueryTestEntity.VALUE)
+                           .where(Elastic.FILTERS.prefix(QueryTestEntity.VALUE, "CACHED"))
+                           .cached(Duration.ofMinutes(1))
+        first.computeAggregations()
+        def second = first.copy()
+        second.computeAggregations()
+        then:
+        second.getRawResponse().is(first.getRawResponse())
+        when:
+        QueryTestEntity entity = new QueryTestEntity()
+        entity.setValue("CACHED2")
+        elastic.update(entity)
+        elastic.refresh(QueryTestEntity.class)
+        def third = first.copy()
+        third.computeAggregations()
+        then:
+        !third.getRawResponse().is(first.getRawResponse())
+        third.getAggregation(QueryTestEntity.VALUE.toString()).getBuckets().size() == 3
+        when: "an entity is written without refreshing the index"
+        QueryTestEntity unrefreshedEntity = new QueryTestEntity()
+        unrefreshedEntity.setValue("CACHED3")
+        elastic.update(unrefreshedEntity)
+        def fourth = first.copy()
+        fourth.computeAggregations()
+        def fifth = first.copy()
+        fifth.computeAggregations()
+        then: "responses are not cached until the refresh window has elapsed"
+        !fifth.getRawResponse().is(fourth.getRawResponse())
+    }
+
+    def "async queries work"() {
+        when:
+        for (int i = 0; i < 20; i++) {
+            QueryTestEntity entity = new QueryTestEntity()
+            entity.setValue("ASYNC" + (i % 2))
+            entity.setCounter(i)
+            elastic.update(entity)
+        }
+        elastic.refresh(QueryTestEntity.class)
+        and:
+        def listQuery = elastic.select(QueryTestEntity.class).eq(QueryTestEntity.VALUE, "ASYNC0")
+        def list = listQuery.queryListAsync()
+        def count = elastic.select(QueryTestEntity.class)
+                           .where(Elastic.FILTERS.prefix(QueryTestEntity.VALUE, "ASYNC"))
+                           .countAsync()
+        def aggregations = elastic.select(QueryTestEntity.class)
+                                  .addTermAggregation(QueryTestEntity.VALUE)
+                                  .where(Elastic.FILTERS.prefix(QueryTestEntity.VALUE, "ASYNC"))
+                                  .computeAggregationsAsync()
+        list.await(Duration.ofSeconds(10))
+        count.await(Duration.ofSeconds(10))
+        aggregations.await(Duration.ofSeconds(10))
+        then:
+        list.get().size() == 10
+        listQuery.getTotalHits() == 10
+        count.get() == 20
+        aggregations.get().getAggregation(QueryTestEntity.VALUE.toString()).getBuckets().size() == 2
+    }
+
+    def "multiSearch executes several queries at once"() {
+        when:
+        for (int i = 0; i < 30; i++) {
+            QueryTestEntity entity = new QueryTestEntity()
+            entity.setValue("MSEARCH" + (i % 3))
+            entity.setCounter(i)
+            elastic.update(entity)
+        }
+        elastic.refresh(QueryTestEntity.class)
+        and:
+        def results = elastic.select(QueryTestEntity.class)
+                             .eq(QueryTestEntity.VALUE, "MSEARCH1")
+                             .limit(5)
+        def facets = elastic.select(QueryTestEntity.class)
+                            .addTermAggregation(QueryTestEntity.VALUE)
+                            .where(Elastic.FILTERS.prefix(QueryTestEntity.VALUE, "MSEARCH"))
+        def failed = elastic.select(QueryTestEntity.class).fail()
+        elastic.multiSearch(results, facets, failed)
+        then:
+        results.getMultiSearchResults().size() == 5
+        results.getMultiSearchResults().every { it.getValue() == "MSEARCH1" }
+        results.getTotalHits() == 10
+        and:
+        facets.getMultiSearchResults().isEmpty()
+        facets.getAggregation(QueryTestEntity.VALUE.toString()).getBuckets().size() == 3
+        and:
+        failed.getMultiSearchResults().isEmpty()
+    }
+
+    def "multiSearch completes the remaining queries if one search fails"() {
+        when:
+        QueryTestEntity entity = new QueryTestEntity()
+        entity.setValue("MSEARCH-FAIL")
+        entity.setCounter(1)
+        elastic.update(entity)
+        elastic.refresh(QueryTestEntity.class)
+        and:
+        def broken = elastic.select(QueryTestEntity.class)
+                            .eq(QueryTestEntity.VALUE, "MSEARCH-FAIL")
+                            .orderAsc(Mapping.named("unmappedField"))
+                            .limit(5)
+        def results = elastic.select(QueryTestEntity.class)
+                             .eq(QueryTestEntity.VALUE, "MSEARCH-FAIL")
+                             .limit(5)
+        elastic.multiSearch(broken, results)
+        then:
+        results.getMultiSearchResults().size() == 1
+        results.getTotalHits() == 1
+        !broken.isExecuted()
+        when:
+        broken.getMultiSearchResults()
+        then:
+        thrown(HandledException)
+    }
+
+    def "fields limits the source and updates keep the remaining fields"() {
+        given:
+        QueryTestEntity entity = new QueryTestEntity()
+        entity.setValue("FIELDS")
+        entity.setCounter(42)
+        elastic.update(entity)
+        elastic.refresh(QueryTestEntity.class)
+        when:
+        QueryTestEntity partial = elastic.select(QueryTestEntity.class).
+                eq(QueryTestEntity.VALUE, "FIELDS").
+                fields(QueryTestEntity.VALUE).
+                queryFirst()
+        then:
+        partial.getValue() == "FIELDS"
+        partial.getCounter() == 0
+        partial.isPartiallyFetched()
+        partial.getDescriptor().isFetched(partial, partial.getDescriptor().getProperty(QueryTestEntity.VALUE))
+        !partial.getDescriptor().isFetched(partial, partial.getDescriptor().getProperty(QueryTestEntity.COUNTER))
+        when:
+        partial.setValue("FIELDS-CHANGED")
+        elastic.update(partial)
+        and:
+        QueryTestEntity reloaded = elastic.find(QueryTestEntity.class, entity.getId()).get()
+        then:
+        reloaded.getValue() == "FIELDS-CHANGED"
+        reloaded.getCounter() == 42
+        !reloaded.isPartiallyFetched()
+    }
+
+    def "excludeFields removes fields from the source"() {
+        given:
+        QueryTestEntity entity = new QueryTestEntity()
+        entity.setValue("EXCLUDEFIELDS")
+        entity.setCounter(7)
+        elastic.update(entity)
+        elastic.refresh(QueryTestEntity.class)
+        when:
+        QueryTestEntity partial = elastic.select(QueryTestEntity.class).
+                eq(QueryTestEntity.VALUE, "EXCLUDEFIELDS").
+                excludeFields(QueryTestEntity.COUNTER).
+                queryFirst()
+        then:
+        partial.getValue() == "EXCLUDEFIELDS"
+        partial.getCounter() == 0
+        !partial.getDescriptor().isFetched(partial, partial.getDescriptor().getProperty(QueryTestEntity.COUNTER))
+    }
+
+    def "iterateCompositeBuckets paginates through all buckets"() {
+        when:
+        for (int i = 1; i <= 50; i++) {
+            QueryTestEntity entity = new QueryTestEntity()
+            entity.setValue("COMPOSITE")
+            entity.setCounter(i)
+            elastic.update(entity)
+        }
+        elastic.refresh(QueryTestEntity.class)
+        and:
+        def query = elastic.select(QueryTestEntity.class).eq(QueryTestEntity.VALUE, "COMPOSITE")
+        def composite = AggregationBuilder.createComposite("counters")
+                                          .addTermSourceAggregation(QueryTestEntity.COUNTER)
+                                          .size(7)
+        Set<String> keys = new HashSet<>()
+        query.iterateCompositeBuckets(composite, { bucket ->
+            keys.add(bucket.getKey(QueryTestEntity.COUNTER.toString()))
+        })
+        and:
+        int prefetched = 0
+        query.iterateCompositeBuckets(composite, true, { bucket -> prefetched++; true })
+        and:
+        int aborted = 0
+        query.iterateCompositeBuckets(composite, true, { bucket -> ++aborted < 10 })
+        then:
+        keys.size() == 50
+        prefetched == 50
+        aborted == 10
+    }
+
+    def "scrolling with a custom and adaptive batch size works"() {
+        when:
+        for (int i = 1; i <= 120; i++) {
+            QueryTestEntity entity = new QueryTestEntity()
+            entity.setValue("BATCHSIZE")
+            entity.setCounter(i)
+            elastic.update(entity)
+        }
+        elastic.refresh(QueryTestEntity.class)
+        and:
+        int count = 0
+        elastic.select(QueryTestEntity.class).
+                eq(QueryTestEntity.VALUE, "BATCHSIZE").
+                withScrollBatchSize(25).
+                iterateAll({ e -> count++ })
+        and:
+        int adaptiveCount = 0
+        elastic.select(QueryTestEntity.class).
+                eq(QueryTestEntity.VALUE, "BATCHSIZE").
+                withAdaptiveBatchSize().
+                iterateAll({ e -> adaptiveCount++ })
+        then:
+        count == 120
+        adaptiveCount == 120
+        and: "a fast consumer increases the learned batch size"
+        elastic.getAdaptiveScrollBatchSize(new QueryTestEntity().getDescriptor(), -1) == 100
+        when: "an explicit batch size is given"
+        elastic.select(QueryTestEntity.class).
+                eq(QueryTestEntity.VALUE, "BATCHSIZE").
+                withScrollBatchSize(25).
+                withAdaptiveBatchSize().
+                iterateAll({ e -> })
+        then: "it is neither adapted nor learned from"
+        elastic.getAdaptiveScrollBatchSize(new QueryTestEntity().getDescriptor(), -1) == 100
+    }
+
+    def "the batch size adapts to the target page duration"() {
+        expect:
+        ElasticQuery.adaptBatchSize(batchSize, pageMillis, 1000) == nextBatchSize
+        where:
+        batchSize | pageMillis | nextBatchSize
+        100       | 1000       | 100
+        100       | 900        | 100
+        100       | 750        | 133
+        100       | 10         | 200
+        100       | 2000       | 50
+        100       | 60_000     | 50
+        10        | 60_000     | 10
+        8000      | 10         | 10_000
+    }
+
+    def "parallel sliced scrolling works"() {
+        when:
+        for (int i = 1; i <= 200; i++) {
+            QueryTestEntity entity = new QueryTestEntity()
+            entity.setValue("PARALLEL")
+            entity.setCounter(i)
+            elastic.update(entity)
+        }
+        elastic.refresh(QueryTestEntity.class)
+        and:
+        AtomicInteger sum = new AtomicInteger()
+        Set<String> ids = Collections.synchronizedSet(new HashSet<>())
+        elastic.select(QueryTestEntity.class).
+                eq(QueryTestEntity.VALUE, "PARALLEL").
+                iterateParallel(4, { e ->
+                    sum.addAndGet(e.getCounter())
+                    ids.add(e.getId())
+                })
+        then:
+        sum.get() == (200 * 201) / 2
+        ids.size() == 200
+    }
+
     def "queries with multiple occurences of the same constraint works"() {
         when:
         QueryTestEntity entity = new QueryTestEntity()
@@ -290,6 +650,72 @@ class ElasticQuerySpec extends BaseSpecification {
                .queryOne().getId() == entityEmpty.getId()
     }
 
+    def "an empty reference in oneInField and noneInField matches an empty field"() {
+        setup:
+        LocalDateTime dateTime = LocalDateTime.of(2019, 5, 7, 10, 0)
+        QueryTestEntity filled = new QueryTestEntity()
+        filled.setValue("EMPTY-REF")
+        filled.setDateTime(dateTime)
+        elastic.update(filled)
+        QueryTestEntity empty = new QueryTestEntity()
+        empty.setValue("EMPTY-REF")
+        elastic.update(empty)
+        elastic.refresh(QueryTestEntity.class)
+        and:
+        def emptyRef = ElasticRef.on(QueryTestEntity.class, BaseEntityRef.OnDelete.IGNORE)
+        def select = { constraint ->
+            elastic.select(QueryTestEntity.class)
+                   .eq(QueryTestEntity.VALUE, "EMPTY-REF")
+                   .where(constraint)
+                   .queryList()
+                   .collect { it.getId() } as Set
+        }
+        expect:
+        select(Elastic.FILTERS.oneInField(QueryTestEntity.DATE_TIME, [emptyRef]).build()) == [empty.getId()] as Set
+        select(Elastic.FILTERS.oneInField(QueryTestEntity.DATE_TIME, [emptyRef, dateTime]).build()) ==
+                [empty.getId(), filled.getId()] as Set
+        and:
+        select(Elastic.FILTERS.noneInField(QueryTestEntity.DATE_TIME, [emptyRef])) == [filled.getId()] as Set
+        select(Elastic.FILTERS.noneInField(QueryTestEntity.DATE_TIME, [emptyRef, dateTime])).isEmpty()
+    }
+
+    def "oneInField uses a terms lookup for large value sets"() {
+        setup:
+        int threshold = termsLookups.@threshold
+        termsLookups.@threshold = 10
+        and:
+        QueryTestEntity entity = new QueryTestEntity()
+        entity.setValue("TERMS-LOOKUP")
+        entity.setCounter(1)
+        elastic.update(entity)
+        elastic.refresh(QueryTestEntity.class)
+        and:
+        def ids = (1..20).collect { "UNKNOWN-" + it }
+        ids.add(entity.getId())
+        when:
+        def constraint = Elastic.FILTERS.oneInField(QueryTestEntity.ID, ids).build()
+        then:
+        constraint.toJSON().getJSONObject("terms").get(Elastic.ID_FIELD) instanceof Map
+        and:
+        elastic.select(QueryTestEntity.class).where(constraint).queryList().collect { it.getId() } == [entity.getId()]
+        and:
+        elastic.select(QueryTestEntity.class)
+               .eq(QueryTestEntity.VALUE, "TERMS-LOOKUP")
+               .where(Elastic.FILTERS.noneInField(QueryTestEntity.ID, ids))
+               .count() == 0
+
+        when: "the lookup index is deleted"
+        elastic.getLowLevelClient().deleteIndex(termsLookups.@index)
+        termsLookups.runTimer()
+        then: "the value set is stored again, so that noneInField still excludes the entity"
+        elastic.select(QueryTestEntity.class)
+               .eq(QueryTestEntity.VALUE, "TERMS-LOOKUP")
+               .where(Elastic.FILTERS.noneInField(QueryTestEntity.ID, ids))
+               .count() == 0
+        cleanup:
+        termsLookups.@threshold = threshold
+    }
+
     def "field value score queries work"() {
         when:
         for (int i = 0; i < 100; i++) {
@@ -9,13 +9,16 @@
 package sirius.db.es
 
 
+import sirius.db.es.types.ElasticRefList
 import sirius.db.mixing.Mixing
 import sirius.db.mixing.OptimisticLockException
+import sirius.db.mixing.types.BaseEntityRef
 import sirius.kernel.BaseSpecification
 import sirius.kernel.di.std.Part
 import sirius.kernel.health.HandledException
 
 import java.time.Duration
+import java.time.LocalDateTime
 
 class ElasticSpec extends BaseSpecification {
 
@@ -187,6 +190,123 @@ class ElasticSpec extends BaseSpecification {
         notFound == null
     }
 
+    def "partial and scripted updates keep all other fields"() {
+        when:
+        QueryTestEntity entity = new QueryTestEntity()
+        entity.setValue("PARTIAL")
+        entity.setCounter(1)
+        elastic.update(entity)
+        QueryTestEntity copyOfOriginal = elastic.refreshOrFail(entity)
+        and:
+        entity.setCounter(2)
+        elastic.update(entity)
+        then:
+        elastic.refreshOrFail(entity).getValue() == "PARTIAL"
+        elastic.refreshOrFail(entity).getCounter() == 2
+
+        when:
+        elastic.updater(entity).inc(QueryTestEntity.COUNTER, 5).execute()
+        and:
+        entity = elastic.refreshOrFail(entity)
+        BulkContext btx = elastic.batch()
+        btx.tryUpdate(elastic.updater(entity).set(QueryTestEntity.VALUE, "SCRIPTED"))
+        btx.commit().throwFailures()
+        then:
+        elastic.refreshOrFail(entity).getValue() == "SCRIPTED"
+        elastic.refreshOrFail(entity).getCounter() == 7
+
+        when: "the entity is updated without re-fetching it after a scripted update"
+        elastic.updater(entity).inc(QueryTestEntity.COUNTER, 1).execute()
+        entity.setCounter(100)
+        elastic.tryUpdate(entity)
+        then: "the changes of the script aren't overwritten"
+        thrown(OptimisticLockException)
+        and:
+        elastic.refreshOrFail(entity).getCounter() == 8
+
+        when:
+        elastic.updater(copyOfOriginal).inc(QueryTestEntity.COUNTER, 1).tryExecute()
+        then:
+        thrown(OptimisticLockException)
+    }
+
+    def "findAll fetches several entities at once"() {
+        when:
+        List<String> ids = []
+        for (int i = 0; i < 3; i++) {
+            ElasticTestEntity entity = new ElasticTestEntity()
+            entity.setFirstname("Multi")
+            entity.setLastname("Get" + i)
+            entity.setAge(i)
+            elastic.update(entity)
+            ids.add(entity.getId())
+        }
+        ids.add(1, "does-not-exist")
+        def entities = elastic.findAll(ElasticTestEntity.class, ids)
+        then:
+        entities.size() == 3
+        and:
+        entities.values().collect { it.getLastname() } == ["Get0", "Get1", "Get2"]
+        and:
+        !entities.containsKey("does-not-exist")
+    }
+
+    def "fetchAll of an ElasticRefList resolves more ids than fit into a single _mget request"() {
+        setup:
+        int chunkSize = elastic.@multiGetChunkSize
+        elastic.@multiGetChunkSize = 2
+        when:
+        ElasticRefList<ElasticTestEntity> refs =
+                new ElasticRefList<>(ElasticTestEntity.class, BaseEntityRef.OnDelete.IGNORE)
+        for (int i = 0; i < 5; i++) {
+            ElasticTestEntity entity = new ElasticTestEntity()
+            entity.setFirstname("Multi")
+            entity.setLastname("Chunk" + i)
+            entity.setAge(i)
+            elastic.update(entity)
+            refs.add(entity)
+        }
+        refs.modify().add(2, "does-not-exist")
+        def lastnames = refs.fetchAll().collect { it.map({ entity -> entity.getLastname() }).orElse(null) }
+        then:
+        lastnames == ["Chunk0", "Chunk1", null, "Chunk2", "Chunk3", "Chunk4"]
+        and:
+        refs.fetchAllAvailable().count() == 5
+        cleanup:
+        elastic.@multiGetChunkSize = chunkSize
+    }
+
+    def "partial updates clear a property which has been set to null"() {
+        when:
+        QueryTestEntity entity = new QueryTestEntity()
+        entity.setValue("CLEARED")
+        entity.setCounter(1)
+        entity.setDateTime(LocalDateTime.now().withNano(0))
+        elastic.update(entity)
+        and:
+        entity.setDateTime(null)
+        elastic.update(entity)
+        then:
+        elastic.refreshOrFail(entity).getDateTime() == null
+        elastic.refreshOrFail(entity).getCounter() == 1
+
+        when:
+        QueryTestEntity bulkEntity = new QueryTestEntity()
+        bulkEntity.setValue("CLEARED IN BULK")
+        bulkEntity.setCounter(2)
+        bulkEntity.setDateTime(LocalDateTime.now().withNano(0))
+        elastic.update(bulkEntity)
+        and:
+        bulkEntity.setDateTime(null)
+        BulkContext btx = elastic.batch()
+        btx.tryUpdate(bulkEntity)
+        btx.commit().throwFailures()
+        then:
+        elastic.refreshOrFail(bulkEntity).getDateTime() == null
+        elastic.refreshOrFail(bulkEntity).getValue() == "CLEARED IN BULK"
+        elastic.refreshOrFail(bulkEntity).getCounter() == 2
+    }
+
     def "wasCreated() works in elastic"() {
         given:
         ElasticWasCreatedTestEntity e = new ElasticWasCreatedTestEntity()
@@ -44,4 +44,45 @@ class ReindexSpec extends BaseSpecification {
         and:
         elastic.find(ElasticTestEntity.class, e.getId()).isPresent()
     }
+
+    def "reindexIntoWriteIndex copies all documents and restores the index settings"() {
+        given:
+        ElasticTestEntity e = new ElasticTestEntity()
+        e.setAge(20)
+        e.setFirstname("reindex")
+        e.setLastname("into write index")
+        and:
+        elastic.update(e)
+        and:
+        elastic.refresh(ElasticTestEntity.class)
+
+        when:
+        elastic.createAndInstallWriteIndex(e.getDescriptor())
+        def writeIndex = elastic.determineWriteAlias(e.getDescriptor())
+        def replicas = readSetting(writeIndex, "number_of_replicas")
+        def refreshInterval = readSetting(writeIndex, "refresh_interval")
+        and:
+        elastic.reindexIntoWriteIndex(e.getDescriptor(), 2, 0)
+        then:
+        readSetting(writeIndex, "number_of_replicas") == replicas
+        and: "an unset refresh interval is reset rather than being replaced by a fixed value"
+        refreshInterval == null
+        readSetting(writeIndex, "refresh_interval") == null
+
+        when:
+        elastic.commitWriteIndex(e.getDescriptor())
+        then:
+        elastic.determineEffectiveIndex(e.getDescriptor()) == writeIndex
+        and:
+        elastic.find(ElasticTestEntity.class, e.getId()).isPresent()
+    }
+
+    private static String readSetting(String index, String setting) {
+        return elastic.getLowLevelClient()
+                      .indexSettings(index)
+                      .getJSONObject(index)
+                      .getJSONObject("settings")
+                      .getJSONObject("index")
+                      .getString(setting)
+    }
 }
@@ -0,0 +1,75 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.db.jdbc.clickhouse;
+
+import sirius.db.jdbc.SQLEntity;
+import sirius.db.mixing.Mapping;
+import sirius.db.mixing.annotations.Codec;
+import sirius.db.mixing.annotations.Engine;
+import sirius.db.mixing.annotations.Length;
+import sirius.db.mixing.annotations.LowCardinality;
+import sirius.db.mixing.annotations.Realm;
+
+import java.time.LocalDate;
+
+@Realm("clickhouse")
+@Engine(value = "MergeTree",
+        partitionBy = "toYYYYMM(date)",
+        orderBy = "(type, date)",
+        ttl = "date + INTERVAL 1 YEAR",
+        settings = "index_granularity = 8192")
+public class ClickhouseMergeTreeTestEntity extends SQLEntity {
+
+    public static final Mapping DATE = Mapping.named("date");
+    private LocalDate date;
+
+    public static final Mapping TYPE = Mapping.named("type");
+    @LowCardinality
+    private String type;
+
+    public static final Mapping COUNTER = Mapping.named("counter");
+    @Codec("Delta, ZSTD(3)")
+    private long counter;
+
+    public static final Mapping FLAG = Mapping.named("flag");
+    @Length(1)
+    private int flag;
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public void setDate(LocalDate date) {
+        this.date = date;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public long getCounter() {
+        return counter;
+    }
+
+    public void setCounter(long counter) {
+        this.counter = counter;
+    }
+
+    public int getFlag() {
+        return flag;
+    }
+
+    public void setFlag(int flag) {
+        this.flag = flag;
+    }
+}
@@ -11,6 +11,7 @@ package sirius.db.jdbc.clickhouse
 import sirius.db.jdbc.OMA
 import sirius.db.jdbc.batch.BatchContext
 import sirius.db.jdbc.batch.InsertQuery
+import sirius.db.jdbc.schema.Schema
 import sirius.kernel.BaseSpecification
 import sirius.kernel.di.std.Part
 
@@ -24,6 +25,9 @@ class ClickhouseSpec extends BaseSpecification {
     @Part
     static OMA oma
 
+    @Part
+    static Schema schema
+
     def setupSpec() {
         oma.getReadyFuture().await(Duration.ofSeconds(60))
     }
@@ -161,4 +165,95 @@ class ClickhouseSpec extends BaseSpecification {
         and:
         readBack.getNullable() == null
     }
+
+    def "RowBinaryEncoder encodes values in the expected binary format"() {
+        given:
+        RowBinaryEncoder encoder = new RowBinaryEncoder(["Int16", "Nullable(Int8)", "String", "Array(String)",
+                                                         "Enum8('Test1' = 1, 'Test2' = 2)", "Date"])
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        when:
+        encoder.encodeRow([258, null, "ab", ["x"], ClickhouseTestEntity.TestEnum.Test2, LocalDate.ofEpochDay(3)]
+                                  as Object[], out)
+        then:
+        out.toByteArray() == [2, 1, 1, 2, 97, 98, 1, 1, 120, 2, 3, 0] as byte[]
+    }
+
+    def "bulk writer inserts entities via RowBinary"() {
+        given:
+        ClickhouseBulkWriter writer = ClickhouseBulkWriter.forEntity(ClickhouseTestEntity.class).withMaxRows(100)
+        when:
+        for (int i = 0; i < 1000; i++) {
+            ClickhouseTestEntity e = new ClickhouseTestEntity()
+            e.setDateTime(Instant.now())
+            e.setDate(LocalDate.now())
+            e.setInt8(i % 100)
+            e.setInt16(i)
+            e.setInt32(i)
+            e.setInt64(i)
+            e.setString("Bulk " + i)
+            e.setFixedString("W")
+            e.setInt8WithDefault(0)
+            e.getStringList().add("a").add("b")
+            e.setEnumValue(ClickhouseTestEntity.TestEnum.Test1)
+            writer.insert(e)
+        }
+        and:
+        writer.close()
+        then:
+        writer.getRowsWritten() == 1000
+        and:
+        oma.select(ClickhouseTestEntity.class).eq(ClickhouseTestEntity.FIXED_STRING, "W").count() == 1000
+        and:
+        oma.select(ClickhouseTestEntity.class)
+           .eq(ClickhouseTestEntity.STRING, "Bulk 42")
+           .queryFirst()
+           .getStringList()
+           .data() == ["a", "b"]
+    }
+
+    def "bulk writer doesn't keep a partially encoded row"() {
+        given:
+        ClickhouseBulkWriter writer = new ClickhouseBulkWriter(oma.getDatabase("clickhouse"),
+                                                               "clickhousetestentity",
+                                                               ["string", "fixedString"])
+        when: "the fixed string is too long, after the string has already been encoded"
+        writer.insertValues("Partial", "TOO LONG")
+        then:
+        thrown(IllegalArgumentException)
+        when:
+        writer.insertValues("Partial", "P")
+        and:
+        writer.close()
+        then:
+        writer.getRowsWritten() == 1
+        and:
+        oma.select(ClickhouseTestEntity.class).eq(ClickhouseTestEntity.FIXED_STRING, "P").count() == 1
+    }
+
+    def "MergeTree options are applied and detected as unchanged"() {
+        given:
+        ClickhouseMergeTreeTestEntity e = new ClickhouseMergeTreeTestEntity()
+        e.setDate(LocalDate.now())
+        e.setType("test")
+        e.setCounter(1)
+        when:
+        oma.update(e)
+        and:
+        def table = oma.getDatabase("clickhouse")
+                       .createQuery("SELECT engine, partition_key, sorting_key FROM system.tables"
+                                            + " WHERE database = currentDatabase()"
+                                            + " AND name = 'clickhousemergetreetestentity'")
+                       .queryFirst()
+        and:
+        schema.computeRequiredSchemaChanges()
+        then:
+        table.getValue("engine").asString() == "MergeTree"
+        table.getValue("partition_key").asString() == "toYYYYMM(date)"
+        table.getValue("sorting_key").asString() == "type, date"
+        and:
+        oma.select(ClickhouseMergeTreeTestEntity.class).eq(ClickhouseMergeTreeTestEntity.TYPE, "test").count() == 1
+        and:
+        schema.getSchemaUpdateActions().findAll { it.getSql().any { it.contains("clickhousemergetreetestentity") } }
+              .isEmpty()
+    }
 }
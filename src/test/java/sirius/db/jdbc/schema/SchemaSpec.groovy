@@ -0,0 +1,70 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.db.jdbc.schema
+
+import sirius.db.jdbc.OMA
+import sirius.db.jdbc.SQLUniqueTestEntity
+import sirius.db.jdbc.TestEntity
+import sirius.db.mixing.IntegrityConstraintFailedException
+import sirius.kernel.BaseSpecification
+import sirius.kernel.di.std.Part
+
+import java.time.Duration
+
+class SchemaSpec extends BaseSpecification {
+
+    @Part
+    static OMA oma
+
+    @Part
+    static Schema schema
+
+    def setupSpec() {
+        oma.getReadyFuture().await(Duration.ofSeconds(60))
+    }
+
+    def "a created schema is detected as unchanged"() {
+        when:
+        schema.computeRequiredSchemaChanges()
+        then: "neither columns nor keys (including unique and primary keys) are reported as changed"
+        schema.getSchemaUpdateActions().findAll {
+            it.getSql().any { sql -> sql =~ /\b(testentity|sqluniquetestentity)\b/ }
+        }.isEmpty()
+    }
+
+    def "entities can be written and read back"() {
+        setup:
+        oma.select(TestEntity.class).eq(TestEntity.LASTNAME, "Spec").delete()
+        and:
+        TestEntity e = new TestEntity()
+        e.setFirstname("Schema")
+        e.setLastname("Spec")
+        e.setAge(42)
+        when:
+        oma.update(e)
+        then:
+        oma.findOrFail(TestEntity.class, e.getId()).getLastname() == "Spec"
+        oma.select(TestEntity.class).eq(TestEntity.LASTNAME, "Spec").count() == 1
+    }
+
+    def "a unique key created by the schema is enforced"() {
+        setup:
+        oma.select(SQLUniqueTestEntity.class).eq(SQLUniqueTestEntity.VALUE, "schema-unique").delete()
+        and:
+        SQLUniqueTestEntity first = new SQLUniqueTestEntity()
+        first.setValue("schema-unique")
+        oma.update(first)
+        when:
+        SQLUniqueTestEntity second = new SQLUniqueTestEntity()
+        second.setValue("schema-unique")
+        oma.tryUpdate(second)
+        then:
+        thrown(IntegrityConstraintFailedException)
+    }
+}
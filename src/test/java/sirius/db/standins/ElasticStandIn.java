@@ -0,0 +1,477 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.db.standins;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import sirius.kernel.commons.Strings;
+import sirius.kernel.commons.Wait;
+import sirius.kernel.health.Exceptions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Provides a minimal, in-memory mock of the Elasticsearch REST API as used by {@link sirius.db.es.LowLevelClient}.
+ * <p>
+ * Indices, aliases and documents are kept in memory, so that indexing, partial updates (<tt>doc</tt>), bulk
+ * requests, scrolling and lookups by id (including <tt>_mget</tt>) behave as expected. Searches, however, do not
+ * evaluate the given query but simply return the documents of the index (up to the requested size). This is
+ * sufficient to measure the throughput of the client side (serialization, batching, connection handling) without a
+ * real cluster - it is not meant to verify search semantics.
+ * <p>
+ * APIs which cannot be emulated in a meaningful way (e.g. scripted updates or reindexing) are rejected with
+ * HTTP 400 instead of being acknowledged without having any effect.
+ */
+class ElasticStandIn {
+
+    private static final String METHOD_HEAD = "HEAD";
+    private static final String METHOD_DELETE = "DELETE";
+    private static final String PARAM_SOURCE = "_source";
+    private static final String PARAM_ID = "_id";
+    private static final String PARAM_INDEX = "_index";
+    private static final String PARAM_SEQ_NO = "_seq_no";
+    private static final String PARAM_PRIMARY_TERM = "_primary_term";
+    private static final String PARAM_SCROLL_ID = "_scroll_id";
+    private static final String PARAM_DOC = "doc";
+    private static final String PARAM_DOCS = "docs";
+    private static final String PARAM_SIZE = "size";
+    private static final String PARAM_HITS = "hits";
+    private static final int DEFAULT_SIZE = 10;
+
+    private final Duration latency;
+    private final HttpServer server;
+    private final Map<String, Map<String, JSONObject>> indices = new ConcurrentHashMap<>();
+    private final Map<String, String> aliases = new ConcurrentHashMap<>();
+    private final Map<String, Deque<JSONObject>> scrolls = new ConcurrentHashMap<>();
+    private final Map<String, Integer> scrollPageSizes = new ConcurrentHashMap<>();
+    private final AtomicLong seqNo = new AtomicLong();
+    private final AtomicLong scrollIds = new AtomicLong();
+
+    /**
+     * Creates and starts a new stand-in.
+     *
+     * @param port    the port to listen on
+     * @param latency the latency to inject into each request
+     * @throws IOException in case the server cannot be started
+     */
+    ElasticStandIn(int port, Duration latency) throws IOException {
+        this.latency = latency;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        this.server.setExecutor(Executors.newCachedThreadPool());
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    /**
+     * Stops the server.
+     */
+    void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!latency.isZero()) {
+                Wait.millis((int) latency.toMillis());
+            }
+            String method = exchange.getRequestMethod();
+            List<String> path = splitPath(exchange.getRequestURI().getPath());
+            String body = readBody(exchange.getRequestBody());
+
+            if (path.isEmpty()) {
+                respond(exchange, 200, new JSONObject().fluentPut("tagline", "You Know, for Search"));
+            } else if (path.get(0).startsWith("_")) {
+                handleGlobalApi(exchange, method, path, body);
+            } else {
+                handleIndexApi(exchange, method, path, body);
+            }
+        } catch (Exception e) {
+            Exceptions.handle(StandIns.LOG, e);
+            respond(exchange, 500, new JSONObject().fluentPut("error", e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private List<String> splitPath(String path) {
+        List<String> result = new ArrayList<>();
+        for (String element : path.split("/")) {
+            if (Strings.isFilled(element)) {
+                result.add(element);
+            }
+        }
+        return result;
+    }
+
+    private String readBody(InputStream input) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read = input.read(buffer);
+        while (read >= 0) {
+            out.write(buffer, 0, read);
+            read = input.read(buffer);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private void handleGlobalApi(HttpExchange exchange, String method, List<String> path, String body)
+            throws IOException {
+        String api = path.get(0);
+        if ("_bulk".equals(api)) {
+            respond(exchange, 200, bulk(body));
+        } else if ("_alias".equals(api) && path.size() > 1) {
+            respondWithAlias(exchange, method, path.get(1));
+        } else if ("_aliases".equals(api)) {
+            updateAliases(JSON.parseObject(body));
+            respond(exchange, 200, acknowledged());
+        } else if ("_cluster".equals(api)) {
+            respond(exchange, 200, new JSONObject().fluentPut("status", "green"));
+        } else if ("_cat".equals(api)) {
+            respond(exchange, 200, new JSONObject());
+        } else if ("_mget".equals(api)) {
+            respond(exchange, 200, multiGet(null, JSON.parseObject(body)));
+        } else if ("_search".equals(api) && path.size() > 1 && "scroll".equals(path.get(1))) {
+            handleScroll(exchange, method, body);
+        } else {
+            rejectUnsupported(exchange, method, path);
+        }
+    }
+
+    private void rejectUnsupported(HttpExchange exchange, String method, List<String> path) throws IOException {
+        respond(exchange,
+                400,
+                new JSONObject().fluentPut("error",
+                                           new JSONObject().fluentPut("type", "unsupported_operation_exception")
+                                                           .fluentPut("reason",
+                                                                      Strings.apply(
+                                                                              "The stand-in doesn't support: %s /%s",
+                                                                              method,
+                                                                              String.join("/", path)))));
+    }
+
+    private void respondWithAlias(HttpExchange exchange, String method, String alias) throws IOException {
+        String index = aliases.get(alias);
+        if (index == null) {
+            respond(exchange, 404, new JSONObject());
+        } else if (METHOD_HEAD.equals(method)) {
+            respond(exchange, 200, null);
+        } else {
+            JSONObject aliasInfo = new JSONObject().fluentPut(alias, new JSONObject());
+            respond(exchange, 200, new JSONObject().fluentPut(index, new JSONObject().fluentPut("aliases", aliasInfo)));
+        }
+    }
+
+    private void updateAliases(JSONObject request) {
+        for (Object action : request.getJSONArray("actions")) {
+            JSONObject add = ((JSONObject) action).getJSONObject("add");
+            if (add != null) {
+                aliases.put(add.getString("alias"), add.getString("index"));
+            }
+        }
+    }
+
+    private void handleIndexApi(HttpExchange exchange, String method, List<String> path, String body)
+            throws IOException {
+        String index = resolveIndex(path.get(0));
+        if (path.size() == 1) {
+            handleIndex(exchange, method, index);
+            return;
+        }
+
+        String api = path.get(1);
+        if ("_doc".equals(api) && path.size() > 2) {
+            handleDocument(exchange, method, index, path.get(2), body);
+        } else if ("_update".equals(api) && path.size() > 2) {
+            handleUpdate(exchange, index, path.get(2), JSON.parseObject(body));
+        } else if ("_alias".equals(api) && path.size() > 2) {
+            aliases.put(path.get(2), index);
+            respond(exchange, 200, acknowledged());
+        } else if ("_search".equals(api)) {
+            respond(exchange, 200, search(index, exchange.getRequestURI().getQuery(), body));
+        } else if ("_mget".equals(api)) {
+            respond(exchange, 200, multiGet(index, JSON.parseObject(body)));
+        } else if ("_count".equals(api)) {
+            respond(exchange, 200, new JSONObject().fluentPut("count", getDocuments(index).size()));
+        } else if ("_settings".equals(api) && "GET".equals(method)) {
+            JSONObject settings = new JSONObject().fluentPut("index", new JSONObject());
+            respond(exchange, 200, new JSONObject().fluentPut(index, new JSONObject().fluentPut("settings", settings)));
+        } else if ("_mapping".equals(api)
+                   || "_refresh".equals(api)
+                   || "_settings".equals(api)
+                   || "_flush".equals(api)
+                   || "_forcemerge".equals(api)) {
+            // These only affect how a real cluster stores the data, therefore we can safely acknowledge them...
+            respond(exchange, 200, acknowledged());
+        } else {
+            rejectUnsupported(exchange, method, path);
+        }
+    }
+
+    private String resolveIndex(String indexOrAlias) {
+        return aliases.getOrDefault(indexOrAlias, indexOrAlias);
+    }
+
+    private void handleIndex(HttpExchange exchange, String method, String index) throws IOException {
+        if (METHOD_HEAD.equals(method)) {
+            respond(exchange, indices.containsKey(index) ? 200 : 404, null);
+        } else if (METHOD_DELETE.equals(method)) {
+            indices.remove(index);
+            respond(exchange, 200, acknowledged());
+        } else {
+            indices.computeIfAbsent(index, ignored -> new ConcurrentHashMap<>());
+            respond(exchange, 200, acknowledged().fluentPut("index", index));
+        }
+    }
+
+    private void handleDocument(HttpExchange exchange, String method, String index, String id, String body)
+            throws IOException {
+        JSONObject response = new JSONObject().fluentPut(PARAM_INDEX, index).fluentPut(PARAM_ID, id);
+        if ("GET".equals(method)) {
+            JSONObject document = getDocuments(index).get(id);
+            if (document == null) {
+                respond(exchange, 404, response.fluentPut("found", false));
+            } else {
+                respond(exchange, 200, response.fluentPut("found", true).fluentPutAll(document));
+            }
+        } else if (METHOD_DELETE.equals(method)) {
+            JSONObject document = getDocuments(index).remove(id);
+            respond(exchange, document == null ? 404 : 200, response.fluentPut("result", "deleted"));
+        } else {
+            respond(exchange, 200, response.fluentPutAll(store(index, id, JSON.parseObject(body))));
+        }
+    }
+
+    private void handleUpdate(HttpExchange exchange, String index, String id, JSONObject request)
+            throws IOException {
+        JSONObject response = new JSONObject().fluentPut(PARAM_INDEX, index).fluentPut(PARAM_ID, id);
+        if (!request.containsKey(PARAM_DOC)) {
+            rejectUnsupported(exchange, "POST", Arrays.asList(index, "_update", id));
+            return;
+        }
+
+        JSONObject result = update(index, id, request.getJSONObject(PARAM_DOC));
+        if (result == null) {
+            respond(exchange, 404, response.fluentPut("result", "not_found"));
+        } else {
+            respond(exchange, 200, response.fluentPutAll(result));
+        }
+    }
+
+    /**
+     * Applies a partial update (<tt>doc</tt>) to the given document.
+     * <p>
+     * Just like Elasticsearch, top-level fields are replaced. Note that nested objects are replaced as well
+     * instead of being merged recursively, which is sufficient for the client under test.
+     *
+     * @param index the index of the document
+     * @param id    the id of the document
+     * @param doc   the fields to update
+     * @return the result to report or <tt>null</tt> if the document doesn't exist
+     */
+    private JSONObject update(String index, String id, JSONObject doc) {
+        JSONObject document = getDocuments(index).get(id);
+        if (document == null) {
+            return null;
+        }
+
+        JSONObject source = new JSONObject(document.getJSONObject(PARAM_SOURCE));
+        source.putAll(doc);
+        return store(index, id, source);
+    }
+
+    private JSONObject multiGet(String defaultIndex, JSONObject request) {
+        JSONArray docs = new JSONArray();
+        for (Object entry : request.getJSONArray(PARAM_DOCS)) {
+            JSONObject doc = (JSONObject) entry;
+            String index = resolveIndex(doc.getString(PARAM_INDEX) != null ? doc.getString(PARAM_INDEX) : defaultIndex);
+            String id = doc.getString(PARAM_ID);
+            JSONObject document = getDocuments(index).get(id);
+            JSONObject result = new JSONObject().fluentPut(PARAM_INDEX, index).fluentPut(PARAM_ID, id);
+            if (document == null) {
+                docs.add(result.fluentPut("found", false));
+            } else {
+                docs.add(result.fluentPut("found", true).fluentPutAll(document));
+            }
+        }
+
+        return new JSONObject().fluentPut(PARAM_DOCS, docs);
+    }
+
+    private Map<String, JSONObject> getDocuments(String index) {
+        return indices.computeIfAbsent(index, ignored -> new ConcurrentHashMap<>());
+    }
+
+    private JSONObject store(String index, String id, JSONObject source) {
+        JSONObject document = new JSONObject().fluentPut(PARAM_SOURCE, source)
+                                              .fluentPut(PARAM_SEQ_NO, seqNo.incrementAndGet())
+                                              .fluentPut(PARAM_PRIMARY_TERM, 1);
+        getDocuments(index).put(id, document);
+
+        return new JSONObject().fluentPut("result", "updated")
+                               .fluentPut(PARAM_SEQ_NO, document.get(PARAM_SEQ_NO))
+                               .fluentPut(PARAM_PRIMARY_TERM, 1);
+    }
+
+    private JSONObject bulk(String body) {
+        JSONArray items = new JSONArray();
+        String[] lines = body.split("\n");
+        boolean errors = false;
+        int lineIndex = 0;
+        while (lineIndex < lines.length) {
+            JSONObject command = JSON.parseObject(lines[lineIndex++]);
+            String action = command.keySet().iterator().next();
+            JSONObject meta = command.getJSONObject(action);
+            String index = resolveIndex(meta.getString(PARAM_INDEX));
+            String id = meta.getString(PARAM_ID);
+            JSONObject result = new JSONObject().fluentPut(PARAM_INDEX, index).fluentPut(PARAM_ID, id);
+            if ("delete".equals(action)) {
+                getDocuments(index).remove(id);
+                result.put("status", 200);
+            } else if ("update".equals(action)) {
+                result.putAll(bulkUpdate(index, id, JSON.parseObject(lines[lineIndex++])));
+            } else {
+                result.putAll(store(index, id, JSON.parseObject(lines[lineIndex++])));
+                result.put("status", 200);
+            }
+            errors |= result.getIntValue("status") != 200;
+            items.add(new JSONObject().fluentPut(action, result));
+        }
+
+        return new JSONObject().fluentPut("errors", errors).fluentPut("items", items);
+    }
+
+    private JSONObject bulkUpdate(String index, String id, JSONObject request) {
+        if (!request.containsKey(PARAM_DOC)) {
+            return createBulkError(400, "unsupported_operation_exception", "The stand-in only supports doc updates");
+        }
+
+        JSONObject result = update(index, id, request.getJSONObject(PARAM_DOC));
+        if (result == null) {
+            return createBulkError(404, "document_missing_exception", "The document " + id + " doesn't exist");
+        }
+
+        return result.fluentPut("status", 200);
+    }
+
+    private JSONObject createBulkError(int status, String type, String reason) {
+        JSONObject error = new JSONObject().fluentPut("type", type).fluentPut("reason", reason);
+        return new JSONObject().fluentPut("status", status).fluentPut("error", error);
+    }
+
+    private JSONObject search(String index, String query, String body) {
+        JSONObject request = Strings.isFilled(body) ? JSON.parseObject(body) : new JSONObject();
+        int size = request.containsKey(PARAM_SIZE) ? request.getIntValue(PARAM_SIZE) : DEFAULT_SIZE;
+        boolean scroll = false;
+        if (query != null) {
+            for (String param : query.split("&")) {
+                if (param.startsWith("size=")) {
+                    size = Integer.parseInt(param.substring(5));
+                } else if (param.startsWith("scroll=")) {
+                    scroll = true;
+                }
+            }
+        }
+
+        Map<String, JSONObject> documents = getDocuments(index);
+        Deque<JSONObject> allHits = new ArrayDeque<>();
+        documents.forEach((id, document) -> allHits.add(new JSONObject().fluentPut(PARAM_INDEX, index)
+                                                                        .fluentPut(PARAM_ID, id)
+                                                                        .fluentPutAll(document)));
+
+        JSONObject response = createSearchResponse(nextPage(allHits, size), documents.size());
+        if (scroll) {
+            String scrollId = String.valueOf(scrollIds.incrementAndGet());
+            scrolls.put(scrollId, allHits);
+            scrollPageSizes.put(scrollId, size);
+            response.put(PARAM_SCROLL_ID, scrollId);
+        }
+
+        return response;
+    }
+
+    private JSONArray nextPage(Deque<JSONObject> remainingHits, int size) {
+        JSONArray hits = new JSONArray();
+        synchronized (remainingHits) {
+            while (hits.size() < size && !remainingHits.isEmpty()) {
+                hits.add(remainingHits.poll());
+            }
+        }
+
+        return hits;
+    }
+
+    private JSONObject createSearchResponse(JSONArray hits, int totalHits) {
+        JSONObject total = new JSONObject().fluentPut("value", totalHits).fluentPut("relation", "eq");
+        return new JSONObject().fluentPut("took", 0)
+                               .fluentPut(PARAM_HITS,
+                                          new JSONObject().fluentPut("total", total).fluentPut(PARAM_HITS, hits));
+    }
+
+    /**
+     * Continues or clears a scroll cursor created by a search with a <tt>scroll</tt> parameter.
+     * <p>
+     * The page size of the initial search is retained for each further page. As the stand-in does not evaluate
+     * queries, the cursor simply walks over all documents which were present when the search was started.
+     */
+    private void handleScroll(HttpExchange exchange, String method, String body) throws IOException {
+        JSONObject request = Strings.isFilled(body) ? JSON.parseObject(body) : new JSONObject();
+        String scrollId = request.getString("scroll_id");
+        if (METHOD_DELETE.equals(method)) {
+            scrolls.remove(scrollId);
+            scrollPageSizes.remove(scrollId);
+            respond(exchange, 200, new JSONObject().fluentPut("succeeded", true));
+            return;
+        }
+
+        Deque<JSONObject> remainingHits = scrolls.get(scrollId);
+        if (remainingHits == null) {
+            respond(exchange, 404, createBulkError(404, "search_context_missing_exception", "Unknown scroll id"));
+            return;
+        }
+
+        JSONArray hits = nextPage(remainingHits, scrollPageSizes.getOrDefault(scrollId, DEFAULT_SIZE));
+        respond(exchange, 200, createSearchResponse(hits, hits.size()).fluentPut(PARAM_SCROLL_ID, scrollId));
+    }
+
+    private JSONObject acknowledged() {
+        return new JSONObject().fluentPut("acknowledged", true);
+    }
+
+    private void respond(HttpExchange exchange, int status, JSONObject response) throws IOException {
+        if (response == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+
+        byte[] data = response.toJSONString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, data.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(data);
+        }
+    }
+}
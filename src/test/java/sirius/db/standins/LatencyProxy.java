@@ -0,0 +1,114 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.db.standins;
+
+import sirius.kernel.commons.Wait;
+import sirius.kernel.health.Exceptions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+
+/**
+ * Forwards TCP connections to a target port while injecting a fixed latency.
+ * <p>
+ * Each chunk of data which is transferred (in either direction) is delayed by the given latency. As the database
+ * protocols used here are request / response based, this roughly adds twice the latency to each round trip.
+ */
+class LatencyProxy {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final int targetPort;
+    private final Duration latency;
+    private final ServerSocket serverSocket;
+    private volatile boolean running = true;
+
+    /**
+     * Creates and starts a new proxy.
+     *
+     * @param name       the name used for the worker threads
+     * @param port       the port to listen on
+     * @param targetPort the local port to forward all connections to
+     * @param latency    the latency to inject per transferred chunk
+     * @throws IOException in case the server socket cannot be opened
+     */
+    LatencyProxy(String name, int port, int targetPort, Duration latency) throws IOException {
+        this.targetPort = targetPort;
+        this.latency = latency;
+        this.serverSocket = new ServerSocket(port);
+
+        Thread acceptor = new Thread(this::acceptConnections, name + "-proxy");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void acceptConnections() {
+        while (running) {
+            try {
+                Socket client = serverSocket.accept();
+                Socket target = new Socket("localhost", targetPort);
+                startPump(client, target);
+                startPump(target, client);
+            } catch (IOException e) {
+                if (running) {
+                    Exceptions.handle(StandIns.LOG, e);
+                }
+            }
+        }
+    }
+
+    private void startPump(Socket from, Socket to) {
+        Thread pump = new Thread(() -> pump(from, to), "latency-proxy-pump");
+        pump.setDaemon(true);
+        pump.start();
+    }
+
+    private void pump(Socket from, Socket to) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = from.getInputStream(); OutputStream out = to.getOutputStream()) {
+            int read = in.read(buffer);
+            while (read >= 0) {
+                Wait.millis((int) latency.toMillis());
+                out.write(buffer, 0, read);
+                out.flush();
+                read = in.read(buffer);
+            }
+        } catch (IOException e) {
+            // The connection was closed by either side...
+            Exceptions.ignore(e);
+        } finally {
+            closeQuietly(from);
+            closeQuietly(to);
+        }
+    }
+
+    private void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            Exceptions.ignore(e);
+        }
+    }
+
+    /**
+     * Stops accepting new connections.
+     */
+    void close() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            Exceptions.ignore(e);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.db.standins;
+
+import com.github.fppt.jedismock.RedisServer;
+import com.typesafe.config.Config;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.h2.tools.Server;
+import sirius.kernel.Sirius;
+import sirius.kernel.Startable;
+import sirius.kernel.Stoppable;
+import sirius.kernel.async.Tasks;
+import sirius.kernel.di.std.Register;
+import sirius.kernel.health.Exceptions;
+import sirius.kernel.health.Log;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Starts in-process stand-ins for the databases used by the specs and benchmarks.
+ * <p>
+ * This permits to run on machines without docker. Enable it via <tt>standins.enabled = true</tt> - which is what
+ * <tt>test-standins.conf</tt> does. The following stand-ins are provided:
+ * <ul>
+ * <li><b>jdbc</b>: an H2 TCP server which hosts in-memory databases (use the <tt>h2</tt> JDBC profile)</li>
+ * <li><b>redis</b>: an in-process server which speaks the Redis protocol</li>
+ * <li><b>mongo</b>: an in-process, in-memory server which speaks the MongoDB wire protocol</li>
+ * <li><b>elasticsearch</b>: a mock HTTP server, see {@link ElasticStandIn}</li>
+ * </ul>
+ * <p>
+ * Each stand-in can be given an artificial latency (<tt>standins.[name].latency</tt>), so that throughput and
+ * batching can be measured reproducibly on a single machine. For the TCP based stand-ins the latency is injected
+ * by a {@link LatencyProxy} which is placed in front of the actual server.
+ */
+@Register(classes = {StandIns.class, Startable.class, Stoppable.class})
+public class StandIns implements Startable, Stoppable {
+
+    /**
+     * Contains the logger used by all stand-ins.
+     */
+    public static final Log LOG = Log.get("standins");
+
+    private static final String CONFIG_PREFIX = "standins.";
+
+    private final List<Runnable> shutdownHooks = new ArrayList<>();
+
+    @Override
+    public int getPriority() {
+        // We have to be up and running before any database is accessed...
+        return Tasks.LIFECYCLE_PRIORITY;
+    }
+
+    @Override
+    public void started() {
+        if (!isEnabled("")) {
+            return;
+        }
+
+        try {
+            if (isEnabled("jdbc.")) {
+                startH2();
+            }
+            if (isEnabled("redis.")) {
+                startRedis();
+            }
+            if (isEnabled("mongo.")) {
+                startMongo();
+            }
+            if (isEnabled("elasticsearch.")) {
+                startElastic();
+            }
+        } catch (Exception e) {
+            throw Exceptions.handle()
+                            .to(LOG)
+                            .error(e)
+                            .withSystemErrorMessage("Failed to start the database stand-ins: %s (%s)")
+                            .handle();
+        }
+    }
+
+    private boolean isEnabled(String name) {
+        Config config = Sirius.getSettings().getConfig();
+        String path = CONFIG_PREFIX + name + "enabled";
+        return config.hasPath(path) && config.getBoolean(path);
+    }
+
+    private int getPort(String name) {
+        return Sirius.getSettings().getConfig().getInt(CONFIG_PREFIX + name + ".port");
+    }
+
+    private Duration getLatency(String name) {
+        Config config = Sirius.getSettings().getConfig();
+        String path = CONFIG_PREFIX + name + ".latency";
+        return config.hasPath(path) ? config.getDuration(path) : Duration.ZERO;
+    }
+
+    /**
+     * Determines the port on which the actual server has to listen.
+     * <p>
+     * If a latency is configured, a {@link LatencyProxy} is started on the configured port which forwards to a
+     * free local port on which the server is then started.
+     *
+     * @param name the name of the stand-in
+     * @return the port to start the server on
+     * @throws IOException in case the proxy cannot be started
+     */
+    private int setupPort(String name) throws IOException {
+        int port = getPort(name);
+        Duration latency = getLatency(name);
+        if (latency.isZero()) {
+            return port;
+        }
+
+        int serverPort = findFreePort();
+        LatencyProxy proxy = new LatencyProxy(name, port, serverPort, latency);
+        shutdownHooks.add(proxy::close);
+        LOG.INFO("Injecting a latency of %s ms into %s (port %s -> %s)",
+                 latency.toMillis(),
+                 name,
+                 port,
+                 serverPort);
+
+        return serverPort;
+    }
+
+    private int findFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private void startH2() throws Exception {
+        int port = setupPort("jdbc");
+        Server server = Server.createTcpServer("-tcpPort", String.valueOf(port), "-ifNotExists").start();
+        shutdownHooks.add(server::stop);
+        LOG.INFO("Started H2 stand-in on port %s", port);
+    }
+
+    private void startRedis() throws IOException {
+        int port = setupPort("redis");
+        RedisServer server = RedisServer.newRedisServer(port);
+        server.start();
+        shutdownHooks.add(server::stop);
+        LOG.INFO("Started Redis stand-in on port %s", port);
+    }
+
+    private void startMongo() throws IOException {
+        int port = setupPort("mongo");
+        MongoServer server = new MongoServer(new MemoryBackend());
+        server.bind("localhost", port);
+        shutdownHooks.add(server::shutdownNow);
+        LOG.INFO("Started MongoDB stand-in on port %s", port);
+    }
+
+    private void startElastic() throws IOException {
+        int port = getPort("elasticsearch");
+        ElasticStandIn server = new ElasticStandIn(port, getLatency("elasticsearch"));
+        shutdownHooks.add(server::close);
+        LOG.INFO("Started Elasticsearch stand-in on port %s", port);
+    }
+
+    @Override
+    public void stopped() {
+        for (Runnable hook : shutdownHooks) {
+            try {
+                hook.run();
+            } catch (Exception e) {
+                Exceptions.ignore(e);
+            }
+        }
+        shutdownHooks.clear();
+    }
+}